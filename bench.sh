@@ -0,0 +1,75 @@
+#!/bin/bash
+
+# Copyright 2017 Google Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+set -e
+
+BENCHMARK="$1"
+
+case "${BENCHMARK}" in
+  relay)
+    shift
+    java -cp ./bin codeu.chat.relay.ServerBenchmark "$@"
+    ;;
+  relay-load)
+    shift
+    java -cp ./bin codeu.chat.relay.LoadGenerator "$@"
+    ;;
+  store)
+    shift
+    java -cp ./bin codeu.chat.util.store.StoreBenchmark "$@"
+    ;;
+  serializers)
+    shift
+    java -cp ./bin codeu.chat.util.SerializersBenchmark "$@"
+    ;;
+  uuid)
+    shift
+    java -cp ./bin codeu.chat.util.UuidBenchmark "$@"
+    ;;
+  model)
+    shift
+    java -cp ./bin codeu.chat.server.ModelBenchmark "$@"
+    ;;
+  server-load)
+    shift
+    java -cp ./bin codeu.chat.server.LoadGenerator "$@"
+    ;;
+  *)
+    echo 'usage: <BENCHMARK> [ARGS...]'
+    echo ''
+    echo 'relay [ITERATIONS] :              Time the relay back end and the bundle'
+    echo '                                  serializer without any networking.'
+    echo 'relay-load [TEAMS] [SECONDS] [PORT] :'
+    echo '                                  Start a relay on localhost and load it'
+    echo '                                  with TEAMS teams writing and polling.'
+    echo 'store [ITERATIONS] :              Time Store insert, first, range and'
+    echo '                                  delete at a few sizes and duplicate'
+    echo '                                  key ratios.'
+    echo 'serializers [ITERATIONS] :        Time the Serializers and Message'
+    echo '                                  serializer reading and writing.'
+    echo 'uuid [ITERATIONS] :               Time Uuid hashCode, equals, toString'
+    echo '                                  and parse.'
+    echo 'model [ITERATIONS] :              Time adding messages to the Model.'
+    echo 'server-load [USERS] [RATE] [SECONDS] [MIX] [PORT] :'
+    echo '                                  Start a chat server on localhost and send'
+    echo '                                  it RATE requests per second from USERS'
+    echo '                                  users. MIX is the post:poll:create split'
+    echo '                                  in percent (default 60:35:5).'
+    echo ''
+    echo 'Run make.sh first to build the benchmarks.'
+    exit 1
+    ;;
+esac
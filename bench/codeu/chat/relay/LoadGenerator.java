@@ -0,0 +1,191 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.relay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import codeu.chat.common.Relay;
+import codeu.chat.server.RemoteRelay;
+import codeu.chat.util.LatencyRecorder;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.ClientConnectionSource;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.ServerConnectionSource;
+
+// LOAD GENERATOR
+//
+// Start a relay on localhost and put it under load from a number of simulated
+// teams. Each team has one thread writing bundles as fast as the relay accepts
+// them and one thread polling for other teams' bundles. Everything goes
+// through real sockets using RemoteRelay so the results include the network
+// and serialization costs. Unlike a chat server, which keeps its relay
+// connections open, every request here opens a new connection, so the results
+// also include connection setup.
+//
+// Usage: LoadGenerator [teams] [seconds] [port]
+public final class LoadGenerator {
+
+  private static final int HISTORY = 1024;
+  private static final int MAX_READ = 16;
+  private static final int WORKER_THREADS = 16;
+
+  private static final byte[] SECRET = { 0x00, 0x01, 0x02 };
+
+  public static void main(String[] args) throws Exception {
+
+    final int teamCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    final int port = args.length > 2 ? Integer.parseInt(args[2]) : 2021;
+
+    final Server relay = new Server(HISTORY, MAX_READ);
+
+    final Uuid[] teams = new Uuid[teamCount];
+    for (int i = 0; i < teamCount; i++) {
+      teams[i] = new Uuid(i + 1);
+      relay.addTeam(teams[i], SECRET);
+    }
+
+    final ConnectionSource serverSource = ServerConnectionSource.forPort(port);
+    startRelay(relay, serverSource);
+
+    final LatencyRecorder writes = new LatencyRecorder();
+    final LatencyRecorder reads = new LatencyRecorder();
+    final AtomicLong delivered = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+
+    final long end = System.currentTimeMillis() + seconds * 1000L;
+
+    final List<Thread> threads = new ArrayList<>();
+
+    for (final Uuid team : teams) {
+
+      final Relay remote = new RemoteRelay(new ClientConnectionSource("localhost", port));
+
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; System.currentTimeMillis() < end; i++) {
+            final long start = System.nanoTime();
+            final boolean success = remote.write(
+                team,
+                SECRET,
+                remote.pack(new Uuid(team, 1), "User", Time.now()),
+                remote.pack(new Uuid(team, i % 16), "Conversation", Time.now()),
+                remote.pack(new Uuid(team, i), "Hello World", Time.now()));
+            writes.record(System.nanoTime() - start);
+            if (!success) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      });
+
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          final Collection<Uuid> all = Arrays.asList(new Uuid[0]);
+          Uuid lastSeen = Uuid.NULL;
+          while (System.currentTimeMillis() < end) {
+            final long start = System.nanoTime();
+            final Collection<Relay.Bundle> page = remote.read(team, SECRET, lastSeen, MAX_READ, all);
+            reads.record(System.nanoTime() - start);
+            for (final Relay.Bundle bundle : page) {
+              lastSeen = bundle.id();
+            }
+            delivered.addAndGet(page.size());
+          }
+        }
+      });
+    }
+
+    final long start = System.nanoTime();
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    final double elapsed = (System.nanoTime() - start) / 1e9;
+
+    System.out.println(String.format("teams=%d seconds=%.1f", teamCount, elapsed));
+    System.out.println(String.format(
+        "writes    %10.0f/s  failed=%d  %s",
+        writes.count() / elapsed,
+        failures.get(),
+        writes.summary()));
+    System.out.println(String.format(
+        "reads     %10.0f/s  %s",
+        reads.count() / elapsed,
+        reads.summary()));
+    System.out.println(String.format(
+        "delivered %10.0f bundles/s",
+        delivered.get() / elapsed));
+
+    serverSource.close();
+    System.exit(0);
+  }
+
+  // Accept connections and hand them to a pool of workers. Each connection
+  // carries a single request and is closed once it is handled, so unlike
+  // RelayMain the workers never wait on idle connections and need no idle
+  // timeout or limit on how many are open.
+  private static void startRelay(Server relay, final ConnectionSource source) {
+
+    final ServerFrontEnd frontEnd = new ServerFrontEnd(relay);
+    final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+
+    final Thread acceptor = new Thread() {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            final Connection connection = source.connect();
+            workers.execute(new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  frontEnd.handleConnection(connection);
+                } catch (Exception ex) {
+                  // Ignore - the client will see the failure.
+                }
+                try {
+                  connection.close();
+                } catch (Exception ex) {
+                  // Ignore - nothing else can be done with the connection.
+                }
+              }
+            });
+          } catch (Exception ex) {
+            return;
+          }
+        }
+      }
+    };
+
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.relay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import codeu.chat.common.Relay;
+import codeu.chat.util.Benchmark;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+
+// SERVER BENCHMARK
+//
+// Micro benchmarks for the relay's back end and for the serializer used to send
+// bundles over the network. These call the relay directly so the results do not
+// include any time spent on the network (see LoadGenerator for that).
+public final class ServerBenchmark {
+
+  private static final int TEAMS = 8;
+  private static final int HISTORY = 1024;
+  private static final int MAX_READ = 16;
+
+  private static final byte[] SECRET = { 0x00, 0x01, 0x02 };
+
+  public static void main(String[] args) throws Exception {
+
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    final Benchmark benchmark = new Benchmark(iterations / 4, iterations);
+
+    final Server relay = new Server(HISTORY, MAX_READ);
+
+    final Uuid[] teams = new Uuid[TEAMS];
+    for (int i = 0; i < TEAMS; i++) {
+      teams[i] = new Uuid(i + 1);
+      relay.addTeam(teams[i], SECRET);
+    }
+
+    benchmark.measure("relay.Server.write", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        write(relay, teams[iteration % TEAMS], iteration);
+      }
+    });
+
+    // After the writes above the history is full, so every read has a full
+    // history to look through.
+
+    final Collection<Uuid> none = Arrays.asList(new Uuid[0]);
+    final Uuid[] roots = roots(relay, teams[0]);
+
+    benchmark.measure("relay.Server.read (from start)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(relay.read(teams[0], SECRET, Uuid.NULL, MAX_READ));
+      }
+    });
+
+    benchmark.measure("relay.Server.read (from root)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(relay.read(teams[0], SECRET, roots[iteration % roots.length], MAX_READ));
+      }
+    });
+
+    benchmark.measure("relay.Server.read (filtered, other teams)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(relay.read(teams[0], SECRET, roots[iteration % roots.length], MAX_READ, none));
+      }
+    });
+
+    final Collection<Uuid> oneConversation = Arrays.asList(new Uuid(teams[1], 7));
+
+    benchmark.measure("relay.Server.read (filtered, one conversation)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(relay.read(teams[0], SECRET, Uuid.NULL, MAX_READ, oneConversation));
+      }
+    });
+
+    final Relay.Bundle bundle = relay.read(teams[0], SECRET, Uuid.NULL, 1).iterator().next();
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    benchmark.measure("BUNDLE_SERIALIZER.write", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) throws Exception {
+        buffer.reset();
+        ServerFrontEnd.BUNDLE_SERIALIZER.write(buffer, bundle);
+      }
+    });
+
+    final byte[] bytes = buffer.toByteArray();
+
+    benchmark.measure("BUNDLE_SERIALIZER.read", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) throws Exception {
+        Benchmark.consume(ServerFrontEnd.BUNDLE_SERIALIZER.read(new ByteArrayInputStream(bytes)));
+      }
+    });
+  }
+
+  private static void write(Server relay, Uuid team, int iteration) {
+    relay.write(team,
+                SECRET,
+                relay.pack(new Uuid(team, 1), "User", Time.now()),
+                relay.pack(new Uuid(team, iteration % 16), "Conversation", Time.now()),
+                relay.pack(new Uuid(team, iteration), "Hello World", Time.now()));
+  }
+
+  // Get the id of every bundle in the history so that reads can start from
+  // different places in the history.
+  private static Uuid[] roots(Server relay, Uuid team) {
+
+    final Collection<Uuid> found = new ArrayList<>();
+
+    Uuid root = Uuid.NULL;
+    Collection<Relay.Bundle> page;
+
+    do {
+      page = relay.read(team, SECRET, root, MAX_READ);
+      for (final Relay.Bundle bundle : page) {
+        found.add(bundle.id());
+        root = bundle.id();
+      }
+    } while (page.size() == MAX_READ);
+
+    return found.toArray(new Uuid[found.size()]);
+  }
+}
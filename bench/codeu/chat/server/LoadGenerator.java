@@ -0,0 +1,369 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import codeu.chat.client.Controller;
+import codeu.chat.client.View;
+import codeu.chat.common.Conversation;
+import codeu.chat.common.NetworkCode;
+import codeu.chat.common.User;
+import codeu.chat.util.LatencyRecorder;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.ClientConnectionSource;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.ServerConnectionSource;
+
+// LOAD GENERATOR
+//
+// Start a chat server on localhost and put it under load from a population of
+// simulated users. The users go through the same client Controller and View
+// that the real clients use, so every request crosses a real socket.
+//
+// Requests arrive at a fixed average rate (with random, exponential gaps)
+// whether or not the server is keeping up. Each request's response time is
+// measured from when it was meant to start, so time spent waiting behind a slow
+// server is counted instead of hidden.
+//
+// Usage: LoadGenerator [users] [rate] [seconds] [mix] [port]
+//   - "rate" is requests per second across all users.
+//   - "mix" is the percentage of "post:poll:create" operations, for example
+//     "60:35:5" is 60% posting messages, 35% polling conversations and 5%
+//     creating new conversations.
+public final class LoadGenerator {
+
+  // Enough threads that a slow response does not hold up the requests that
+  // arrive after it. Requests that arrive when every thread is busy wait in the
+  // pool's queue, and that wait is counted in their response time.
+  private static final int CLIENT_THREADS = 64;
+
+  // How many messages a poll reads from a conversation.
+  private static final int POLL_RANGE = 16;
+
+  // Conversations made before the load starts, per user.
+  private static final double CONVERSATIONS_PER_USER = 0.25;
+
+  private static final byte[] SECRET = { 0x00, 0x01, 0x02 };
+
+  private enum Operation { POST, POLL, CREATE }
+
+  public static void main(String[] args) throws Exception {
+
+    final int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    final double rate = args.length > 1 ? Double.parseDouble(args[1]) : 500;
+    final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    final int[] mix = parseMix(args.length > 3 ? args[3] : "60:35:5");
+    final int port = args.length > 4 ? Integer.parseInt(args[4]) : 2022;
+
+    final ConnectionSource serverSource = ServerConnectionSource.forPort(port);
+    final Server server = new Server(new Uuid(1), SECRET, new NoOpRelay());
+    startServer(server, serverSource);
+
+    final TimedSource source = new TimedSource(new ClientConnectionSource("localhost", port));
+    final Controller controller = new Controller(source);
+    final View view = new View(source);
+
+    // SET UP
+    //
+    // Make the users and the conversations they start with before anything is
+    // measured.
+
+    final List<User> users = new ArrayList<>();
+    for (int i = 0; i < userCount; i++) {
+      users.add(controller.newUser("user-" + i));
+    }
+
+    final List<Conversation> conversations = new CopyOnWriteArrayList<>();
+    final int startingConversations = Math.max(1, (int) (userCount * CONVERSATIONS_PER_USER));
+    for (int i = 0; i < startingConversations; i++) {
+      conversations.add(controller.newConversation("conversation-" + i, users.get(i % userCount).id));
+    }
+
+    source.reset();
+
+    // RUN
+    //
+    // A single thread decides when each request arrives and hands it to the
+    // client pool.
+
+    final Map<Operation, LatencyRecorder> responses = new TreeMap<>();
+    for (final Operation operation : Operation.values()) {
+      responses.put(operation, new LatencyRecorder());
+    }
+
+    final AtomicLong failures = new AtomicLong();
+    final ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+    final Random random = new Random(0);
+
+    final long meanGapNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    final long start = System.nanoTime();
+    final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+    long offered = 0;
+
+    for (long next = start; next < end; next += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos)) {
+
+      final long wait = next - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+
+      final long intended = next;
+      final Operation operation = pick(mix, random.nextInt(100));
+      final User user = users.get(random.nextInt(userCount));
+      final int pick = random.nextInt(Integer.MAX_VALUE);
+
+      offered += 1;
+
+      clients.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (!perform(operation, controller, view, user, conversations, pick)) {
+            failures.incrementAndGet();
+          }
+          responses.get(operation).record(System.nanoTime() - intended);
+        }
+      });
+    }
+
+    clients.shutdown();
+    clients.awaitTermination(1, TimeUnit.MINUTES);
+
+    final double elapsed = (System.nanoTime() - start) / 1e9;
+
+    // REPORT
+
+    System.out.println(String.format(
+        "users=%d rate=%.0f/s mix=%s seconds=%.1f offered=%d failed=%d",
+        userCount, rate, Arrays.toString(mix), elapsed, offered, failures.get()));
+
+    System.out.println();
+    System.out.println("Response time per operation (from when it was meant to start):");
+    for (final Map.Entry<Operation, LatencyRecorder> entry : responses.entrySet()) {
+      print(entry.getKey().name(), entry.getValue(), elapsed);
+    }
+
+    System.out.println();
+    System.out.println("Service time per request (connect to close):");
+    for (final Map.Entry<Integer, LatencyRecorder> entry : new TreeMap<>(source.recorders).entrySet()) {
+      print(NetworkCode.name(entry.getKey()), entry.getValue(), elapsed);
+    }
+
+    serverSource.close();
+    System.exit(0);
+  }
+
+  // PERFORM
+  //
+  // Run one operation as the given user. Returns false if the server did not
+  // give a useful answer. The client classes log failures rather than throw,
+  // so a missing result is the only sign that a request failed.
+  private static boolean perform(Operation operation,
+                                 Controller controller,
+                                 View view,
+                                 User user,
+                                 List<Conversation> conversations,
+                                 int pick) {
+
+    final Conversation conversation = conversations.get(pick % conversations.size());
+
+    switch (operation) {
+
+      case POST:
+        return controller.newMessage(user.id, conversation.id, "message " + pick) != null;
+
+      case POLL:
+        // This is what a client does to show a conversation: get the latest copy
+        // of the conversation and then read its messages.
+        for (final Conversation latest : view.getConversations(Arrays.asList(conversation.id))) {
+          view.getMessages(latest.firstMessage, POLL_RANGE);
+          return true;
+        }
+        return false;
+
+      case CREATE:
+        final Conversation created = controller.newConversation("conversation " + pick, user.id);
+        if (created == null) {
+          return false;
+        }
+        conversations.add(created);
+        return true;
+
+      default:
+        return false;
+    }
+  }
+
+  private static Operation pick(int[] mix, int roll) {
+    if (roll < mix[0]) {
+      return Operation.POST;
+    } else if (roll < mix[0] + mix[1]) {
+      return Operation.POLL;
+    } else {
+      return Operation.CREATE;
+    }
+  }
+
+  private static int[] parseMix(String text) {
+
+    final String[] parts = text.split(":");
+    final int[] mix = new int[3];
+
+    for (int i = 0; i < mix.length; i++) {
+      mix[i] = Integer.parseInt(parts[i].trim());
+    }
+
+    if (mix[0] + mix[1] + mix[2] != 100) {
+      throw new IllegalArgumentException("The mix must add up to 100: " + text);
+    }
+
+    return mix;
+  }
+
+  private static void print(String name, LatencyRecorder recorder, double elapsed) {
+    System.out.println(String.format(
+        "  %-36s %8.0f/s  %s",
+        name,
+        recorder.count() / elapsed,
+        recorder.summary()));
+  }
+
+  // Accept connections and hand them to the server in the same way that
+  // ServerMain does.
+  private static void startServer(final Server server, final ConnectionSource source) {
+
+    final Thread acceptor = new Thread() {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            server.handleConnection(source.connect());
+          } catch (Exception ex) {
+            return;
+          }
+        }
+      }
+    };
+
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  // TIMED SOURCE
+  //
+  // Wrap a connection source to time every connection from when it is opened
+  // to when it is closed. The request type is taken from the first four bytes
+  // written to the connection, which is always the NetworkCode.
+  private static final class TimedSource implements ConnectionSource {
+
+    final ConcurrentMap<Integer, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+
+    private final ConnectionSource source;
+
+    TimedSource(ConnectionSource source) {
+      this.source = source;
+    }
+
+    void reset() {
+      recorders.clear();
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+
+      final long start = System.nanoTime();
+      final Connection connection = source.connect();
+
+      return new Connection() {
+
+        private int type = 0;
+        private int typeBytes = 0;
+
+        private final OutputStream out = new OutputStream() {
+
+          @Override
+          public void write(int value) throws IOException {
+            if (typeBytes < 4) {
+              type = (type << 8) | (value & 0xFF);
+              typeBytes += 1;
+            }
+            connection.out().write(value);
+          }
+
+          @Override
+          public void write(byte[] buffer, int offset, int length) throws IOException {
+            for (int i = 0; i < length && typeBytes < 4; i++) {
+              type = (type << 8) | (buffer[offset + i] & 0xFF);
+              typeBytes += 1;
+            }
+            connection.out().write(buffer, offset, length);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            connection.out().flush();
+          }
+        };
+
+        @Override
+        public InputStream in() throws IOException {
+          return connection.in();
+        }
+
+        @Override
+        public OutputStream out() throws IOException {
+          return out;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+          connection.close();
+
+          LatencyRecorder recorder = recorders.get(type);
+          if (recorder == null) {
+            recorders.putIfAbsent(type, new LatencyRecorder());
+            recorder = recorders.get(type);
+          }
+          recorder.record(System.nanoTime() - start);
+        }
+      };
+    }
+
+    @Override
+    public void close() throws IOException {
+      source.close();
+    }
+  }
+}
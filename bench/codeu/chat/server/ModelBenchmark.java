@@ -0,0 +1,75 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import codeu.chat.common.Message;
+import codeu.chat.util.Benchmark;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+
+// MODEL BENCHMARK
+//
+// Micro benchmarks for adding messages to the Model, which updates every
+// message store and index each time a message is sent.
+//
+// Usage: ModelBenchmark [iterations]
+public final class ModelBenchmark {
+
+  private static final int AUTHORS = 64;
+
+  public static void main(String[] args) throws Exception {
+
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    final Benchmark benchmark = new Benchmark(iterations / 4, iterations);
+
+    final Uuid root = new Uuid(7);
+
+    final Uuid[] authors = new Uuid[AUTHORS];
+    for (int i = 0; i < AUTHORS; i++) {
+      authors[i] = new Uuid(root, i);
+    }
+
+    // Messages are added with the clock moving forward the way they are when a
+    // server is running. The model keeps growing through the run, so later
+    // calls are made against a larger model.
+    final Model plain = new Model();
+
+    benchmark.measure("Model.add(Message)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        plain.add(message(root, authors, iteration, "Hello World " + iteration));
+      }
+    });
+
+    final Model tagged = new Model();
+
+    benchmark.measure("Model.add(Message) (with tags)", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        tagged.add(message(root, authors, iteration, "Hello #world " + iteration + " #tag" + iteration % 16));
+      }
+    });
+  }
+
+  private static Message message(Uuid root, Uuid[] authors, int iteration, String content) {
+    return new Message(new Uuid(root, 1000000 + iteration),
+                       Uuid.NULL,
+                       Uuid.NULL,
+                       Time.fromMs(1000000L + iteration),
+                       authors[iteration % authors.length],
+                       content);
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.util;
+
+// BENCHMARK
+//
+// A small harness for timing a piece of code in a loop. Each case is run a
+// number of times to let the JIT warm up and then run again while timing every
+// call. The throughput and latency percentiles are printed once the case is
+// done.
+//
+// This is not meant to be as exact as a full benchmarking framework, but it has
+// no dependencies and is good enough to compare the same code before and after
+// a change.
+public final class Benchmark {
+
+  // CASE
+  //
+  // A single operation to time. "iteration" is the number of the call so that
+  // cases can vary their input without needing extra state.
+  public interface Case {
+    void run(int iteration) throws Exception;
+  }
+
+  // Results from "consume" are folded into this so that the JIT cannot remove
+  // the code that made them.
+  private static volatile int sink;
+
+  private final int warmup;
+  private final int iterations;
+
+  public Benchmark(int warmup, int iterations) {
+    this.warmup = warmup;
+    this.iterations = iterations;
+  }
+
+  // MEASURE
+  //
+  // Run the case and print a line with its results. The recorder is returned so
+  // that callers can do more with the results if they want to.
+  public LatencyRecorder measure(String name, Case benchmark) throws Exception {
+
+    for (int i = 0; i < warmup; i++) {
+      benchmark.run(i);
+    }
+
+    final LatencyRecorder recorder = new LatencyRecorder();
+
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < iterations; i++) {
+      final long before = System.nanoTime();
+      benchmark.run(i);
+      recorder.record(System.nanoTime() - before);
+    }
+
+    final long elapsed = System.nanoTime() - start;
+
+    System.out.println(String.format(
+        "%-48s %12.0f ops/s  %s",
+        name,
+        iterations / (elapsed / 1e9),
+        recorder.summary()));
+
+    return recorder;
+  }
+
+  // CONSUME
+  //
+  // Use a value so that the code making it is not optimized away.
+  public static void consume(Object value) {
+    sink ^= System.identityHashCode(value);
+  }
+
+  public static void consume(long value) {
+    sink ^= (int) (value ^ (value >>> 32));
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import codeu.chat.common.Message;
+
+// SERIALIZERS BENCHMARK
+//
+// Micro benchmarks for the serializers that every request and response goes
+// through. Each serializer is timed writing to, and reading from, an in-memory
+// buffer so the results do not include any time spent on the network.
+//
+// Usage: SerializersBenchmark [iterations]
+public final class SerializersBenchmark {
+
+  public static void main(String[] args) throws Exception {
+
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    final Benchmark benchmark = new Benchmark(iterations / 4, iterations);
+
+    measure(benchmark, "Serializers.INTEGER", Serializers.INTEGER, 123456789);
+    measure(benchmark, "Serializers.LONG", Serializers.LONG, 1234567890123L);
+    measure(benchmark, "Serializers.STRING (16 chars)", Serializers.STRING, text(16));
+    measure(benchmark, "Serializers.STRING (1024 chars)", Serializers.STRING, text(1024));
+    measure(benchmark, "Serializers.BYTES (1024 bytes)", Serializers.BYTES, new byte[1024]);
+    measure(benchmark, "Uuid.SERIALIZER", Uuid.SERIALIZER, new Uuid(new Uuid(new Uuid(7), 42), 1000));
+    measure(benchmark, "Time.SERIALIZER", Time.SERIALIZER, Time.now());
+
+    final Collection<Uuid> ids = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      ids.add(new Uuid(new Uuid(7), i));
+    }
+
+    measure(benchmark, "Serializers.collection(Uuid) (32 ids)",
+            Serializers.collection(Uuid.SERIALIZER), ids);
+
+    final Message message = new Message(
+        new Uuid(new Uuid(7), 1001),
+        new Uuid(new Uuid(7), 1002),
+        new Uuid(new Uuid(7), 1000),
+        Time.now(),
+        new Uuid(new Uuid(7), 12),
+        "Hello World, this is a message of an average length. #hello");
+
+    measure(benchmark, "Message.SERIALIZER", Message.SERIALIZER, message);
+
+    final Collection<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      messages.add(message);
+    }
+
+    measure(benchmark, "Serializers.collection(Message) (32 messages)",
+            Serializers.collection(Message.SERIALIZER), messages);
+  }
+
+  // Time writing the value and then reading it back. The read case reads the
+  // bytes written by the last write.
+  private static <T> void measure(Benchmark benchmark,
+                                  String name,
+                                  final Serializer<T> serializer,
+                                  final T value) throws Exception {
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    benchmark.measure(name + ".write", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) throws Exception {
+        buffer.reset();
+        serializer.write(buffer, value);
+      }
+    });
+
+    final byte[] bytes = buffer.toByteArray();
+
+    benchmark.measure(name + ".read", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) throws Exception {
+        Benchmark.consume(serializer.read(new ByteArrayInputStream(bytes)));
+      }
+    });
+  }
+
+  private static String text(int length) {
+    final StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + i % 26));
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util;
+
+// UUID BENCHMARK
+//
+// Micro benchmarks for Uuid. Uuids are used as keys in every store and map, so
+// hashCode and equals are called far more often than anything else here. Each
+// case is run with a short (one level) and a deep (four level) id.
+//
+// Usage: UuidBenchmark [iterations]
+public final class UuidBenchmark {
+
+  public static void main(String[] args) throws Exception {
+
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    final Benchmark benchmark = new Benchmark(iterations / 4, iterations);
+
+    measure(benchmark, "short", new Uuid(42), new Uuid(42));
+    measure(benchmark, "deep",
+            new Uuid(new Uuid(new Uuid(new Uuid(1), 2), 3), 42),
+            new Uuid(new Uuid(new Uuid(new Uuid(1), 2), 3), 42));
+  }
+
+  private static void measure(Benchmark benchmark,
+                              String label,
+                              final Uuid id,
+                              final Uuid copy) throws Exception {
+
+    benchmark.measure("Uuid.hashCode (" + label + ")", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(id.hashCode());
+      }
+    });
+
+    // Compare against an equal id that is a different instance so that equals
+    // has to walk the whole chain.
+    benchmark.measure("Uuid.equals (" + label + ")", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(id.equals(copy) ? 1 : 0);
+      }
+    });
+
+    benchmark.measure("Uuid.toString (" + label + ")", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(id.toString());
+      }
+    });
+
+    // "parse" takes the dotted form without the "[UUID:...]" wrapper that
+    // toString adds.
+    final String text = id.toString().replace("[UUID:", "").replace("]", "");
+
+    benchmark.measure("Uuid.parse (" + label + ")", new Benchmark.Case() {
+      @Override
+      public void run(int iteration) throws Exception {
+        Benchmark.consume(Uuid.parse(text));
+      }
+    });
+  }
+}
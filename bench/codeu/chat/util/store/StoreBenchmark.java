@@ -0,0 +1,140 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util.store;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import codeu.chat.util.Benchmark;
+
+// STORE BENCHMARK
+//
+// Micro benchmarks for Store. Each operation is timed on stores of a few sizes
+// and with a few ratios of duplicate keys, as both change how far the store
+// has to walk its chain of links.
+//
+// Usage: StoreBenchmark [iterations]
+public final class StoreBenchmark {
+
+  private static final Comparator<Integer> COMPARATOR = new Comparator<Integer>() {
+    @Override
+    public int compare(Integer a, Integer b) { return a.compareTo(b); }
+  };
+
+  private static final int[] SIZES = { 1000, 10000, 100000 };
+
+  // The percent of values that share their key with another value.
+  private static final int[] DUPLICATE_PERCENTS = { 0, 50, 90 };
+
+  // How many keys each range read covers.
+  private static final int RANGE_WIDTH = 16;
+
+  public static void main(String[] args) throws Exception {
+
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+    for (final int size : SIZES) {
+      for (final int duplicates : DUPLICATE_PERCENTS) {
+        run(size, duplicates, iterations);
+      }
+    }
+  }
+
+  private static void run(final int size, int duplicatePercent, int iterations) throws Exception {
+
+    final String label = String.format("(size=%d dup=%d%%)", size, duplicatePercent);
+    final Integer[] keys = keys(size, duplicatePercent);
+
+    // Filling a whole store is much slower than a single call, so use fewer
+    // iterations to keep the run time down.
+    final Benchmark fills = new Benchmark(
+        Math.max(1, iterations / size / 4),
+        Math.max(4, iterations / size));
+
+    fills.measure("Store.insert x" + size + " " + label, new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        final Store<Integer, Integer> store = new Store<>(COMPARATOR);
+        for (final Integer key : keys) {
+          store.insert(key, key);
+        }
+      }
+    });
+
+    final Store<Integer, Integer> store = new Store<>(COMPARATOR);
+    for (final Integer key : keys) {
+      store.insert(key, key);
+    }
+
+    final Benchmark benchmark = new Benchmark(iterations / 4, iterations);
+
+    benchmark.measure("Store.first " + label, new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        Benchmark.consume(store.first(keys[iteration % keys.length]));
+      }
+    });
+
+    benchmark.measure("Store.range " + label, new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        final int start = keys[iteration % keys.length];
+        for (final Integer value : store.range(start, start + RANGE_WIDTH)) {
+          Benchmark.consume(value);
+        }
+      }
+    });
+
+    // Deleting changes the store, so put each value back after it is deleted
+    // to keep the store the same size for the whole case. This means the case
+    // is timing a delete and an insert together.
+    final Benchmark deletes = new Benchmark(
+        Math.max(1, Math.min(iterations, 10000000 / size) / 4),
+        Math.max(4, Math.min(iterations, 10000000 / size)));
+
+    deletes.measure("Store.delete+insert " + label, new Benchmark.Case() {
+      @Override
+      public void run(int iteration) {
+        final Integer key = keys[iteration % keys.length];
+        store.delete(key);
+        store.insert(key, key);
+      }
+    });
+  }
+
+  // Make "size" keys in a random order where "duplicatePercent" percent of
+  // them repeat a key that is already in the list.
+  private static Integer[] keys(int size, int duplicatePercent) {
+
+    final Random random = new Random(size * 31 + duplicatePercent);
+    final int unique = Math.max(1, size * (100 - duplicatePercent) / 100);
+
+    final Integer[] keys = new Integer[size];
+
+    for (int i = 0; i < size; i++) {
+      keys[i] = i < unique ? i : random.nextInt(unique);
+    }
+
+    for (int i = size - 1; i > 0; i--) {
+      final int swap = random.nextInt(i + 1);
+      final Integer temp = keys[i];
+      keys[i] = keys[swap];
+      keys[swap] = temp;
+    }
+
+    return keys;
+  }
+}
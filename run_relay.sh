@@ -16,9 +16,19 @@
 
 PORT="$1"
 TEAM_FILE="$2"
+LEADER_ADDRESS="$3"
+TEAM_ID="$4"
+TEAM_SECRET="$5"
 
 if [[ "${PORT}" == "" || "${TEAM_FILE}" == "" ]] ; then
-  echo 'usage: <PORT> <TEAM FILE>'
+  echo 'usage: <PORT> <TEAM FILE> [<LEADER ADDRESS> <TEAM ID> <TEAM SECRET>]'
+  echo ''
+  echo 'LEADER ADDRESS : This value is optional. If given, the relay will run as'
+  echo '                 a standby that copies the leader relay at IP@PORT.'
+  echo '                 TEAM ID and TEAM SECRET must be a team the leader'
+  echo '                 knows. To make the standby take over, stop the leader'
+  echo '                 and create the file <TEAM FILE>.promote.'
+  echo ''
   exit 1
 fi
 
@@ -28,4 +38,13 @@ if [ ! -f "${TEAM_FILE}" ] ; then
 fi
 
 cd './bin'
-java codeu.chat.RelayMain "${PORT}" "${TEAM_FILE}"
+if [ "${LEADER_ADDRESS}" == "" ] ; then
+  java codeu.chat.RelayMain "${PORT}" "${TEAM_FILE}"
+else
+  java codeu.chat.RelayMain \
+      "${PORT}" \
+      "${TEAM_FILE}" \
+      "${LEADER_ADDRESS}" \
+      "${TEAM_ID}" \
+      "${TEAM_SECRET}"
+fi
@@ -18,17 +18,23 @@ import java.io.IOException;
 import java.util.Scanner;
 
 import codeu.chat.client.commandline.Chat;
+import codeu.chat.client.ClientCache;
 import codeu.chat.client.Controller;
 import codeu.chat.client.View;
 import codeu.chat.util.Logger;
 import codeu.chat.util.RemoteAddress;
 import codeu.chat.util.connections.ClientConnectionSource;
 import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.PooledConnectionSource;
 
 final class ClientMain {
 
   private static final Logger.Log LOG = Logger.newLog(ClientMain.class);
 
+  // Set this to the path of a file to keep the client's data in between runs
+  // (e.g. -Dcodeu.chat.clientCache=chat_client.cache).
+  private static final String CACHE_PROPERTY = "codeu.chat.clientCache";
+
   public static void main(String [] args) {
 
     try {
@@ -44,14 +50,25 @@ final class ClientMain {
     final RemoteAddress address = RemoteAddress.parse(args[0]);
 
     final ConnectionSource source = new ClientConnectionSource(address.host, address.port);
-    final Controller controller = new Controller(source);
-    final View view = new View(source);
+
+    // Requests share a few connections that are kept open. The subscription
+    // holds its own connection for as long as the client runs.
+    final ConnectionSource requests = new PooledConnectionSource(source);
+    final Controller controller = new Controller(requests);
+    final View view = new View(requests);
 
     LOG.info("Creating client...");
     final Chat chat = new Chat(controller, view);
 
+    final String cachePath = System.getProperty(CACHE_PROPERTY);
+    if (cachePath != null) {
+      chat.useCache(new ClientCache(cachePath, args[0]));
+    }
+
     LOG.info("Created client");
 
+    chat.subscribe(source);
+
     final Scanner input = new Scanner(System.in);
 
     while (chat.handleCommand(input)) {
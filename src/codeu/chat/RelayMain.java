@@ -14,28 +14,65 @@
 
 package codeu.chat;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import codeu.chat.common.Secret;
+import codeu.chat.relay.Follower;
 import codeu.chat.relay.Server;
 import codeu.chat.relay.ServerFrontEnd;
+import codeu.chat.relay.TeamFile;
 import codeu.chat.util.Logger;
+import codeu.chat.util.RemoteAddress;
 import codeu.chat.util.Timeline;
 import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.ClientConnectionSource;
 import codeu.chat.util.connections.Connection;
 import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.KeepAlive;
+import codeu.chat.util.connections.PooledConnectionSource;
 import codeu.chat.util.connections.ServerConnectionSource;
 
 final class RelayMain {
 
   private static final Logger.Log LOG = Logger.newLog(RelayMain.class);
 
+  // How many log records can be waiting to be written before new records are
+  // dropped.
+  private static final int LOG_RING_SIZE = 8192;
+
+  // The number of connections the relay will handle at the same time. Handling
+  // a connection is mostly waiting on the network so this can be much larger
+  // than the number of cores. Servers keep their connections open between
+  // requests, so this is also the most servers that can be connected at once.
+  private static final int WORKER_THREADS = 64;
+
+  // How often a standby relay polls its leader.
+  private static final long FOLLOW_REFRESH_MS = 1000;
+
+  // A standby relay is promoted when a file with this name is created next to
+  // its team file (see Follower).
+  private static final String PROMOTE_FILE_SUFFIX = ".promote";
+
+  // How often to check if the team file has changed. Checking only looks at the
+  // file's modification time so this can be much more often than it changes.
+  private static final long TEAM_REFRESH_MS = 5000;
+
   public static void main(String[] args) {
 
     Logger.enableConsoleOutput();
 
+    // Write log records on a background thread so that handling requests does
+    // not wait on the console or log file.
+    Logger.enableAsyncOutput(LOG_RING_SIZE);
+
     try {
       Logger.enableFileOutput("chat_relay_log.log");
     } catch (IOException ex) {
@@ -46,17 +83,52 @@ final class RelayMain {
 
     final int myPort = Integer.parseInt(args[0]);
 
-    try (final ConnectionSource source = ServerConnectionSource.forPort(myPort)) {
+    // A relay without any teams can not do anything, so rather than waiting
+    // for the team file to be fixed, refuse to start.
+    final TeamFile teams = new TeamFile(args[1]);
+    final Map<Uuid, byte[]> startingTeams = teams.loadIfChanged();
+
+    if (startingTeams == null) {
+      LOG.error("No teams could be loaded from %s - shutting down relay", args[1]);
+      System.exit(1);
+    }
+
+    // Servers can keep connections open between requests. Ones that are not
+    // used for a while are closed.
+    try (final ConnectionSource source =
+             ServerConnectionSource.forPort(myPort, KeepAlive.IDLE_TIMEOUT_MS)) {
 
       // Limit the number of messages that the server tracks to be 1024 and limit the
       // max number of messages that the relay will send out to be 16.
       final Server relay = new Server(1024, 16);
+      relay.setTeams(startingTeams);
 
       LOG.info("Relay object created.");
 
       LOG.info("Starting relay...");
 
-      startRelay(relay, source, args[1]);
+      // If a leader was given, this relay is a standby that will copy all of
+      // the leader's bundles until an operator promotes it. The team id and
+      // secret are used to read from the leader.
+      if (args.length > 4) {
+
+        final RemoteAddress leaderAddress = RemoteAddress.parse(args[2]);
+        final Follower follower = new Follower(
+            relay,
+            new PooledConnectionSource(
+                new ClientConnectionSource(leaderAddress.host, leaderAddress.port)),
+            Uuid.parse(args[3]),
+            Secret.parse(args[4]),
+            FOLLOW_REFRESH_MS,
+            new File(args[1] + PROMOTE_FILE_SUFFIX),
+            16);
+
+        LOG.info("Following leader relay %s", leaderAddress);
+
+        follower.start(new Timeline());
+      }
+
+      startRelay(relay, source, teams);
 
     } catch (IOException ex) {
       LOG.error(ex, "Failed to establish server accept port");
@@ -65,7 +137,7 @@ final class RelayMain {
 
   private static void startRelay(final Server relay,
                                  final ConnectionSource source,
-                                 final String teamFile) {
+                                 final TeamFile teams) {
 
     final ServerFrontEnd frontEnd = new ServerFrontEnd(relay);
     LOG.info("Relay front end object created.");
@@ -73,16 +145,34 @@ final class RelayMain {
     final Timeline timeline = new Timeline();
     LOG.info("Relay timeline created.");
 
-    timeline.scheduleNow(new Runnable() {
+    // Connections are not handled on the timeline so that one slow connection
+    // does not hold up every other team. The relay back end is safe to use from
+    // many threads at once.
+    // A connection that comes in when every worker is busy is closed rather
+    // than left to wait behind connections that may stay open for a long time.
+    final ExecutorService workers = new ThreadPoolExecutor(0,
+                                                           WORKER_THREADS,
+                                                           KeepAlive.IDLE_TIMEOUT_MS,
+                                                           TimeUnit.MILLISECONDS,
+                                                           new SynchronousQueue<Runnable>());
+    LOG.info("Relay workers created.");
+
+    // The team file is loaded on the timeline and not by the workers so that
+    // loading it is never in the way of handling a connection. Any change to
+    // the file (added, changed or removed teams) replaces all the relay's teams,
+    // unless the file is rejected for having no teams (see TeamFile).
+    timeline.scheduleIn(TEAM_REFRESH_MS, new Runnable() {
       @Override
       public void run() {
-        LOG.info("Loading team data...");
-        loadTeamInfo(relay, teamFile);
-        LOG.info("Done loading team data.");
+        final Map<Uuid, byte[]> loaded = teams.loadIfChanged();
 
-        // Add this again in 1 minute so that new team entries will be added to
-        // the relay. This won't support updating entries.
-        timeline.scheduleIn(60000, this);
+        if (loaded != null) {
+          LOG.info("Team file changed, updating teams...");
+          relay.setTeams(loaded);
+          LOG.info("Done updating teams.");
+        }
+
+        timeline.scheduleIn(TEAM_REFRESH_MS, this);
       }
     });
 
@@ -95,59 +185,35 @@ final class RelayMain {
         final Connection connection = source.connect();
         LOG.info("Connection established.");
 
-        timeline.scheduleNow(new Runnable() {
+        final Runnable handler = new Runnable() {
           @Override
           public void run() {
             try {
               frontEnd.handleConnection(connection);
+            } catch (SocketTimeoutException ex) {
+              LOG.info("Closing idle connection.");
             } catch (Exception ex) {
               LOG.error(ex, "Exception handling connection.");
             }
+
+            try {
+              connection.close();
+            } catch (Exception ex) {
+              LOG.error(ex, "Exception while closing connection.");
+            }
           }
-        });
+        };
+
+        try {
+          workers.execute(handler);
+        } catch (RejectedExecutionException ex) {
+          LOG.warning("All workers are busy, closing connection.");
+          connection.close();
+        }
 
       } catch (IOException ex) {
         LOG.error(ex, "Failed to establish connection.");
       }
     }
   }
-
-  private static void loadTeamInfo(Server relay, String file) {
-
-    try (final BufferedReader reader = new BufferedReader(new FileReader(file))) {
-
-      String line;
-      for (line = reader.readLine();
-           line != null;
-           line = reader.readLine()) {
-
-        line = line.trim();
-
-        if (line.length() == 0) {
-          // This line is blank, skip it
-        } else if (line.startsWith("#")) {
-          // this is a comment, skip it
-        } else {
-
-          try {
-
-            final String[] tokens = line.split(":");
-
-            // There are just so many things that could go wrong when parsing
-            // this line that it is not worth trying to handle ahead of time.
-            // So instead just try to parse it and catch any exception.
-
-            final Uuid id = Uuid.parse(tokens[0].trim());
-            final byte[] secret = Secret.parse(tokens[1].trim());
-
-            relay.addTeam(id, secret);
-          } catch (Exception ex) {
-            LOG.error(ex, "Skipping line \"%s\". Could not parse", line);
-          }
-        }
-      }
-    } catch (IOException ex) {
-      LOG.error(ex, "Failed to load team data");
-    }
-  }
 }
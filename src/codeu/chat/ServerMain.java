@@ -16,28 +16,47 @@
 package codeu.chat;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import codeu.chat.common.Relay;
 import codeu.chat.common.Secret;
 import codeu.chat.server.NoOpRelay;
 import codeu.chat.server.RemoteRelay;
 import codeu.chat.server.Server;
+import codeu.chat.server.SlowRequestLog;
 import codeu.chat.util.Logger;
 import codeu.chat.util.RemoteAddress;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.connections.ClientConnectionSource;
 import codeu.chat.util.connections.Connection;
 import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.KeepAlive;
+import codeu.chat.util.connections.PooledConnectionSource;
 import codeu.chat.util.connections.ServerConnectionSource;
 
 final class ServerMain {
 
   private static final Logger.Log LOG = Logger.newLog(ServerMain.class);
 
+  // How many log records can be waiting to be written before new records are
+  // dropped.
+  private static final int LOG_RING_SIZE = 8192;
+
+  // Requests that take longer than this (from being accepted to having their
+  // response written) are written to the slow request log. The threshold can
+  // be changed with "-Dcodeu.chat.slowRequestMs=<ms>".
+  private static final String SLOW_REQUEST_LOG = "chat_server_slow_requests.log";
+  private static final long SLOW_REQUEST_MS = Long.getLong("codeu.chat.slowRequestMs", 1000);
+
   public static void main(String[] args) {
 
     Logger.enableConsoleOutput();
 
+    // Write log records on a background thread so that handling requests does
+    // not wait on the console or log file.
+    Logger.enableAsyncOutput(LOG_RING_SIZE);
+
     try {
       Logger.enableFileOutput("chat_server_log.log");
     } catch (IOException ex) {
@@ -61,17 +80,27 @@ final class ServerMain {
     // of the server.
     final String persistentPath = args[3];
 
-    final RemoteAddress relayAddress = args.length > 4 ?
-                                       RemoteAddress.parse(args[4]) :
-                                       null;
+    // The relay address can be a comma separated list of addresses. The first
+    // address is the leader relay and any others are standby relays that the
+    // server will fail over to, in order, if the leader cannot be reached. Once
+    // it has failed over, the server only goes back to the leader on a restart.
+    final List<ConnectionSource> relaySources = new ArrayList<>();
+
+    if (args.length > 4) {
+      for (final String address : args[4].split(",")) {
+        final RemoteAddress relayAddress = RemoteAddress.parse(address.trim());
+        relaySources.add(new PooledConnectionSource(
+            new ClientConnectionSource(relayAddress.host, relayAddress.port)));
+      }
+    }
 
-    try (
-        final ConnectionSource serverSource = ServerConnectionSource.forPort(myPort);
-        final ConnectionSource relaySource = relayAddress == null ? null : new ClientConnectionSource(relayAddress.host, relayAddress.port)
-    ) {
+    // Clients can keep connections open between requests. Ones that are not
+    // used for a while are closed.
+    try (final ConnectionSource serverSource =
+             ServerConnectionSource.forPort(myPort, KeepAlive.IDLE_TIMEOUT_MS)) {
 
       LOG.info("Starting server...");
-      runServer(id, secret, serverSource, relaySource);
+      runServer(id, secret, serverSource, relaySources);
 
     } catch (IOException ex) {
 
@@ -83,14 +112,20 @@ final class ServerMain {
   private static void runServer(Uuid id,
                                 byte[] secret,
                                 ConnectionSource serverSource,
-                                ConnectionSource relaySource) {
+                                List<ConnectionSource> relaySources) {
 
-    final Relay relay = relaySource == null ?
+    final Relay relay = relaySources.isEmpty() ?
                         new NoOpRelay() :
-                        new RemoteRelay(relaySource);
+                        new RemoteRelay(relaySources);
 
     final Server server = new Server(id, secret, relay);
 
+    try {
+      server.logSlowRequests(new SlowRequestLog(SLOW_REQUEST_LOG, SLOW_REQUEST_MS));
+    } catch (IOException ex) {
+      LOG.error(ex, "Failed to open slow request log");
+    }
+
     LOG.info("Created server.");
 
     while (true) {
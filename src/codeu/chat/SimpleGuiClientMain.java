@@ -16,6 +16,7 @@ package codeu.chat;
 
 import java.io.IOException;
 
+import codeu.chat.client.ClientCache;
 import codeu.chat.client.Controller;
 import codeu.chat.client.simplegui.ChatSimpleGui;
 import codeu.chat.client.View;
@@ -23,11 +24,16 @@ import codeu.chat.util.Logger;
 import codeu.chat.util.RemoteAddress;
 import codeu.chat.util.connections.ClientConnectionSource;
 import codeu.chat.util.connections.ConnectionSource;
+import codeu.chat.util.connections.PooledConnectionSource;
 
 final class SimpleGuiClientMain {
 
   private static final Logger.Log LOG = Logger.newLog(SimpleGuiClientMain.class);
 
+  // Set this to the path of a file to keep the client's data in between runs
+  // (e.g. -Dcodeu.chat.clientCache=chat_simple_gui_client.cache).
+  private static final String CACHE_PROPERTY = "codeu.chat.clientCache";
+
   public static void main(String [] args) {
 
     try {
@@ -47,12 +53,15 @@ final class SimpleGuiClientMain {
     try (
       final ConnectionSource source = new ClientConnectionSource(address.host, address.port)
     ) {
-      final Controller controller = new Controller(source);
-      final View view = new View(source);
+      // Requests share a few connections that are kept open. The subscription
+      // holds its own connection for as long as the client runs.
+      final ConnectionSource requests = new PooledConnectionSource(source);
+      final Controller controller = new Controller(requests);
+      final View view = new View(requests);
 
       LOG.info("Creating client...");
 
-      runClient(controller, view);
+      runClient(controller, view, source, args[0]);
 
     } catch (Exception ex) {
       System.out.println("ERROR: Exception setting up client. Check log for details.");
@@ -60,10 +69,20 @@ final class SimpleGuiClientMain {
     }
   }
 
-  private static void runClient(Controller controller, View view) {
+  private static void runClient(Controller controller,
+                                View view,
+                                ConnectionSource source,
+                                String server) {
 
     final ChatSimpleGui chatSimpleGui = new ChatSimpleGui(controller, view);
 
+    final String cachePath = System.getProperty(CACHE_PROPERTY);
+    if (cachePath != null) {
+      chatSimpleGui.useCache(new ClientCache(cachePath, server));
+    }
+
+    chatSimpleGui.subscribe(source);
+
     LOG.info("Created client");
 
     chatSimpleGui.run();
@@ -0,0 +1,234 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import codeu.chat.util.Logger;
+
+// ASYNC RUNNER
+//
+// Runs blocking client work on an executor and returns a Future for it. A
+// callback can be given with each call. It is run on the "callbacks"
+// executor once the work is done, which lets a UI have its callbacks run on
+// its own thread.
+//
+// Reads can be given a key. While a read with the same key is still waiting
+// for a thread, another read with that key joins the waiting one instead of
+// being queued again, and its callback gets the same result. A read that has
+// already started is never joined as it may have missed changes made since it
+// started. Keys must have a proper equals and hashCode. Writes should never be
+// given a key.
+public final class AsyncRunner {
+
+  private final static Logger.Log LOG = Logger.newLog(AsyncRunner.class);
+
+  // Run callbacks on whichever thread finished the work.
+  public static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final ExecutorService executor;
+  private final Executor callbacks;
+
+  private final Map<Object, Call<?>> inFlight = new HashMap<>();
+
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  public AsyncRunner(ExecutorService executor, Executor callbacks) {
+    this.executor = executor;
+    this.callbacks = callbacks;
+  }
+
+  // NEW EXECUTOR
+  //
+  // An executor whose threads will not keep the program alive. One thread
+  // runs calls in order; more threads let calls overlap.
+  public static ExecutorService newExecutor(final String name, int threads) {
+
+    final AtomicInteger count = new AtomicInteger();
+
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // RUN
+  //
+  // Always start the work, even if the same work is already running.
+  public <T> Future<T> run(Callable<T> work, Callback<T> callback) {
+
+    final Call<T> call = new Call<>(null, work);
+    call.listen(callback);
+
+    started.incrementAndGet();
+    executor.execute(call);
+
+    return call;
+  }
+
+  // READ
+  //
+  // Start the work unless work with the same key is already waiting to run,
+  // in which case wait for that instead.
+  public <T> Future<T> read(Object key, Callable<T> work, Callback<T> callback) {
+
+    Call<T> call;
+    boolean start = false;
+
+    synchronized (inFlight) {
+
+      @SuppressWarnings("unchecked")
+      final Call<T> running = (Call<T>) inFlight.get(key);
+
+      if (running == null) {
+        call = new Call<>(key, work);
+        inFlight.put(key, call);
+        start = true;
+      } else {
+        call = running;
+      }
+    }
+
+    call.listen(callback);
+
+    if (start) {
+      started.incrementAndGet();
+      executor.execute(call);
+    } else {
+      coalesced.incrementAndGet();
+    }
+
+    return call;
+  }
+
+  public long started() { return started.get(); }
+
+  public long coalesced() { return coalesced.get(); }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  // CALL
+  //
+  // A future that tells its callbacks when it is done. A callback added after
+  // the call is done is told straight away.
+  private final class Call<T> extends FutureTask<T> {
+
+    private final Object key;
+    private final List<Callback<T>> listeners = new ArrayList<>();
+
+    Call(Object key, Callable<T> work) {
+      super(work);
+      this.key = key;
+    }
+
+    void listen(Callback<T> callback) {
+
+      if (callback == null) {
+        return;
+      }
+
+      synchronized (this) {
+        if (!isDone()) {
+          listeners.add(callback);
+          return;
+        }
+      }
+
+      tell(callback);
+    }
+
+    @Override
+    public void run() {
+      // Once started, later reads must not join this one.
+      forget();
+      super.run();
+    }
+
+    @Override
+    protected void done() {
+
+      // A call cancelled before it started still needs to be forgotten.
+      forget();
+
+      final List<Callback<T>> toNotify;
+
+      synchronized (this) {
+        toNotify = new ArrayList<>(listeners);
+        listeners.clear();
+      }
+
+      for (final Callback<T> callback : toNotify) {
+        tell(callback);
+      }
+    }
+
+    private void forget() {
+      if (key != null) {
+        synchronized (inFlight) {
+          if (inFlight.get(key) == this) {
+            inFlight.remove(key);
+          }
+        }
+      }
+    }
+
+    private void tell(final Callback<T> callback) {
+
+      final T result;
+
+      try {
+        result = get();
+      } catch (InterruptedException | ExecutionException ex) {
+        LOG.error(ex, "Asynchronous call failed.");
+        return;
+      } catch (RuntimeException ex) {
+        // The call was cancelled.
+        return;
+      }
+
+      callbacks.execute(new Runnable() {
+        @Override
+        public void run() {
+          callback.onResult(result);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,178 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import codeu.chat.util.Logger;
+import codeu.chat.util.Serializers;
+
+// CLIENT CACHE
+//
+// Keeps the users, conversations and messages a client knows about in a file
+// between runs so that a new client does not have to read them all from the
+// server again. The cache is only a starting point - each context still asks
+// the server for what changed since the cache was written:
+//
+//   - users and conversations ask for the changes since their generation.
+//   - messages read after the tail of each cached conversation.
+//
+// The file is tagged with the server's address so that a cache written for
+// one server is never used with another. A cache that can not be read is
+// ignored and will be replaced on the next save.
+public final class ClientCache {
+
+  private final static Logger.Log LOG = Logger.newLog(ClientCache.class);
+
+  // Change this whenever the layout of the file changes.
+  private static final int VERSION = 1;
+
+  // How long the exit hook waits for the context's owner to save it.
+  private static final long EXIT_SAVE_WAIT_MS = 5000;
+
+  private final File file;
+  private final String server;
+
+  public ClientCache(String path, String server) {
+    this.file = new File(path);
+    this.server = server;
+  }
+
+  // LOAD
+  //
+  // Fill the context from the cache file. Each part of the context is read
+  // whole before it is used, so a file that is cut short can at worst leave
+  // the later parts empty.
+  public void load(ClientContext context) {
+
+    if (!file.exists()) {
+      LOG.info("No client cache at %s", file);
+      return;
+    }
+
+    final long start = System.nanoTime();
+
+    try (final InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+
+      if (Serializers.INTEGER.read(in) != VERSION) {
+        LOG.info("Ignoring client cache %s - wrong version", file);
+        return;
+      }
+
+      if (!server.equals(Serializers.STRING.read(in))) {
+        LOG.info("Ignoring client cache %s - written for another server", file);
+        return;
+      }
+
+      context.user.readCache(in);
+      context.conversation.readCache(in);
+      context.message.readCache(in);
+
+      LOG.info("Loaded client cache %s in %d ms",
+               file,
+               (System.nanoTime() - start) / 1000000);
+
+    } catch (IOException ex) {
+      LOG.error(ex, "Failed to load client cache %s", file);
+    }
+  }
+
+  // SAVE
+  //
+  // Write the context to a temporary file and then move it over the cache so
+  // that a client that dies while saving never leaves half a cache behind.
+  // The context is not thread safe, so this must be called from the thread
+  // that uses it, or once nothing else is using it.
+  public void save(ClientContext context) {
+
+    final File temp = new File(file.getPath() + ".tmp");
+
+    try {
+
+      try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+
+        Serializers.INTEGER.write(out, VERSION);
+        Serializers.STRING.write(out, server);
+
+        context.user.writeCache(out);
+        context.conversation.writeCache(out);
+        context.message.writeCache(out);
+      }
+
+      if (!temp.renameTo(file)) {
+        // Some platforms will not rename over an existing file.
+        file.delete();
+        if (!temp.renameTo(file)) {
+          throw new IOException("Could not replace " + file);
+        }
+      }
+
+      LOG.info("Saved client cache %s", file);
+
+    } catch (IOException | RuntimeException ex) {
+      LOG.error(ex, "Failed to save client cache %s", file);
+      temp.delete();
+    }
+  }
+
+  // SAVE ON EXIT
+  //
+  // Save the context when the program exits, including through System.exit
+  // (e.g. closing the Swing window). The save is run on "owner", the executor
+  // that does all the work with the context, so that it never reads the
+  // context while a call is changing it. A save that has not finished after
+  // EXIT_SAVE_WAIT_MS is given up on rather than holding up the exit.
+  public void saveOnExit(final ClientContext context, final Executor owner) {
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+
+        final FutureTask<Void> task = new FutureTask<>(new Runnable() {
+          @Override
+          public void run() {
+            save(context);
+          }
+        }, null);
+
+        try {
+          owner.execute(task);
+        } catch (RejectedExecutionException ex) {
+          // The owner has shut down, so nothing is using the context anymore.
+          task.run();
+        }
+
+        try {
+          task.get(EXIT_SAVE_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+          LOG.error("Gave up saving client cache %s on exit", file);
+        } catch (Exception ex) {
+          LOG.error(ex, "Failed to save client cache %s on exit", file);
+        }
+      }
+    }, "client-cache"));
+  }
+}
@@ -14,22 +14,53 @@
 
 package codeu.chat.client;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationDelta;
+import codeu.chat.common.ConversationPage;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.util.Logger;
 import codeu.chat.util.Method;
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
 import codeu.chat.util.Uuid;
-import codeu.chat.util.store.Store;
 
 public final class ClientConversation {
 
   private final static Logger.Log LOG = Logger.newLog(ClientConversation.class);
 
+  private static final Serializer<Collection<ConversationSummary>> SUMMARY_COLLECTION =
+      Serializers.collection(ConversationSummary.SERIALIZER);
+
+  // How many conversations to ask for in each page when reading all of them
+  // from the server.
+  private static final int PAGE_SIZE = 500;
+
+  // Titles do not have to be unique so ties are broken by id. This way every
+  // conversation can be removed from the sorted set on its own.
+  private static final Comparator<ConversationSummary> BY_TITLE =
+      new Comparator<ConversationSummary>() {
+        @Override
+        public int compare(ConversationSummary a, ConversationSummary b) {
+          final int order = String.CASE_INSENSITIVE_ORDER.compare(a.title, b.title);
+          return order == 0 ? Uuid.compare(a.id, b.id) : order;
+        }
+      };
+
   private final Controller controller;
   private final View view;
 
@@ -43,8 +74,11 @@ public final class ClientConversation {
   private final Map<Uuid, ConversationSummary> summariesByUuid = new HashMap<>();
 
   // This is the set of conversations known to the server, sorted by title.
-  private Store<String, ConversationSummary> summariesSortedByTitle =
-      new Store<>(String.CASE_INSENSITIVE_ORDER);
+  private final NavigableSet<ConversationSummary> summariesSortedByTitle =
+      new TreeSet<>(BY_TITLE);
+
+  // The conversation generation that the summaries above are up to date with.
+  private Uuid generation = Uuid.NULL;
 
   public ClientConversation(Controller controller, View view, ClientUser userContext) {
     this.controller = controller;
@@ -109,11 +143,10 @@ public final class ClientConversation {
   // Delete Conversation method
   public void deleteConversation(String title) {
     updateAllConversations(true);
-    final boolean isExistingConversation = summariesSortedByTitle.contains(title);
+    final ConversationSummary conversation = findByTitle(title);
 
     if (hasCurrent()) {
-      if (isExistingConversation) {
-        ConversationSummary conversation = summariesSortedByTitle.first(title);
+      if (conversation != null) {
         boolean deletingCurrent = Uuid.equals(conversation.id, getCurrentId());
         messageContext.deleteAllMessages();
         controller.deleteConversation(conversation.id);
@@ -139,7 +172,17 @@ public final class ClientConversation {
     updateAllConversations(true);
   }
 
-  // Helper for Delete Conversation
+  // Helpers for Delete Conversation
+  private ConversationSummary findByTitle(String title) {
+
+    // A summary with no id comes before every other summary with the same
+    // title, so the one after it is the first with that title (if any).
+    final ConversationSummary first =
+        summariesSortedByTitle.ceiling(new ConversationSummary(null, null, null, title));
+
+    return (first != null && first.title.equalsIgnoreCase(title)) ? first : null;
+  }
+
   private ConversationSummary getNext() {
     Iterator<ConversationSummary> iterator = getConversationSummaries().iterator();
     ConversationSummary next = null;
@@ -171,6 +214,21 @@ public final class ClientConversation {
     }
   }
 
+  // Show the most recently active conversations without reading all of them.
+  public void showRecentConversations(int count) {
+
+    final Collection<ConversationActivity> recent = view.getRecentConversations(count);
+
+    if (recent.isEmpty()) {
+      System.out.println("No Conversations.");
+    }
+    for (final ConversationActivity activity : recent) {
+      printConversation(activity.summary, userContext);
+      System.out.format("    %d message(s), last active %s\n",
+          activity.messageCount, activity.lastActivity);
+    }
+  }
+
   // Get a single conversation from the server.
   public Conversation getConversation(Uuid conversationId) {
     for (final Conversation c : view.getConversations(Arrays.asList(conversationId))) {
@@ -207,27 +265,126 @@ public final class ClientConversation {
   }
 
   public Iterable<ConversationSummary> getConversationSummaries() {
-    return summariesSortedByTitle.all();
+    return Collections.unmodifiableSet(summariesSortedByTitle);
   }
 
   // Update the list of known Conversations.
   // If the input currentChanged is true, then re-establish the state of
   // the current Conversation, including its messages.
+  // Only the conversations added or removed since the last update are read.
+  // When nothing is known yet the conversations are read a page at a time.
   public void updateAllConversations(boolean currentChanged) {
-    summariesByUuid.clear();
-    summariesSortedByTitle = new Store<>(String.CASE_INSENSITIVE_ORDER);
 
-    for (final ConversationSummary cs : view.getAllConversations()) {
-      summariesByUuid.put(cs.id, cs);
-      summariesSortedByTitle.insert(cs.title, cs);
+    if (Uuid.equals(generation, Uuid.NULL)) {
+      readAllConversations();
+    }
+
+    final ConversationDelta delta = view.getConversationsChangedSince(generation);
+
+    if (delta != null && !Uuid.equals(delta.generation, generation)) {
+      applyDelta(delta);
     }
 
     if (currentChanged) {
       updateCurrentConversation();
-      messageContext.resetCurrent(true);
+      messageContext.resetCurrent(false);
     }
   }
 
+  // READ ALL CONVERSATIONS
+  //
+  // Read every conversation from the server in pages sorted by title. The
+  // generation is only set once the last page has been read, so that the
+  // delta that follows picks up anything that changed while paging. If a
+  // page can not be read the generation stays NULL and the delta will be a
+  // full one instead.
+  private void readAllConversations() {
+
+    clear();
+
+    Uuid first = null;
+    Uuid after = Uuid.NULL;
+    ConversationPage page;
+
+    do {
+
+      page = view.getConversationPage(ConversationPage.BY_TITLE, after, PAGE_SIZE);
+
+      if (page == null) {
+        return;
+      }
+
+      if (first == null) {
+        first = page.generation;
+      }
+
+      // If the cursor is deleted between pages, the server starts again from
+      // the beginning. Adding a conversation that is already known does
+      // nothing, so this only costs the extra pages.
+      for (final ConversationSummary cs : page.summaries) {
+        add(cs);
+        after = cs.id;
+      }
+
+    } while (page.summaries.size() >= PAGE_SIZE);
+
+    LOG.info("Read %d conversations in pages.", summariesByUuid.size());
+
+    generation = first;
+  }
+
+  private void applyDelta(ConversationDelta delta) {
+
+    if (delta.full) {
+      clear();
+    }
+
+    // Conversations are never changed once added, so only new ones need to
+    // be inserted.
+    for (final ConversationSummary cs : delta.updated) {
+      add(cs);
+    }
+
+    for (final Uuid id : delta.removed) {
+      final ConversationSummary cs = summariesByUuid.remove(id);
+      if (cs != null) {
+        summariesSortedByTitle.remove(cs);
+      }
+    }
+
+    generation = delta.generation;
+  }
+
+  private void add(ConversationSummary cs) {
+    if (!summariesByUuid.containsKey(cs.id)) {
+      summariesByUuid.put(cs.id, cs);
+      summariesSortedByTitle.add(cs);
+    }
+  }
+
+  private void clear() {
+    summariesByUuid.clear();
+    summariesSortedByTitle.clear();
+  }
+
+  // WRITE CACHE
+  //
+  // Write the known conversations so that they can be read back by the next
+  // run of the client. The generation is written with them so that the next
+  // update only reads what changed after they were written.
+  void writeCache(OutputStream out) throws IOException {
+    Uuid.SERIALIZER.write(out, generation);
+    SUMMARY_COLLECTION.write(out, summariesByUuid.values());
+  }
+
+  void readCache(InputStream in) throws IOException {
+
+    final Uuid cachedGeneration = Uuid.SERIALIZER.read(in);
+    final Collection<ConversationSummary> summaries = SUMMARY_COLLECTION.read(in);
+
+    applyDelta(new ConversationDelta(cachedGeneration, true, summaries, new ArrayList<Uuid>()));
+  }
+
   // Print Conversation.  User context is used to map from owner UUID to name.
   public static void printConversation(ConversationSummary c, ClientUser userContext) {
     if (c == null) {
@@ -14,15 +14,23 @@
 
 package codeu.chat.client;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import codeu.chat.common.Conversation;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.common.Message;
 import codeu.chat.util.Logger;
 import codeu.chat.util.Method;
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
 import codeu.chat.util.Uuid;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -34,8 +42,20 @@ public final class ClientMessage {
 
   private final static Logger.Log LOG = Logger.newLog(ClientMessage.class);
 
-  private final static int MESSAGE_MAX_COUNT = 100;
-  private final static int MESSAGE_FETCH_COUNT = 5;
+  // The most messages to ask for in one request, both when reading newer
+  // messages and when paging back through older ones.
+  private final static int MESSAGE_PAGE_COUNT = 50;
+
+  // The fewest messages that m-list-all shows, if the conversation has that
+  // many. Older pages are read until there are at least this many.
+  private final static int LIST_ALL_COUNT = 100;
+
+  // The most messages from each conversation to keep in the client cache.
+  private final static int CACHED_MESSAGE_COUNT = 200;
+
+  private static final Serializer<Collection<Message>> MESSAGE_COLLECTION =
+      Serializers.collection(Message.SERIALIZER);
+
   private final Controller controller;
   private final View view;
 
@@ -43,8 +63,25 @@ public final class ClientMessage {
 
   private final Map<Uuid, Message> messageByUuid = new HashMap<>();
 
-  private Conversation conversationHead;
-  private final List<Message> conversationContents = new ArrayList<>();
+  // HISTORY
+  //
+  // The messages known for one conversation, oldest first. Loading a
+  // conversation only reads its newest page of messages and after that only
+  // the messages after the cached tail are read. Older messages are read one
+  // page at a time when asked for.
+  private static final class History {
+    final List<Message> messages = new ArrayList<>();
+
+    // Set once the first message of the conversation is in "messages".
+    boolean complete = false;
+  }
+
+  // Histories are kept when switching conversations so that switching back
+  // only needs to read what was added since.
+  private final Map<Uuid, History> histories = new HashMap<>();
+
+  private Uuid contentsId = null;
+  private List<Message> conversationContents = new ArrayList<>();
 
   private final ClientUser userContext;
   private final ClientConversation conversationContext;
@@ -76,8 +113,7 @@ public final class ClientMessage {
   }
 
   public Message getCurrent() {
-    updateMessages(true);
-    resetCurrent(true);
+    resetCurrent(false);
     return current;
   }
 
@@ -94,13 +130,58 @@ public final class ClientMessage {
     return (conversationContents == null) ? 0 : conversationContents.size();
   }
 
+  // Get the cached messages for the conversation after reading any messages
+  // newer than the cache has.
   public List<Message> getConversationContents(ConversationSummary summary) {
-    if (conversationHead == null || summary == null || !conversationHead.id.equals(summary.id)) {
-      updateMessages(summary, true);
-    }
+    updateMessages(summary, false);
     return conversationContents;
   }
 
+  // HAS OLDER MESSAGES
+  //
+  // Check if the conversation has messages before the oldest cached one.
+  public boolean hasOlderMessages(ConversationSummary summary) {
+    final History history = (summary == null) ? null : histories.get(summary.id);
+    return history != null && !history.complete && !history.messages.isEmpty();
+  }
+
+  // LOAD OLDER MESSAGES
+  //
+  // Read the page of messages before the oldest cached message of the
+  // conversation. Returns how many messages were added to the front of the
+  // conversation's contents.
+  public int loadOlderMessages(ConversationSummary summary) {
+
+    if (!hasOlderMessages(summary)) {
+      return 0;
+    }
+
+    final History history = histories.get(summary.id);
+    final Message oldest = history.messages.get(0);
+
+    final List<Message> page = new ArrayList<>(view.getMessages(oldest.id, -MESSAGE_PAGE_COUNT));
+
+    if (page.isEmpty()) {
+      // The oldest message was deleted so there is nothing to page back from.
+      // Drop the history so that the next update starts again from the end.
+      LOG.warning("Failed to page back from %s, dropping history", oldest.id);
+      history.messages.clear();
+      history.complete = false;
+      return 0;
+    }
+
+    // The last message in the page is the oldest message that is already
+    // cached.
+    page.remove(page.size() - 1);
+
+    history.messages.addAll(0, page);
+    history.complete = page.isEmpty() || Uuid.equals(page.get(0).previous, Uuid.NULL);
+
+    LOG.info("Loaded %d older messages for conversation %s.", page.size(), summary.id);
+
+    return page.size();
+  }
+
   // For m-add command.
   public void addMessage(Uuid author, Uuid conversation, String body) {
     final boolean validInputs = isValidBody(body) && (author != null) && (conversation != null);
@@ -142,16 +223,17 @@ public final class ClientMessage {
       System.out.println("Current Conversation has no messages.");
 
     } else {
-      if (controller.deleteMessage(conversationHead.lastMessage, conversationHead.id)) {
-        resetCurrent(currentMessageCount() == 1);
-        LOG.info("Deleted message: UUID= %s", conversationHead.lastMessage);
+      final Uuid last = conversationContents.get(conversationContents.size() - 1).id;
+      if (controller.deleteMessage(last, contentsId)) {
+        // Reading after the deleted tail falls back to the newest page.
+        resetCurrent(false);
+        LOG.info("Deleted message: UUID= %s", last);
 
       } else {
         LOG.error("Error: Message could not be deleted.");
 
       }
     }
-    updateMessages(true);
   }
 
   // Delete message, removes message corresponding to given index, (m-delete <index> command)
@@ -169,7 +251,6 @@ public final class ClientMessage {
         if (msgIndex < currentMessageCount()) {
           Message msg = conversationContents.get(msgIndex);
           deleteMessage(msg);
-          updateMessages(true);
           System.out.format("Deleted message: UUID= %s\n", msg.id);
           LOG.info("Deleted message: UUID= %s", msg.id);
 
@@ -183,23 +264,23 @@ public final class ClientMessage {
       LOG.error("Error: message not deleted, please provide a number ndex.");
 
     }
-    updateMessages(true);
   }
 
-  // Delete message helper method
+  // Delete message helper method. The cached messages around a message
+  // deleted from the middle no longer link up, so they are read again.
   private void deleteMessage(Message msg) {
     if (currentMessageCount() == 0) {
       LOG.error("Error: Message could not be deleted, current Conversation has no messages");
 
     } else {
-        controller.deleteMessage(msg.id, conversationHead.id);
+        controller.deleteMessage(msg.id, contentsId);
+        updateMessages(true);
     }
-    updateMessages(true);
   }
 
   // Delete all messages
   public void deleteAllMessages() {
-    updateMessages(true);
+    updateMessages(false);
     if(conversationContents.size() == 0) {
       System.out.println("Current Conversation has no messages.");
 
@@ -208,18 +289,29 @@ public final class ClientMessage {
         deleteMessage(String.valueOf(i));
       }
     }
-    updateMessages(true);
+    updateMessages(false);
   }
 
   // For m-list-all command.
   // Show all messages attached to the current conversation. This will balk if the conversation
   // has too many messages (use m-next and m-show instead).
   public void showAllMessages() {
-    updateMessages(true);
+    updateMessages(false);
+
+    final ConversationSummary summary = conversationContext.getCurrent();
+    while (conversationContents.size() < LIST_ALL_COUNT && hasOlderMessages(summary)) {
+      if (loadOlderMessages(summary) == 0) {
+        // The history was dropped, start again from the newest page.
+        updateMessages(false);
+        break;
+      }
+    }
+
     if (conversationContents.size() == 0) {
       System.out.println("Current Conversation has no messages.");
 
     } else {
+      userContext.lookupAll(authorsOf(conversationContents));
       for (final Message m : conversationContents) {
         printMessage(m, userContext);
       }
@@ -238,7 +330,8 @@ public final class ClientMessage {
   // Accept an int for number of messages to attempt to show (1 by default).
   // Negative values go from newest to oldest.
   public void showMessages(int count) {
-    updateMessages(true);
+    updateMessages(false);
+    userContext.lookupAll(authorsOf(conversationContents));
     for (final Message m : conversationContents) {
       printMessage(m, userContext);
     }
@@ -254,49 +347,15 @@ public final class ClientMessage {
     Method.notImplemented();
   }
 
-  // Determine the next message ID of the current conversation to start pulling.
-  // This requires a read of the last read message to determine if the chain has been extended.
-  private Uuid getCurrentMessageFetchId(boolean replaceAll) {
-    if (replaceAll || conversationContents.isEmpty()) {
-      // Fetch/refetch all the messages.
-      conversationContents.clear();
-      LOG.info("Refetch all messages: replaceAll=%s firstMessage=%s", replaceAll,
-              conversationHead.firstMessage);
-      return conversationHead.firstMessage;
-    } else {
-      // Locate last known message. Its next, if any, becomes our starting point.
-      return getCurrentTailMessageId();
-    }
-  }
-
-  private Uuid getCurrentTailMessageId() {
-    Uuid nextMessageId = conversationContents.get(conversationContents.size() - 1).id;
-
-    final List<Message> messageTail = new ArrayList<>(view.getMessages(nextMessageId, 1));
-
-    if (messageTail.size() > 0) {
-      final Message msg = messageTail.get(0);
-      nextMessageId = msg.next;
-
-    } else {
-      // fall back.
-      LOG.warning("Failed to get tail of messages, starting from %s", nextMessageId);
-      conversationContents.clear();
-      nextMessageId = conversationHead.firstMessage;
-
-    }
-    return nextMessageId;
-  }
-
   // Update the list of messages for the current conversation.
-  // Currently rereads the entire message chain.
   public void updateMessages(boolean replaceAll) {
     updateMessages(conversationContext.getCurrent(), replaceAll);
 
   }
 
-  // Update the list of messages for the given conversation.
-  // Currently rereads the entire message chain.
+  // Update the list of messages for the given conversation. Only messages
+  // after the cached tail are read unless "replaceAll" is set, in which case
+  // the cache is dropped and the newest page is read again.
   public void updateMessages(ConversationSummary conversation, boolean replaceAll) {
 
     if (conversation == null) {
@@ -304,49 +363,129 @@ public final class ClientMessage {
 
       return;
     }
-    conversationHead = conversationContext.getConversation(conversation.id);
 
+    History history = histories.get(conversation.id);
+
+    if (history == null || replaceAll) {
+      history = new History();
+      histories.put(conversation.id, history);
+    }
+
+    if (history.messages.isEmpty()) {
+      readNewest(conversation.id, history);
+    } else {
+      readAfterTail(conversation.id, history);
+    }
+
+    contentsId = conversation.id;
+    conversationContents = history.messages;
 
+    LOG.info("Have %d messages for conversation %s (%s).",
+            conversationContents.size(), conversation.id, conversation.title);
+
+    // Set current to first message of conversation.
+    current = (conversationContents.size() > 0) ? conversationContents.get(0) : null;
+  }
+
+  // Read the newest page of messages in the conversation. This is the only
+  // read that needs the conversation itself, to find its last message.
+  private void readNewest(Uuid conversationId, History history) {
+
+    final Conversation conversationHead = conversationContext.getConversation(conversationId);
 
     if (conversationHead == null) {
       LOG.info("ConversationHead is null");
+      return;
+    }
 
-    } else {
+    LOG.info("ConversationHead: Title=\"%s\" UUID=%s first=%s last=%s\n",
+            conversationHead.title, conversationHead.id, conversationHead.firstMessage,
+            conversationHead.lastMessage);
 
-      LOG.info("ConversationHead: Title=\"%s\" UUID=%s first=%s last=%s\n",
-              conversationHead.title, conversationHead.id, conversationHead.firstMessage,
-              conversationHead.lastMessage);
+    if (Uuid.equals(conversationHead.lastMessage, Uuid.NULL)) {
+      history.complete = true;
+      return;
+    }
 
-      Uuid nextMessageId = getCurrentMessageFetchId(replaceAll);
+    // A negative range reads backwards from the last message and includes it,
+    // so ask for one less than a page.
+    final List<Message> page =
+        new ArrayList<>(view.getMessages(conversationHead.lastMessage, -(MESSAGE_PAGE_COUNT - 1)));
 
-      //  Stay in loop until all messages read (up to safety limit)
+    history.messages.addAll(page);
+    history.complete = page.isEmpty() || Uuid.equals(page.get(0).previous, Uuid.NULL);
+  }
 
-      while (!nextMessageId.equals(Uuid.NULL) && conversationContents.size() < MESSAGE_MAX_COUNT) {
+  // Read every message after the cached tail. The server includes the tail
+  // itself in each page, so a conversation with nothing new costs one small
+  // request.
+  private void readAfterTail(Uuid conversationId, History history) {
 
-        for (final Message msg : view.getMessages(nextMessageId, MESSAGE_FETCH_COUNT)) {
-          conversationContents.add(msg);
+    List<Message> page;
 
-          // Race: message possibly added since conversation fetched.  If that occurs,
-          // pretend the newer messages do not exist - they'll get picked up next time).
-          if (msg.next.equals(Uuid.NULL) || msg.id.equals(conversationHead.lastMessage)) {
-            msg.next = Uuid.NULL;
-            break;
-          }
-        }
-        nextMessageId = conversationContents.get(conversationContents.size() - 1).next;
+    do {
+
+      final Message tail = history.messages.get(history.messages.size() - 1);
+
+      page = new ArrayList<>(view.getMessages(tail.id, MESSAGE_PAGE_COUNT));
+
+      if (page.isEmpty()) {
+        // The tail was deleted, fall back to reading the newest page again.
+        LOG.warning("Failed to get tail of messages, starting from the end of %s", conversationId);
+        history.messages.clear();
+        history.complete = false;
+        readNewest(conversationId, history);
+        return;
       }
 
+      // Replace the tail so that its "next" is up to date, then add the rest.
+      history.messages.set(history.messages.size() - 1, page.get(0));
+      history.messages.addAll(page.subList(1, page.size()));
+
+    } while (page.size() > MESSAGE_PAGE_COUNT);
+  }
+
+  // WRITE CACHE
+  //
+  // Write the newest messages of each conversation with a history. Only the
+  // newest CACHED_MESSAGE_COUNT messages of each are kept, anything older is
+  // paged back in as normal.
+  void writeCache(OutputStream out) throws IOException {
+
+    Serializers.INTEGER.write(out, histories.size());
 
-      LOG.info("Retrieved %d messages for conversation %s (%s).\n",
-              conversationContents.size(), conversationHead.id, conversationHead.title);
+    for (final Map.Entry<Uuid, History> entry : histories.entrySet()) {
 
+      final List<Message> messages = entry.getValue().messages;
+      final int from = Math.max(0, messages.size() - CACHED_MESSAGE_COUNT);
 
+      Uuid.SERIALIZER.write(out, entry.getKey());
+      Serializers.BOOLEAN.write(out, entry.getValue().complete && from == 0);
+      MESSAGE_COLLECTION.write(out, messages.subList(from, messages.size()));
+    }
+  }
+
+  // READ CACHE
+  //
+  // Nothing read here is trusted to still be on the server. The first update
+  // of each conversation reads after the cached tail and, if the tail is gone,
+  // falls back to reading the newest page again.
+  void readCache(InputStream in) throws IOException {
+
+    final Map<Uuid, History> cached = new HashMap<>();
+
+    for (int remaining = Serializers.INTEGER.read(in); remaining > 0; remaining--) {
 
-      // Set current to first message of conversation.
-      current = (conversationContents.size() > 0) ? conversationContents.get(0) : null;
+      final Uuid conversation = Uuid.SERIALIZER.read(in);
+      final History history = new History();
 
+      history.complete = Serializers.BOOLEAN.read(in);
+      history.messages.addAll(MESSAGE_COLLECTION.read(in));
 
+      cached.put(conversation, history);
     }
+
+    histories.putAll(cached);
   }
 
   // Print Message.  User context is used to map from author UUID to name.
@@ -363,6 +502,14 @@ public final class ClientMessage {
     }
   }
 
+  private static Set<Uuid> authorsOf(Collection<Message> messages) {
+    final Set<Uuid> authors = new HashSet<>();
+    for (final Message m : messages) {
+      authors.add(m.author);
+    }
+    return authors;
+  }
+
   // Print Message outside of user context.
   public static void printMessage(Message m) {
     printMessage(m, null);
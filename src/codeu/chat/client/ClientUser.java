@@ -14,13 +14,21 @@
 
 package codeu.chat.client;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Logger;
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.store.Store;
 
@@ -28,7 +36,9 @@ public final class ClientUser {
 
   private final static Logger.Log LOG = Logger.newLog(ClientUser.class);
 
-  private static final Collection<Uuid> EMPTY = Arrays.asList(new Uuid[0]);
+  private static final Serializer<Collection<User>> USER_COLLECTION =
+      Serializers.collection(User.SERIALIZER);
+
   private final Controller controller;
   private final View view;
 
@@ -38,7 +48,15 @@ public final class ClientUser {
   private final Map<Uuid, User> usersById = new HashMap<>();
 
   // This is the set of users known to the server, sorted by name.
-  private static Store<String, User> usersByName = new Store<>(String.CASE_INSENSITIVE_ORDER);
+  private Store<String, User> usersByName = new Store<>(String.CASE_INSENSITIVE_ORDER);
+
+  // Ids that lookupAll asked the server for and it did not know. They are not
+  // asked for again until the users change.
+  private final Set<Uuid> notFound = new HashSet<>();
+
+  // The user generation that the users above are up to date with. Uuid.NULL
+  // is never given out by the server so the first update gets every user.
+  private Uuid generation = Uuid.NULL;
 
   public ClientUser(Controller controller, View view) {
     this.controller = controller;
@@ -178,6 +196,40 @@ public final class ClientUser {
     }
   }
 
+  // LOOKUP ALL
+  //
+  // Make sure every user in "ids" is known before looking them up one at a
+  // time (e.g. the authors of a page of messages). Any that are not known yet
+  // are read from the server with a single request, so a page costs at most
+  // one round trip however many authors are missing.
+  public void lookupAll(Collection<Uuid> ids) {
+
+    final Set<Uuid> missing = new HashSet<>();
+
+    for (final Uuid id : ids) {
+      if (!usersById.containsKey(id) && !notFound.contains(id)) {
+        missing.add(id);
+      }
+    }
+
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    final int asked = missing.size();
+
+    for (final User user : view.getUsers(missing)) {
+      forget(user.id);
+      usersById.put(user.id, user);
+      usersByName.insert(user.name, user);
+      missing.remove(user.id);
+    }
+
+    notFound.addAll(missing);
+
+    LOG.info("Read %d missing users, %d not found.", asked, missing.size());
+  }
+
   // Get the nickname of User
   public String getAlias(String name){
     updateUsers();
@@ -212,14 +264,44 @@ public final class ClientUser {
     return usersByName.all();
   }
 
+  // UPDATE USERS
+  //
+  // Only ask the server for the users that changed since the last update. When
+  // nothing has changed the answer is just the generation. If the server could
+  // not be reached the users already known are kept.
   public void updateUsers() {
-    usersById.clear();
-    usersByName = new Store<>(String.CASE_INSENSITIVE_ORDER);
 
-    for (final User user : view.getUsersExcluding(EMPTY)) {
+    final UserDelta delta = view.getUsersChangedSince(generation);
+
+    if (delta != null && !Uuid.equals(delta.generation, generation)) {
+      applyDelta(delta);
+    }
+  }
+
+  private void applyDelta(UserDelta delta) {
+
+    notFound.clear();
+
+    if (delta.full) {
+      usersById.clear();
+      usersByName = new Store<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    for (final User user : delta.updated) {
+      forget(user.id);
       usersById.put(user.id, user);
       usersByName.insert(user.name, user);
+
+      if (current != null && Uuid.equals(current.id, user.id)) {
+        current = user;
+      }
     }
+
+    for (final Uuid id : delta.removed) {
+      forget(id);
+    }
+
+    generation = delta.generation;
   }
 
  public void updateUsers(Collection<Uuid> deletion) {
@@ -230,6 +312,34 @@ public final class ClientUser {
       usersById.put(user.id, user);
       usersByName.insert(user.name, user);
     }
+
+    // This list is not tied to a generation, the next update must get all
+    // users again.
+    generation = Uuid.NULL;
+  }
+
+  // WRITE CACHE
+  //
+  // Write the known users and their generation so that the next run of the
+  // client only has to read the users that changed since.
+  void writeCache(OutputStream out) throws IOException {
+    Uuid.SERIALIZER.write(out, generation);
+    USER_COLLECTION.write(out, usersById.values());
+  }
+
+  void readCache(InputStream in) throws IOException {
+
+    final Uuid cachedGeneration = Uuid.SERIALIZER.read(in);
+    final Collection<User> users = USER_COLLECTION.read(in);
+
+    applyDelta(new UserDelta(cachedGeneration, true, users, new ArrayList<Uuid>()));
+  }
+
+  private void forget(Uuid id) {
+    final User old = usersById.remove(id);
+    if (old != null) {
+      usersByName.remove(old.name);
+    }
   }
 
 
@@ -19,16 +19,29 @@ import codeu.chat.common.Message;
 import codeu.chat.common.NetworkCode;
 import codeu.chat.common.User;
 import codeu.chat.util.Logger;
+import codeu.chat.util.Serializer;
 import codeu.chat.util.Serializers;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.connections.Connection;
 import codeu.chat.util.connections.ConnectionSource;
 import java.util.ArrayList;
+import java.util.Collection;
 
 public class Controller implements BasicController {
 
   private final static Logger.Log LOG = Logger.newLog(Controller.class);
 
+  // Serializers made from other serializers are made once here instead of on
+  // every call.
+  private static final Serializer<Collection<Message>> MESSAGE_COLLECTION =
+      Serializers.collection(Message.SERIALIZER);
+  private static final Serializer<User> NULLABLE_USER =
+      Serializers.nullable(User.SERIALIZER);
+  private static final Serializer<Message> NULLABLE_MESSAGE =
+      Serializers.nullable(Message.SERIALIZER);
+  private static final Serializer<Conversation> NULLABLE_CONVERSATION =
+      Serializers.nullable(Conversation.SERIALIZER);
+
   private final ConnectionSource source;
 
   public Controller(ConnectionSource source) {
@@ -47,7 +60,7 @@ public class Controller implements BasicController {
       Serializers.STRING.write(connection.out(), body);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.NEW_MESSAGE_RESPONSE) {
-        response = Serializers.nullable(Message.SERIALIZER).read(connection.in());
+        response = NULLABLE_MESSAGE.read(connection.in());
       } else {
         LOG.error("Response from server failed.");
       }
@@ -96,7 +109,7 @@ public class Controller implements BasicController {
       LOG.info("newUser: Request completed.");
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.NEW_USER_RESPONSE) {
-        response = Serializers.nullable(User.SERIALIZER).read(connection.in());
+        response = NULLABLE_USER.read(connection.in());
         LOG.info("newUser: Response completed.");
       } else {
         LOG.error("Response from server failed.");
@@ -122,7 +135,7 @@ public class Controller implements BasicController {
       LOG.info("newUser: Request completed.");
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.NEW_USER_RESPONSE) {
-        response = Serializers.nullable(User.SERIALIZER).read(connection.in());
+        response = NULLABLE_USER.read(connection.in());
         LOG.info("newUser: Response completed.");
       } else {
         LOG.error("Response from server failed.");
@@ -146,7 +159,7 @@ public class Controller implements BasicController {
       LOG.info("Delete User: Request completed.");
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.DELETE_USER_RESPONSE) {
-        response = Serializers.nullable(User.SERIALIZER).read(connection.in());
+        response = NULLABLE_USER.read(connection.in());
         LOG.info("deleteUser: Response completed.");
       } else {
         LOG.error("Response from server failed.");
@@ -170,7 +183,7 @@ public class Controller implements BasicController {
       LOG.info("setAlias: Request completed.");
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.NICKNAME_RESPONSE) {
-        response = Serializers.nullable(User.SERIALIZER).read(connection.in());
+        response = NULLABLE_USER.read(connection.in());
         LOG.info("setAlias: Response completed.");
       } else {
         LOG.error("Response from server failed.");
@@ -195,7 +208,7 @@ public class Controller implements BasicController {
       Uuid.SERIALIZER.write(connection.out(), owner);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.NEW_CONVERSATION_RESPONSE) {
-        response = Serializers.nullable(Conversation.SERIALIZER).read(connection.in());
+        response = NULLABLE_CONVERSATION.read(connection.in());
       } else {
         LOG.error("Response from server failed.");
       }
@@ -241,7 +254,7 @@ public class Controller implements BasicController {
       Serializers.STRING.write(connection.out(), author);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.SEARCHRESPONSE){
-         messagesbyuserid.addAll(Serializers.collection(Message.SERIALIZER).read(connection.in()));
+         messagesbyuserid.addAll(MESSAGE_COLLECTION.read(connection.in()));
       }
 
      } catch(Exception ex){ System.out.println("ERROR: Exception during call on server. Check log for details.");}
@@ -259,7 +272,7 @@ public class Controller implements BasicController {
 
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.TAGRESPONSE){
-         messagesByTag.addAll(Serializers.collection(Message.SERIALIZER).read(connection.in()));
+         messagesByTag.addAll(MESSAGE_COLLECTION.read(connection.in()));
       }
 
     } catch(Exception ex){ System.out.println("ERROR: Exception during call on server. Check log for details.");}
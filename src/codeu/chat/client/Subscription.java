@@ -0,0 +1,144 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.client;
+
+import java.io.IOException;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.common.ServerEvent;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
+
+// SUBSCRIPTION
+//
+// Keeps one connection open to the server and passes on every event the
+// server pushes over it. The events are read on the subscription's own thread
+// so listeners must hand any UI work off to the right thread.
+//
+// If the connection is lost the subscription will keep trying to open a new
+// one. Events sent while it was down are lost, so "onConnected" is called
+// every time a connection is made to let the listener refresh everything.
+public final class Subscription {
+
+  private final static Logger.Log LOG = Logger.newLog(Subscription.class);
+
+  private static final long RETRY_MS = 5000;  // 5 seconds
+
+  public interface Listener {
+
+    // Called once the server has accepted the subscription.
+    void onConnected();
+
+    void onEvent(ServerEvent event);
+  }
+
+  private final ConnectionSource source;
+  private final Listener listener;
+
+  private volatile boolean running = false;
+  private volatile Connection current = null;
+  private Thread reader = null;
+
+  public Subscription(ConnectionSource source, Listener listener) {
+    this.source = source;
+    this.listener = listener;
+  }
+
+  public synchronized void start() {
+
+    if (running) {
+      return;
+    }
+
+    running = true;
+
+    reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (running) {
+          try {
+            listen();
+          } catch (Exception ex) {
+            if (running) {
+              LOG.warning("Lost subscription to server: %s", ex.getMessage());
+              pause();
+            }
+          }
+        }
+      }
+    }, "subscription");
+
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  // STOP
+  //
+  // Closing the connection is what wakes the reader if it is waiting on the
+  // server.
+  public synchronized void stop() {
+
+    running = false;
+
+    final Connection connection = current;
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (IOException ex) {
+        LOG.error(ex, "Exception while closing subscription.");
+      }
+    }
+
+    if (reader != null) {
+      reader.interrupt();
+      reader = null;
+    }
+  }
+
+  private void listen() throws IOException {
+
+    try (final Connection connection = source.connect()) {
+
+      current = connection;
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.SUBSCRIBE_REQUEST);
+
+      if (Serializers.INTEGER.read(connection.in()) != NetworkCode.SUBSCRIBE_RESPONSE) {
+        throw new IOException("Server did not accept subscription");
+      }
+
+      LOG.info("Subscribed to server events.");
+      listener.onConnected();
+
+      while (running) {
+        listener.onEvent(ServerEvent.SERIALIZER.read(connection.in()));
+      }
+
+    } finally {
+      current = null;
+    }
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(RETRY_MS);
+    } catch (InterruptedException ex) {
+      // "stop" interrupts the reader, the loop will see that it is no longer
+      // running.
+    }
+  }
+}
@@ -16,15 +16,22 @@ package codeu.chat.client;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import codeu.chat.common.BasicView;
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationDelta;
+import codeu.chat.common.ConversationPage;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.common.LogicalView;
 import codeu.chat.common.Message;
 import codeu.chat.common.NetworkCode;
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Logger;
+import codeu.chat.util.Serializer;
 import codeu.chat.util.Serializers;
 import codeu.chat.util.Time;
 import codeu.chat.util.Uuid;
@@ -40,6 +47,23 @@ public final class View implements BasicView, LogicalView{
 
   private final static Logger.Log LOG = Logger.newLog(View.class);
 
+  // Serializers made from other serializers are made once here instead of on
+  // every call.
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+  private static final Serializer<Collection<User>> USER_COLLECTION =
+      Serializers.collection(User.SERIALIZER);
+  private static final Serializer<Collection<Message>> MESSAGE_COLLECTION =
+      Serializers.collection(Message.SERIALIZER);
+  private static final Serializer<Collection<Conversation>> CONVERSATION_COLLECTION =
+      Serializers.collection(Conversation.SERIALIZER);
+  private static final Serializer<Collection<ConversationSummary>> SUMMARY_COLLECTION =
+      Serializers.collection(ConversationSummary.SERIALIZER);
+  private static final Serializer<Collection<ConversationActivity>> ACTIVITY_COLLECTION =
+      Serializers.collection(ConversationActivity.SERIALIZER);
+  private static final Serializer<Map<String, Long>> STATS_SERIALIZER =
+      Serializers.map(Serializers.STRING, Serializers.LONG);
+
   private final ConnectionSource source;
 
   public View(ConnectionSource source) {
@@ -54,10 +78,10 @@ public final class View implements BasicView, LogicalView{
     try (final Connection connection = source.connect()) {
 
       Serializers.INTEGER.write(connection.out(), NetworkCode.GET_USERS_BY_ID_REQUEST);
-      Serializers.collection(Uuid.SERIALIZER).write(connection.out(), ids);
+      UUID_COLLECTION.write(connection.out(), ids);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_USERS_BY_ID_RESPONSE) {
-        users.addAll(Serializers.collection(User.SERIALIZER).read(connection.in()));
+        users.addAll(USER_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -80,7 +104,7 @@ public final class View implements BasicView, LogicalView{
       Serializers.INTEGER.write(connection.out(), NetworkCode.GET_ALL_CONVERSATIONS_REQUEST);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_ALL_CONVERSATIONS_RESPONSE) {
-        summaries.addAll(Serializers.collection(ConversationSummary.SERIALIZER).read(connection.in()));
+        summaries.addAll(SUMMARY_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -100,10 +124,10 @@ public final class View implements BasicView, LogicalView{
     try (final Connection connection = source.connect()) {
 
       Serializers.INTEGER.write(connection.out(), NetworkCode.GET_CONVERSATIONS_BY_ID_REQUEST);
-      Serializers.collection(Uuid.SERIALIZER).write(connection.out(), ids);
+      UUID_COLLECTION.write(connection.out(), ids);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_CONVERSATIONS_BY_ID_RESPONSE) {
-        conversations.addAll(Serializers.collection(Conversation.SERIALIZER).read(connection.in()));
+        conversations.addAll(CONVERSATION_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -123,10 +147,10 @@ public final class View implements BasicView, LogicalView{
     try (final Connection connection = source.connect()) {
 
       Serializers.INTEGER.write(connection.out(), NetworkCode.GET_MESSAGES_BY_ID_REQUEST);
-      Serializers.collection(Uuid.SERIALIZER).write(connection.out(), ids);
+      UUID_COLLECTION.write(connection.out(), ids);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_MESSAGES_BY_ID_RESPONSE) {
-        messages.addAll(Serializers.collection(Message.SERIALIZER).read(connection.in()));
+        messages.addAll(MESSAGE_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -160,6 +184,110 @@ public final class View implements BasicView, LogicalView{
     return generation;
   }
 
+  // GET USERS CHANGED SINCE
+  //
+  // Unlike the other calls, this returns null if the server could not be
+  // reached so that the caller can tell "no changes" from "no answer" and keep
+  // the users it already has.
+  @Override
+  public UserDelta getUsersChangedSince(Uuid generation) {
+
+    UserDelta delta = null;
+
+    try (final Connection connection = source.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.GET_USERS_CHANGED_REQUEST);
+      Uuid.SERIALIZER.write(connection.out(), generation);
+
+      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_USERS_CHANGED_RESPONSE) {
+        delta = UserDelta.SERIALIZER.read(connection.in());
+      } else {
+        LOG.error("Response from server failed.");
+      }
+    } catch (Exception ex) {
+      System.out.println("ERROR: Exception during call on server. Check log for details.");
+      LOG.error(ex, "Exception during call on server.");
+    }
+
+    return delta;
+  }
+
+  // GET CONVERSATIONS CHANGED SINCE
+  //
+  // Like getUsersChangedSince, this returns null if the server could not be
+  // reached.
+  @Override
+  public ConversationDelta getConversationsChangedSince(Uuid generation) {
+
+    ConversationDelta delta = null;
+
+    try (final Connection connection = source.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.GET_CONVERSATIONS_CHANGED_REQUEST);
+      Uuid.SERIALIZER.write(connection.out(), generation);
+
+      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_CONVERSATIONS_CHANGED_RESPONSE) {
+        delta = ConversationDelta.SERIALIZER.read(connection.in());
+      } else {
+        LOG.error("Response from server failed.");
+      }
+    } catch (Exception ex) {
+      System.out.println("ERROR: Exception during call on server. Check log for details.");
+      LOG.error(ex, "Exception during call on server.");
+    }
+
+    return delta;
+  }
+
+  @Override
+  public ConversationPage getConversationPage(int order, Uuid after, int count) {
+
+    ConversationPage page = null;
+
+    try (final Connection connection = source.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.GET_CONVERSATION_PAGE_REQUEST);
+      Serializers.INTEGER.write(connection.out(), order);
+      Uuid.SERIALIZER.write(connection.out(), after);
+      Serializers.INTEGER.write(connection.out(), count);
+
+      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_CONVERSATION_PAGE_RESPONSE) {
+        page = ConversationPage.SERIALIZER.read(connection.in());
+      } else {
+        LOG.error("Response from server failed.");
+      }
+    } catch (Exception ex) {
+      System.out.println("ERROR: Exception during call on server. Check log for details.");
+      LOG.error(ex, "Exception during call on server.");
+    }
+
+    return page;
+  }
+
+  @Override
+  public Collection<ConversationActivity> getRecentConversations(int count) {
+
+    final Collection<ConversationActivity> recent = new ArrayList<>();
+
+    try (final Connection connection = source.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.GET_RECENT_CONVERSATIONS_REQUEST);
+      Serializers.INTEGER.write(connection.out(), count);
+
+      if (Serializers.INTEGER.read(connection.in()) ==
+          NetworkCode.GET_RECENT_CONVERSATIONS_RESPONSE) {
+        recent.addAll(ACTIVITY_COLLECTION.read(connection.in()));
+      } else {
+        LOG.error("Response from server failed.");
+      }
+    } catch (Exception ex) {
+      System.out.println("ERROR: Exception during call on server. Check log for details.");
+      LOG.error(ex, "Exception during call on server.");
+    }
+
+    return recent;
+  }
+
   @Override
   public Collection<User> getUsersExcluding(Collection<Uuid> ids) {
 
@@ -168,10 +296,10 @@ public final class View implements BasicView, LogicalView{
     try (final Connection connection = source.connect()) {
 
       Serializers.INTEGER.write(connection.out(), NetworkCode.GET_USERS_EXCLUDING_REQUEST);
-      Serializers.collection(Uuid.SERIALIZER).write(connection.out(), ids);
+      UUID_COLLECTION.write(connection.out(), ids);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_USERS_EXCLUDING_RESPONSE) {
-        users.addAll(Serializers.collection(User.SERIALIZER).read(connection.in()));
+        users.addAll(USER_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -195,7 +323,7 @@ public final class View implements BasicView, LogicalView{
       Time.SERIALIZER.write(connection.out(), end);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_CONVERSATIONS_BY_TIME_RESPONSE) {
-        conversations.addAll(Serializers.collection(Conversation.SERIALIZER).read(connection.in()));
+        conversations.addAll(CONVERSATION_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -218,7 +346,7 @@ public final class View implements BasicView, LogicalView{
       Serializers.STRING.write(connection.out(), filter);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_CONVERSATIONS_BY_TITLE_RESPONSE) {
-        conversations.addAll(Serializers.collection(Conversation.SERIALIZER).read(connection.in()));
+        conversations.addAll(CONVERSATION_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -242,7 +370,7 @@ public final class View implements BasicView, LogicalView{
       Time.SERIALIZER.write(connection.out(), end);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_MESSAGES_BY_TIME_RESPONSE) {
-        messages.addAll(Serializers.collection(Message.SERIALIZER).read(connection.in()));
+        messages.addAll(MESSAGE_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -267,7 +395,7 @@ public final class View implements BasicView, LogicalView{
       Serializers.INTEGER.write(connection.out(), range);
 
       if (Serializers.INTEGER.read(connection.in()) == NetworkCode.GET_MESSAGES_BY_RANGE_RESPONSE) {
-        messages.addAll(Serializers.collection(Message.SERIALIZER).read(connection.in()));
+        messages.addAll(MESSAGE_COLLECTION.read(connection.in()));
       } else {
         LOG.error("Response from server failed.");
       }
@@ -279,4 +407,30 @@ public final class View implements BasicView, LogicalView{
 
     return messages;
   }
+
+  // GET STATS
+  //
+  // Get the server's stats as name/value pairs. This is for operators, so it
+  // is not part of the basic or logical views.
+  public Map<String, Long> getStats() {
+
+    final Map<String, Long> stats = new LinkedHashMap<>();
+
+    try (final Connection connection = source.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.STATS_REQUEST);
+
+      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.STATS_RESPONSE) {
+        stats.putAll(STATS_SERIALIZER.read(connection.in()));
+      } else {
+        LOG.error("Response from server failed.");
+      }
+
+    } catch (Exception ex) {
+      System.out.println("ERROR: Exception during call on server. Check log for details.");
+      LOG.error(ex, "Exception during call on server.");
+    }
+
+    return stats;
+  }
 }
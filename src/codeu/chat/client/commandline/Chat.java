@@ -14,12 +14,18 @@
 
 package codeu.chat.client.commandline;
 
+import java.util.Map;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import codeu.chat.client.ClientCache;
 import codeu.chat.client.ClientContext;
 import codeu.chat.client.Controller;
+import codeu.chat.client.Subscription;
 import codeu.chat.client.View;
 import codeu.chat.common.ConversationSummary;
+import codeu.chat.common.ServerEvent;
+import codeu.chat.util.connections.ConnectionSource;
 import codeu.chat.util.Logger;
 import codeu.chat.client.ClientUser;
 import codeu.chat.util.Uuid;
@@ -34,13 +40,51 @@ public final class Chat {
 
   private final static int PAGE_SIZE = 10;
 
+  // How many conversations "c-recent" shows when no count is given.
+  private final static int RECENT_COUNT = 10;
+
   private boolean alive = true;
 
   private final ClientContext clientContext;
 
+  private final View view;
+
+  private ClientCache cache = null;
+
+  // Events pushed by the server since the last prompt. They arrive on the
+  // subscription's thread and are only read before each prompt.
+  private final ConcurrentLinkedQueue<ServerEvent> unseen = new ConcurrentLinkedQueue<>();
+
   // Constructor - sets up the Chat Application
   public Chat(Controller controller, View view) {
     clientContext = new ClientContext(controller, view);
+    this.view = view;
+  }
+
+  // Start from what the cache has and save back to it on "exit". Commands run
+  // on the caller's thread, so the save is made there between commands rather
+  // than from an exit hook that could run in the middle of one.
+  public void useCache(ClientCache cache) {
+    cache.load(clientContext);
+    this.cache = cache;
+  }
+
+  // Ask the server to push changes so that new messages and conversations can
+  // be pointed out without polling for them.
+  public Subscription subscribe(ConnectionSource source) {
+
+    final Subscription subscription = new Subscription(source, new Subscription.Listener() {
+      @Override
+      public void onConnected() { }
+
+      @Override
+      public void onEvent(ServerEvent event) {
+        unseen.add(event);
+      }
+    });
+
+    subscription.start();
+    return subscription;
   }
 
   // Print help message.
@@ -51,6 +95,7 @@ public final class Chat {
     System.out.println("   sign-in <username>  - sign in as user <username>.");
     System.out.println("   sign-out  - sign out current user.");
     System.out.println("   current   - show current user, conversation, message.");
+    System.out.println("   stats     - show the server's stats.");
     System.out.println("User commands:");
     System.out.println("   u-add <name> [alias] - add a new user. [Optional Nickname]");
     System.out.println("   u-delete <name> - delete a User");
@@ -61,6 +106,7 @@ public final class Chat {
     System.out.println("   c-add <title>    - add a new conversation.");
     System.out.println("   c-delete <title> - delete the conversation corresponding to the given title.");
     System.out.println("   c-list-all       - list all conversations known to system.");
+    System.out.println("   c-recent [count] - list the most recently active conversations.");
     System.out.println("   c-select <index> - select conversation from list.");
     System.out.println("Message commands:");
     System.out.println("   m-add <body>     - add a new message to the current conversation.");
@@ -79,6 +125,34 @@ public final class Chat {
     System.out.print(PROMPT);
   }
 
+  // Print a one line summary of what changed on the server since the last
+  // prompt. Only new messages and conversations are worth pointing out.
+  private void showUnseen() {
+
+    final Uuid currentId = clientContext.conversation.getCurrentId();
+
+    int here = 0;
+    int elsewhere = 0;
+    int conversations = 0;
+
+    for (ServerEvent event = unseen.poll(); event != null; event = unseen.poll()) {
+      if (event.type == ServerEvent.MESSAGE_ADDED) {
+        if (currentId != null && Uuid.equals(currentId, event.parent)) {
+          here++;
+        } else {
+          elsewhere++;
+        }
+      } else if (event.type == ServerEvent.CONVERSATION_ADDED) {
+        conversations++;
+      }
+    }
+
+    if (here + elsewhere + conversations > 0) {
+      System.out.format("(new: %d message(s) here, %d message(s) elsewhere, %d conversation(s))\n",
+          here, elsewhere, conversations);
+    }
+  }
+
   // Parse and execute a single command.
   private void doOneCommand(Scanner lineScanner) {
 
@@ -92,6 +166,10 @@ public final class Chat {
 
       alive = false;
 
+      if (cache != null) {
+        cache.save(clientContext);
+      }
+
     } else if (token.equals("searchByName")) { //Serches for Messages by a specific User
 
      if (tokenScanner.hasNext()){
@@ -131,6 +209,10 @@ public final class Chat {
 
       showCurrent();
 
+    } else if (token.equals("stats")) {
+
+      showStats();
+
     } else if (token.equals("u-add")) { //Adds a user
 
       String userName = "";
@@ -215,6 +297,11 @@ public final class Chat {
 
 
 
+    } else if (token.equals("c-recent")) {
+
+      final int count = (tokenScanner.hasNextInt()) ? tokenScanner.nextInt() : RECENT_COUNT;
+      clientContext.conversation.showRecentConversations(count);
+
     } else if (token.equals("c-select")) {
 
       selectConversation(lineScanner);
@@ -300,6 +387,13 @@ public final class Chat {
     tokenScanner.close();
   }
 
+  // Show every stat the server reports, one per line.
+  private void showStats() {
+    for (final Map.Entry<String, Long> stat : view.getStats().entrySet()) {
+      System.out.format(" %-48s %d\n", stat.getKey(), stat.getValue());
+    }
+  }
+
   // Sign in a user.
   private void signInUser(String name) {
     if (!clientContext.user.signInUser(name)) {
@@ -409,6 +503,7 @@ public final class Chat {
   public boolean handleCommand(Scanner lineScanner) {
 
     try {
+      showUnseen();
       promptForCommand();
       doOneCommand(lineScanner);
     } catch (Exception ex) {
@@ -441,7 +536,7 @@ public final class Chat {
                       lineScanner, PAGE_SIZE);
       if (navigator.chooseFromList()) {
         newCurrent = navigator.getSelectedChoice();
-        clientContext.message.resetCurrent(newCurrent != previous);
+        clientContext.message.resetCurrent(false);
         System.out.format("OK. Conversation \"%s\" selected.\n", newCurrent.title);
       } else {
         System.out.println("OK. Current Conversation is unchanged.");
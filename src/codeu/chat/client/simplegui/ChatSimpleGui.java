@@ -15,28 +15,69 @@
 package codeu.chat.client.simplegui;
 
 import java.awt.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import javax.swing.*;
 import javax.swing.border.Border;
 
+import codeu.chat.client.AsyncRunner;
+import codeu.chat.client.ClientCache;
 import codeu.chat.client.ClientContext;
 import codeu.chat.client.Controller;
+import codeu.chat.client.Subscription;
 import codeu.chat.client.View;
+import codeu.chat.common.ServerEvent;
 import codeu.chat.util.Logger;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.ConnectionSource;
 
 // Chat - top-level client application - Java Simple GUI (using Java Swing)
 public final class ChatSimpleGui {
 
   private final static Logger.Log LOG = Logger.newLog(ChatSimpleGui.class);
 
+  // Runs callbacks on the Swing thread.
+  private static final Executor SWING = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      SwingUtilities.invokeLater(command);
+    }
+  };
+
   private JFrame mainFrame;
 
   private final ClientContext clientContext;
 
+  // ClientContext is not thread safe, so the panels do all their work with it
+  // on this runner's single worker thread.
+  private final ExecutorService worker = AsyncRunner.newExecutor("client-worker", 1);
+  private final AsyncRunner runner = new AsyncRunner(worker, SWING);
+
+  private UserPanel userPanel;
+  private ConversationPanel conversationPanel;
+  private MessagePanel messagePanel;
+
+  private Subscription subscription = null;
+
   // Constructor - sets up the Chat Application
   public ChatSimpleGui(Controller controller, View view) {
     clientContext = new ClientContext(controller, view);
   }
 
+  // Start from what the cache has and save back to it when the program exits.
+  public void useCache(ClientCache cache) {
+    cache.load(clientContext);
+    cache.saveOnExit(clientContext, worker);
+  }
+
+  // Have the panels follow changes pushed by the server. The subscription is
+  // started once the panels exist.
+  public void subscribe(ConnectionSource source) {
+    subscription = new Subscription(source, new Refresher());
+  }
+
   // Run the GUI client
   public void run() {
 
@@ -45,6 +86,10 @@ public final class ChatSimpleGui {
       initialize();
       mainFrame.setVisible(true);
 
+      if (subscription != null) {
+        subscription.start();
+      }
+
     } catch (Exception ex) {
       System.out.println("ERROR: Exception in ChatSimpleGui.run. Check log for details.");
       LOG.error(ex, "Exception in ChatSimpleGui.run");
@@ -72,17 +117,22 @@ public final class ChatSimpleGui {
     mainViewPanel.setBorder(paneBorder());
 
     // Build main panels - Users, Conversations, Messages.
-    final JPanel usersViewPanel = new UserPanel(clientContext);
+    final UserPanel usersViewPanel = new UserPanel(clientContext, runner);
     usersViewPanel.setBorder(paneBorder());
     final GridBagConstraints usersViewC = new GridBagConstraints();
 
-    final MessagePanel messagesViewPanel = new MessagePanel(clientContext);
+    final MessagePanel messagesViewPanel = new MessagePanel(clientContext, runner);
     messagesViewPanel.setBorder(paneBorder());
     final GridBagConstraints messagesViewC = new GridBagConstraints();
 
     // ConversationsPanel gets access to MessagesPanel
-    final JPanel conversationsViewPanel = new ConversationPanel(clientContext, messagesViewPanel);
+    final ConversationPanel conversationsViewPanel =
+        new ConversationPanel(clientContext, runner, messagesViewPanel);
     conversationsViewPanel.setBorder(paneBorder());
+
+    userPanel = usersViewPanel;
+    conversationPanel = conversationsViewPanel;
+    messagePanel = messagesViewPanel;
     final GridBagConstraints conversationViewC = new GridBagConstraints();
 
     // Placement of main panels.
@@ -116,4 +166,78 @@ public final class ChatSimpleGui {
     mainFrame.add(mainViewPanel);
     mainFrame.pack();
   }
+
+  // REFRESHER
+  //
+  // Marks which panels are out of date as events arrive and updates them on
+  // the Swing thread. A burst of events only queues one update, so each panel
+  // is refreshed at most once per burst.
+  private final class Refresher implements Subscription.Listener, Runnable {
+
+    private boolean users = false;
+    private boolean conversations = false;
+    private final Set<Uuid> conversationsWithMessages = new HashSet<>();
+    private boolean scheduled = false;
+
+    @Override
+    public synchronized void onConnected() {
+      // Anything could have changed while there was no connection.
+      users = true;
+      conversations = true;
+      schedule();
+    }
+
+    @Override
+    public synchronized void onEvent(ServerEvent event) {
+      if (event.type == ServerEvent.USER_CHANGED) {
+        users = true;
+      } else if (event.type == ServerEvent.CONVERSATION_ADDED) {
+        conversations = true;
+      } else if (event.type == ServerEvent.MESSAGE_ADDED) {
+        conversationsWithMessages.add(event.parent);
+      }
+      schedule();
+    }
+
+    private void schedule() {
+      if (!scheduled) {
+        scheduled = true;
+        SwingUtilities.invokeLater(this);
+      }
+    }
+
+    @Override
+    public void run() {
+
+      final boolean refreshUsers;
+      final boolean refreshConversations;
+      final Set<Uuid> refreshMessages;
+
+      synchronized (this) {
+        refreshUsers = users;
+        refreshConversations = conversations;
+        // After a reconnect the current conversation may have missed messages.
+        refreshMessages = conversations ? null : new HashSet<>(conversationsWithMessages);
+
+        users = false;
+        conversations = false;
+        conversationsWithMessages.clear();
+        scheduled = false;
+      }
+
+      try {
+        if (refreshUsers) {
+          userPanel.refresh();
+        }
+        if (refreshConversations) {
+          conversationPanel.refresh();
+        }
+        if (refreshMessages == null || !refreshMessages.isEmpty()) {
+          messagePanel.refresh(refreshMessages);
+        }
+      } catch (Exception ex) {
+        LOG.error(ex, "Exception while refreshing panels.");
+      }
+    }
+  }
 }
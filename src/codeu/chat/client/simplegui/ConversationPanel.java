@@ -17,12 +17,18 @@ package codeu.chat.client.simplegui;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import codeu.chat.client.AsyncRunner;
+import codeu.chat.client.Callback;
 import codeu.chat.client.ClientContext;
 import codeu.chat.common.ConversationSummary;
+import codeu.chat.util.Uuid;
 
 // NOTE: JPanel is serializable, but there is no need to serialize ConversationPanel
 // without the @SuppressWarnings, the compiler will complain of no override for serialVersionUID
@@ -30,15 +36,44 @@ import codeu.chat.common.ConversationSummary;
 public final class ConversationPanel extends JPanel {
 
   private final ClientContext clientContext;
+  private final AsyncRunner runner;
+  private final DefaultListModel<String> listModel = new DefaultListModel<>();
   private final MessagePanel messagePanel;
 
-  public ConversationPanel(ClientContext clientContext, MessagePanel messagePanel) {
+  // The conversations being shown, in list order. Only used on the Swing
+  // thread, so selections can be looked up without going to the worker.
+  private List<ConversationSummary> summaries = new ArrayList<>();
+
+  // Replaces the list with the conversations read on the worker thread.
+  private final Callback<List<ConversationSummary>> showConversations =
+      new Callback<List<ConversationSummary>>() {
+        @Override
+        public void onResult(List<ConversationSummary> conversations) {
+          summaries = conversations;
+          listModel.clear();
+          for (final ConversationSummary conv : conversations) {
+            listModel.addElement(conv.title);
+          }
+        }
+      };
+
+  // All work with clientContext is done through the runner so that the Swing
+  // thread never waits on the server.
+  public ConversationPanel(ClientContext clientContext,
+                           AsyncRunner runner,
+                           MessagePanel messagePanel) {
     super(new GridBagLayout());
     this.clientContext = clientContext;
+    this.runner = runner;
     this.messagePanel = messagePanel;
     initialize();
   }
 
+  // External agent calls this to trigger an update of this panel's contents.
+  public void refresh() {
+    getAllConversations();
+  }
+
   private void initialize() {
 
     // This panel contains from top to bottom: a title bar,
@@ -59,7 +94,6 @@ public final class ConversationPanel extends JPanel {
     final JPanel listShowPanel = new JPanel();
     final GridBagConstraints listPanelC = new GridBagConstraints();
 
-    final DefaultListModel<String> listModel = new DefaultListModel<>();
     final JList<String> objectList = new JList<>(listModel);
     objectList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
     objectList.setVisibleRowCount(15);
@@ -112,7 +146,7 @@ public final class ConversationPanel extends JPanel {
     updateButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        ConversationPanel.this.getAllConversations(listModel);
+        ConversationPanel.this.getAllConversations();
       }
     });
 
@@ -120,17 +154,21 @@ public final class ConversationPanel extends JPanel {
     addButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        if (clientContext.user.hasCurrent()) {
-          final String s = (String) JOptionPane.showInputDialog(
-              ConversationPanel.this, "Enter title:", "Add Conversation", JOptionPane.PLAIN_MESSAGE,
-              null, null, "");
-          if (s != null && s.length() > 0) {
-            clientContext.conversation.startConversation(s, clientContext.user.getCurrent().id);
-            ConversationPanel.this.getAllConversations(listModel);
+        runner.run(new Callable<Uuid>() {
+          @Override
+          public Uuid call() {
+            return clientContext.user.hasCurrent() ? clientContext.user.getCurrent().id : null;
           }
-        } else {
-          JOptionPane.showMessageDialog(ConversationPanel.this, "You are not signed in.");
-        }
+        }, new Callback<Uuid>() {
+          @Override
+          public void onResult(Uuid owner) {
+            if (owner != null) {
+              addConversation(owner);
+            } else {
+              JOptionPane.showMessageDialog(ConversationPanel.this, "You are not signed in.");
+            }
+          }
+        });
       }
     });
 
@@ -143,25 +181,59 @@ public final class ConversationPanel extends JPanel {
           final String data = objectList.getSelectedValue();
           final ConversationSummary cs = ConversationPanel.this.lookupByTitle(data, index);
 
-          clientContext.conversation.setCurrent(cs);
+          // The worker runs one call at a time, so the conversation will be
+          // current before the message panel reads it.
+          runner.run(new Callable<Void>() {
+            @Override
+            public Void call() {
+              clientContext.conversation.setCurrent(cs);
+              return null;
+            }
+          }, null);
 
           messagePanel.update(cs);
         }
       }
     });
 
-    getAllConversations(listModel);
+    getAllConversations();
   }
 
-  // Populate ListModel - updates display objects.
-  private void getAllConversations(DefaultListModel<String> convDisplayList) {
+  // Ask for a title and start the conversation on the worker thread.
+  private void addConversation(final Uuid owner) {
+    final String s = (String) JOptionPane.showInputDialog(
+        ConversationPanel.this, "Enter title:", "Add Conversation", JOptionPane.PLAIN_MESSAGE,
+        null, null, "");
+    if (s != null && s.length() > 0) {
+      runner.run(new Callable<List<ConversationSummary>>() {
+        @Override
+        public List<ConversationSummary> call() {
+          clientContext.conversation.startConversation(s, owner);
+          return conversationSummaries();
+        }
+      }, showConversations);
+    }
+  }
 
-    clientContext.conversation.updateAllConversations(false);
-    convDisplayList.clear();
+  // Populate ListModel - updates display objects. Refreshes asked for while
+  // one is still waiting to run are merged into it.
+  private void getAllConversations() {
+    runner.read("conversations", new Callable<List<ConversationSummary>>() {
+      @Override
+      public List<ConversationSummary> call() {
+        clientContext.conversation.updateAllConversations(false);
+        return conversationSummaries();
+      }
+    }, showConversations);
+  }
 
+  // Only called on the worker thread.
+  private List<ConversationSummary> conversationSummaries() {
+    final List<ConversationSummary> conversations = new ArrayList<>();
     for (final ConversationSummary conv : clientContext.conversation.getConversationSummaries()) {
-      convDisplayList.addElement(conv.title);
+      conversations.add(conv);
     }
+    return conversations;
   }
 
   // Locate the Conversation object for a selected title string.
@@ -169,7 +241,7 @@ public final class ConversationPanel extends JPanel {
   private ConversationSummary lookupByTitle(String title, int index) {
 
     int localIndex = 0;
-    for (final ConversationSummary cs : clientContext.conversation.getConversationSummaries()) {
+    for (final ConversationSummary cs : summaries) {
       if ((localIndex >= index) && cs.title.equals(title)) {
         return cs;
       }
@@ -0,0 +1,184 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.client.simplegui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.AbstractListModel;
+
+import codeu.chat.common.Message;
+import codeu.chat.util.Uuid;
+
+// MESSAGE LIST MODEL
+//
+// The rows of the message panel. A row is only formatted when the list asks
+// for it, which (with a fixed cell height) is only for the rows on screen,
+// and each row is formatted once. When more messages of the conversation
+// being shown arrive, newer or older, only those rows are added to the model
+// so the list keeps its scroll position and selection.
+//
+// Only used on the Swing thread.
+@SuppressWarnings("serial")
+final class MessageListModel extends AbstractListModel<String> {
+
+  // Returned by show when the rows were replaced rather than added to.
+  static final int REPLACED = -1;
+
+  private Uuid conversation = null;
+  private List<Message> messages = new ArrayList<>();
+
+  private final Map<Uuid, String> authors = new HashMap<>();
+  private final Map<Uuid, String> rows = new HashMap<>();
+
+  @Override
+  public int getSize() {
+    return messages.size();
+  }
+
+  @Override
+  public String getElementAt(int index) {
+
+    final Message message = messages.get(index);
+
+    String row = rows.get(message.id);
+
+    if (row == null) {
+      // Display author name if available.  Otherwise display the author UUID.
+      final String authorName = authors.get(message.author);
+
+      row = String.format("%s: [%s]: %s",
+          ((authorName == null) ? message.author : authorName), message.creation, message.content);
+
+      rows.put(message.id, row);
+    }
+
+    return row;
+  }
+
+  // SHOW
+  //
+  // Show "latest" as the messages of "conversation". "names" has the author
+  // names for the messages, authors missing from it are shown by id. Rows
+  // already formatted for an author whose name is new or changed are
+  // formatted again. If the rows already shown are a run of "latest" only the
+  // messages around them are added, and the number added in front is returned.
+  // Otherwise all the rows are replaced and REPLACED is returned.
+  int show(Uuid conversation, List<Message> latest, Map<Uuid, String> names) {
+
+    rename(names);
+
+    final int before = Uuid.equals(conversation, this.conversation) ? offsetIn(latest) : REPLACED;
+
+    if (before == REPLACED) {
+      replace(conversation, latest);
+      return REPLACED;
+    }
+
+    final int shown = messages.size();
+    final int after = latest.size() - before - shown;
+
+    // Add the two ends one at a time so that the model always matches the
+    // last event that was sent.
+    if (after > 0) {
+      messages = latest.subList(before, latest.size());
+      fireIntervalAdded(this, shown, shown + after - 1);
+    }
+
+    messages = latest;
+
+    if (before > 0) {
+      fireIntervalAdded(this, 0, before - 1);
+    }
+
+    return before;
+  }
+
+  // Add the names to the known authors and drop the rows that show an older
+  // name (or the id) for any of them.
+  private void rename(Map<Uuid, String> names) {
+
+    final Set<Uuid> renamed = new HashSet<>();
+
+    for (final Map.Entry<Uuid, String> name : names.entrySet()) {
+      if (!name.getValue().equals(authors.put(name.getKey(), name.getValue()))) {
+        renamed.add(name.getKey());
+      }
+    }
+
+    if (renamed.isEmpty() || rows.isEmpty()) {
+      return;
+    }
+
+    int first = -1;
+    int last = -1;
+
+    for (int i = 0; i < messages.size(); i++) {
+      final Message message = messages.get(i);
+      if (renamed.contains(message.author) && rows.remove(message.id) != null) {
+        first = (first < 0) ? i : first;
+        last = i;
+      }
+    }
+
+    if (first >= 0) {
+      fireContentsChanged(this, first, last);
+    }
+  }
+
+  // Where the rows already shown start in "latest", or REPLACED if they are
+  // not all in "latest" in the same order. Messages are only ever added to
+  // the ends of a conversation so checking the ends is enough.
+  private int offsetIn(List<Message> latest) {
+
+    if (messages.isEmpty()) {
+      return 0;
+    }
+
+    final Uuid first = messages.get(0).id;
+    final Uuid last = messages.get(messages.size() - 1).id;
+
+    for (int i = 0; i + messages.size() <= latest.size(); i++) {
+      if (Uuid.equals(latest.get(i).id, first)) {
+        return Uuid.equals(latest.get(i + messages.size() - 1).id, last) ? i : REPLACED;
+      }
+    }
+
+    return REPLACED;
+  }
+
+  private void replace(Uuid conversation, List<Message> latest) {
+
+    final int shown = messages.size();
+
+    this.conversation = conversation;
+    messages = new ArrayList<>();
+    rows.clear();
+
+    if (shown > 0) {
+      fireIntervalRemoved(this, 0, shown - 1);
+    }
+
+    messages = latest;
+
+    if (latest.size() > 0) {
+      fireIntervalAdded(this, 0, latest.size() - 1);
+    }
+  }
+}
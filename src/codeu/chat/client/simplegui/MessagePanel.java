@@ -17,46 +17,145 @@ package codeu.chat.client.simplegui;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import javax.swing.*;
 
+import codeu.chat.client.AsyncRunner;
+import codeu.chat.client.Callback;
 import codeu.chat.client.ClientContext;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.common.Message;
 import codeu.chat.common.User;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Uuid;
 
 // NOTE: JPanel is serializable, but there is no need to serialize MessagePanel
 // without the @SuppressWarnings, the compiler will complain of no override for serialVersionUID
 @SuppressWarnings("serial")
 public final class MessagePanel extends JPanel {
 
+  private final static Logger.Log LOG = Logger.newLog(MessagePanel.class);
+
   // These objects are modified by the Conversation Panel.
   private final JLabel messageOwnerLabel = new JLabel("Owner:", JLabel.RIGHT);
   private final JLabel messageConversationLabel = new JLabel("Conversation:", JLabel.LEFT);
-  private final DefaultListModel<String> messageListModel = new DefaultListModel<>();
+  private final MessageListModel messageListModel = new MessageListModel();
+
+  // With a fixed cell size the list only asks the model for the rows that are
+  // on screen. Rows wider than this are cut off.
+  private static final String PROTOTYPE_ROW = new String(new char[160]).replace('\0', 'n');
+
+  private final JList<String> messageList = new JList<>(messageListModel);
+  private final JScrollPane messageScrollPane = new JScrollPane(messageList);
+
+  // Set from the last contents shown. Older messages are not asked for while
+  // "settling" is set, which is from when contents are asked for until they
+  // have been shown and scrolled to.
+  private boolean hasOlder = false;
+  private boolean settling = false;
 
   private final ClientContext clientContext;
+  private final AsyncRunner runner;
+
+  // Author names that have been found. Only used on the worker thread.
+  private final Map<Uuid, String> authorNames = new HashMap<>();
+
+  // Fills in the panel with what was read on the worker thread. A null
+  // result means there was nothing to show.
+  private final Callback<Contents> showContents = new Callback<Contents>() {
+    @Override
+    public void onResult(Contents contents) {
+
+      if (contents == null) {
+        settling = false;
+        return;
+      }
 
-  public MessagePanel(ClientContext clientContext) {
+      messageOwnerLabel.setText("Owner: " + contents.owner);
+      messageConversationLabel.setText("Conversation: " + contents.title);
+
+      final JScrollBar bar = messageScrollPane.getVerticalScrollBar();
+      final boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum();
+
+      settling = true;
+      hasOlder = contents.older;
+
+      final int added =
+          messageListModel.show(contents.conversation, contents.messages, contents.authors);
+
+      // Scroll once the list has been laid out again with the new rows.
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          if (added == MessageListModel.REPLACED || atBottom) {
+            // Start at, or keep following, the newest message.
+            final int last = messageListModel.getSize() - 1;
+            if (last >= 0) {
+              messageList.ensureIndexIsVisible(last);
+            }
+          } else if (added > 0) {
+            // Keep the same messages on screen now that older ones are above them.
+            bar.setValue(bar.getValue() + added * messageList.getFixedCellHeight());
+          }
+          settling = false;
+        }
+      });
+    }
+  };
+
+  // All work with clientContext is done through the runner so that the Swing
+  // thread never waits on the server.
+  public MessagePanel(ClientContext clientContext, AsyncRunner runner) {
     super(new GridBagLayout());
     this.clientContext = clientContext;
+    this.runner = runner;
     initialize();
   }
 
   // External agent calls this to trigger an update of this panel's contents.
-  public void update(ConversationSummary owningConversation) {
+  public void update(final ConversationSummary owningConversation) {
 
-    final User u = (owningConversation == null) ?
-        null :
-        clientContext.user.lookup(owningConversation.owner);
-
-    messageOwnerLabel.setText("Owner: " +
-        ((u==null) ?
-            ((owningConversation==null) ? "" : owningConversation.owner) :
-            u.name));
+    if (owningConversation == null) {
+      return;
+    }
 
     messageConversationLabel.setText("Conversation: " + owningConversation.title);
 
-    getAllMessages(owningConversation);
+    runner.read(Arrays.<Object>asList("messages", owningConversation.id),
+                new Callable<Contents>() {
+                  @Override
+                  public Contents call() {
+                    return contentsOf(owningConversation);
+                  }
+                },
+                showContents);
+  }
+
+  // External agent calls this when messages were added to the conversations
+  // in "changed". If "changed" is null, any conversation may have changed.
+  // Nothing is read unless the current conversation is one of them.
+  public void refresh(final Collection<Uuid> changed) {
+    runner.read(Arrays.<Object>asList("current messages", changed),
+                new Callable<Contents>() {
+                  @Override
+                  public Contents call() {
+                    final Uuid current = clientContext.conversation.getCurrentId();
+                    return (current == null || (changed != null && !changed.contains(current))) ?
+                        null :
+                        contentsOf(clientContext.conversation.getCurrent());
+                  }
+                },
+                showContents);
   }
 
   private void initialize() {
@@ -101,21 +200,22 @@ public final class MessagePanel extends JPanel {
 
     // messageListModel is an instance variable so Conversation panel
     // can update it.
-    final JList<String> userList = new JList<>(messageListModel);
-    userList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-    userList.setVisibleRowCount(15);
-    userList.setSelectedIndex(-1);
+    messageList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    messageList.setVisibleRowCount(15);
+    messageList.setSelectedIndex(-1);
+    messageList.setPrototypeCellValue(PROTOTYPE_ROW);
 
-    final JScrollPane userListScrollPane = new JScrollPane(userList);
-    listShowPanel.add(userListScrollPane);
-    userListScrollPane.setMinimumSize(new Dimension(500, 200));
-    userListScrollPane.setPreferredSize(new Dimension(500, 200));
+    listShowPanel.add(messageScrollPane);
+    messageScrollPane.setMinimumSize(new Dimension(500, 200));
+    messageScrollPane.setPreferredSize(new Dimension(500, 200));
 
     // Button panel
     final JPanel buttonPanel = new JPanel();
     final GridBagConstraints buttonPanelC = new GridBagConstraints();
 
+    final JButton olderButton = new JButton("Older");
     final JButton addButton = new JButton("Add");
+    buttonPanel.add(olderButton);
     buttonPanel.add(addButton);
 
     // Placement of title, list panel, buttons, and current user panel.
@@ -145,46 +245,188 @@ public final class MessagePanel extends JPanel {
     this.add(listShowPanel, listPanelC);
     this.add(buttonPanel, buttonPanelC);
 
+    // User clicks Messages Older button - read the page of messages before the oldest one shown.
+    olderButton.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        MessagePanel.this.loadOlder();
+      }
+    });
+
+    // User scrolls to the top of the messages - the same as clicking Older.
+    messageScrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+      @Override
+      public void adjustmentValueChanged(AdjustmentEvent e) {
+        if (!e.getValueIsAdjusting() && e.getValue() == 0 && messageListModel.getSize() > 0) {
+          MessagePanel.this.loadOlder();
+        }
+      }
+    });
+
     // User click Messages Add button - prompt for message body and add new Message to Conversation
     addButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        if (!clientContext.user.hasCurrent()) {
-          JOptionPane.showMessageDialog(MessagePanel.this, "You are not signed in.");
-        } else if (!clientContext.conversation.hasCurrent()) {
-          JOptionPane.showMessageDialog(MessagePanel.this, "You must select a conversation.");
-        } else {
-          final String messageText = (String) JOptionPane.showInputDialog(
-              MessagePanel.this, "Enter message:", "Add Message", JOptionPane.PLAIN_MESSAGE,
-              null, null, "");
-          if (messageText != null && messageText.length() > 0) {
-            clientContext.message.addMessage(
-                clientContext.user.getCurrent().id,
-                clientContext.conversation.getCurrentId(),
-                messageText);
-            MessagePanel.this.getAllMessages(clientContext.conversation.getCurrent());
+        runner.run(new Callable<String>() {
+          @Override
+          public String call() {
+            if (!clientContext.user.hasCurrent()) {
+              return "You are not signed in.";
+            } else if (!clientContext.conversation.hasCurrent()) {
+              return "You must select a conversation.";
+            } else {
+              return null;
+            }
           }
-        }
+        }, new Callback<String>() {
+          @Override
+          public void onResult(String problem) {
+            if (problem != null) {
+              JOptionPane.showMessageDialog(MessagePanel.this, problem);
+            } else {
+              addMessage();
+            }
+          }
+        });
       }
     });
 
     // Panel is set up. If there is a current conversation, Populate the conversation list.
-    getAllMessages(clientContext.conversation.getCurrent());
+    refresh(null);
   }
 
-  // Populate ListModel
-  // TODO: don't refetch messages if current conversation not changed
-  private void getAllMessages(ConversationSummary conversation) {
-    messageListModel.clear();
+  // Read the page of messages before the oldest one shown, unless there are
+  // none or a read is already on its way.
+  private void loadOlder() {
 
-    for (final Message m : clientContext.message.getConversationContents(conversation)) {
-      // Display author name if available.  Otherwise display the author UUID.
-      final String authorName = clientContext.user.getName(m.author);
+    if (!hasOlder || settling) {
+      return;
+    }
 
-      final String displayString = String.format("%s: [%s]: %s",
-          ((authorName == null) ? m.author : authorName), m.creation, m.content);
+    settling = true;
+
+    runner.read("older messages", new Callable<Contents>() {
+      @Override
+      public Contents call() {
+        // A failed read still has to reach showContents, as a null result, or
+        // "settling" would never be cleared and older messages never asked for
+        // again.
+        try {
+          if (clientContext.conversation.hasCurrent()) {
+            final ConversationSummary conversation = clientContext.conversation.getCurrent();
+            if (clientContext.message.loadOlderMessages(conversation) > 0) {
+              return contentsOf(conversation);
+            }
+          }
+        } catch (Exception ex) {
+          LOG.error(ex, "Failed to load older messages.");
+        }
+        return null;
+      }
+    }, showContents);
+  }
+
+  // Ask for the message body and add it on the worker thread. The user or the
+  // conversation could have changed while the dialog was open, so they are
+  // checked again there.
+  private void addMessage() {
+    final String messageText = (String) JOptionPane.showInputDialog(
+        MessagePanel.this, "Enter message:", "Add Message", JOptionPane.PLAIN_MESSAGE,
+        null, null, "");
+    if (messageText != null && messageText.length() > 0) {
+      runner.run(new Callable<Contents>() {
+        @Override
+        public Contents call() {
+          if (!clientContext.user.hasCurrent() || !clientContext.conversation.hasCurrent()) {
+            return null;
+          }
+          clientContext.message.addMessage(
+              clientContext.user.getCurrent().id,
+              clientContext.conversation.getCurrentId(),
+              messageText);
+          return contentsOf(clientContext.conversation.getCurrent());
+        }
+      }, showContents);
+    }
+  }
+
+  // Gather what the panel needs to show the conversation. Only messages newer
+  // than the ones already cached are read from the server and rows are not
+  // formatted until they are shown. Only called on the worker thread.
+  private Contents contentsOf(ConversationSummary conversation) {
+
+    final User u = clientContext.user.lookup(conversation.owner);
+    final String owner = (u == null) ? conversation.owner.toString() : u.name;
+
+    // The cached list keeps changing on this thread, so show a copy.
+    final List<Message> messages =
+        new ArrayList<>(clientContext.message.getConversationContents(conversation));
+
+    final Set<Uuid> authorIds = new HashSet<>();
+
+    for (final Message m : messages) {
+      authorIds.add(m.author);
+    }
+
+    // Authors that are not known yet are read together, not one at a time.
+    clientContext.user.lookupAll(authorIds);
+
+    // Authors whose name was not found are left out and shown by id.
+    final Map<Uuid, String> authors = new HashMap<>();
+
+    for (final Uuid author : authorIds) {
+      final String name = authorName(author);
+      if (name != null) {
+        authors.put(author, name);
+      }
+    }
+
+    return new Contents(conversation.id,
+                        conversation.title,
+                        owner,
+                        messages,
+                        authors,
+                        clientContext.message.hasOlderMessages(conversation));
+  }
+
+  // User names never change, so once a name is found it is kept. Authors
+  // that are not found are looked up again next time.
+  private String authorName(Uuid author) {
+    String name = authorNames.get(author);
+    if (name == null) {
+      name = clientContext.user.getName(author);
+      if (name != null) {
+        authorNames.put(author, name);
+      }
+    }
+    return name;
+  }
 
-      messageListModel.addElement(displayString);
+  // CONTENTS
+  //
+  // Everything the panel shows for one conversation, gathered on the worker
+  // thread and shown on the Swing thread.
+  private static final class Contents {
+
+    final Uuid conversation;
+    final String title;
+    final String owner;
+    final List<Message> messages;
+    final Map<Uuid, String> authors;
+    final boolean older;
+
+    Contents(Uuid conversation,
+             String title,
+             String owner,
+             List<Message> messages,
+             Map<Uuid, String> authors,
+             boolean older) {
+      this.conversation = conversation;
+      this.title = title;
+      this.owner = owner;
+      this.messages = messages;
+      this.authors = authors;
+      this.older = older;
     }
   }
 }
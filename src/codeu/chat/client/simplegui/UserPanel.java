@@ -17,10 +17,15 @@ package codeu.chat.client.simplegui;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import codeu.chat.client.AsyncRunner;
+import codeu.chat.client.Callback;
 import codeu.chat.client.ClientContext;
 import codeu.chat.common.User;
 
@@ -30,13 +35,34 @@ import codeu.chat.common.User;
 public final class UserPanel extends JPanel {
 
   private final ClientContext clientContext;
+  private final AsyncRunner runner;
+  private final DefaultListModel<String> listModel = new DefaultListModel<>();
+
+  // Replaces the list with the names read on the worker thread.
+  private final Callback<List<String>> showUsers = new Callback<List<String>>() {
+    @Override
+    public void onResult(List<String> names) {
+      listModel.clear();
+      for (final String name : names) {
+        listModel.addElement(name);
+      }
+    }
+  };
 
-  public UserPanel(ClientContext clientContext) {
+  // All work with clientContext is done through the runner so that the Swing
+  // thread never waits on the server.
+  public UserPanel(ClientContext clientContext, AsyncRunner runner) {
     super(new GridBagLayout());
     this.clientContext = clientContext;
+    this.runner = runner;
     initialize();
   }
 
+  // External agent calls this to trigger an update of this panel's contents.
+  public void refresh() {
+    getAllUsers();
+  }
+
   private void initialize() {
 
     // This panel contains from top to bottom; a title bar, a list of users,
@@ -73,7 +99,6 @@ public final class UserPanel extends JPanel {
     final JPanel listShowPanel = new JPanel();
     final GridBagConstraints listPanelC = new GridBagConstraints();
 
-    final DefaultListModel<String> listModel = new DefaultListModel<>();
     final JList<String> userList = new JList<>(listModel);
     userList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
     userList.setVisibleRowCount(10);
@@ -142,7 +167,7 @@ public final class UserPanel extends JPanel {
     userUpdateButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        UserPanel.this.getAllUsers(listModel);
+        UserPanel.this.getAllUsers();
       }
     });
 
@@ -151,8 +176,19 @@ public final class UserPanel extends JPanel {
       public void actionPerformed(ActionEvent e) {
         if (userList.getSelectedIndex() != -1) {
           final String data = userList.getSelectedValue();
-          clientContext.user.signInUser(data);
-          userSignedInLabel.setText("Hello " + data);
+          runner.run(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+              return clientContext.user.signInUser(data);
+            }
+          }, new Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean signedIn) {
+              if (signedIn) {
+                userSignedInLabel.setText("Hello " + data);
+              }
+            }
+          });
         }
       }
     });
@@ -164,8 +200,14 @@ public final class UserPanel extends JPanel {
             UserPanel.this, "Enter user name:", "Add User", JOptionPane.PLAIN_MESSAGE,
             null, null, "");
         if (s != null && s.length() > 0) {
-          clientContext.user.addUser(s);
-          UserPanel.this.getAllUsers(listModel);
+          runner.run(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+              clientContext.user.addUser(s);
+              clientContext.user.updateUsers();
+              return userNames();
+            }
+          }, showUsers);
         }
       }
     });
@@ -175,21 +217,42 @@ public final class UserPanel extends JPanel {
       public void valueChanged(ListSelectionEvent e) {
         if (userList.getSelectedIndex() != -1) {
           final String data = userList.getSelectedValue();
-          userInfoPanel.setText(clientContext.user.showUserInfo(data));
+          runner.run(new Callable<String>() {
+            @Override
+            public String call() {
+              return clientContext.user.showUserInfo(data);
+            }
+          }, new Callback<String>() {
+            @Override
+            public void onResult(String info) {
+              userInfoPanel.setText(info);
+            }
+          });
         }
       }
     });
 
-    getAllUsers(listModel);
+    getAllUsers();
   }
 
-  // Swing UI: populate ListModel object - updates display objects.
-  private void getAllUsers(DefaultListModel<String> usersList) {
-    clientContext.user.updateUsers();
-    usersList.clear();
+  // Swing UI: populate ListModel object - updates display objects. Refreshes
+  // asked for while one is still waiting to run are merged into it.
+  private void getAllUsers() {
+    runner.read("users", new Callable<List<String>>() {
+      @Override
+      public List<String> call() {
+        clientContext.user.updateUsers();
+        return userNames();
+      }
+    }, showUsers);
+  }
 
+  // Only called on the worker thread.
+  private List<String> userNames() {
+    final List<String> names = new ArrayList<>();
     for (final User u : clientContext.user.getUsers()) {
-      usersList.addElement(u.name);
+      names.add(u.name);
     }
+    return names;
   }
 }
@@ -29,6 +29,9 @@ import codeu.chat.util.Uuid;
 
 public final class Conversation {
 
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+
   public static final Serializer<Conversation> SERIALIZER = new Serializer<Conversation>() {
 
     @Override
@@ -38,9 +41,11 @@ public final class Conversation {
       Uuid.SERIALIZER.write(out, value.owner);
       Time.SERIALIZER.write(out, value.creation);
       Serializers.STRING.write(out, value.title);
-      Serializers.collection(Uuid.SERIALIZER).write(out, value.users);
+      UUID_COLLECTION.write(out, value.users);
       Uuid.SERIALIZER.write(out, value.firstMessage);
       Uuid.SERIALIZER.write(out, value.lastMessage);
+      Time.SERIALIZER.write(out, value.lastActivity);
+      Serializers.INTEGER.write(out, value.messageCount);
 
     }
 
@@ -54,10 +59,12 @@ public final class Conversation {
           Serializers.STRING.read(in)
       );
 
-      value.users.addAll(Serializers.collection(Uuid.SERIALIZER).read(in));
+      value.users.addAll(UUID_COLLECTION.read(in));
 
       value.firstMessage = Uuid.SERIALIZER.read(in);
       value.lastMessage = Uuid.SERIALIZER.read(in);
+      value.lastActivity = Time.SERIALIZER.read(in);
+      value.messageCount = Serializers.INTEGER.read(in);
 
       return value;
 
@@ -74,12 +81,20 @@ public final class Conversation {
   public Uuid firstMessage = Uuid.NULL;
   public Uuid lastMessage = Uuid.NULL;
 
+  // The creation time of the newest message added to the conversation, or the
+  // creation time of the conversation if it has no messages. Deleting a
+  // message does not move it back. Both this and the message count are kept
+  // by the server (see Model.touch).
+  public Time lastActivity;
+  public int messageCount = 0;
+
   public Conversation(Uuid id, Uuid owner, Time creation, String title) {
 
     this.id = id;
     this.owner = owner;
     this.creation = creation;
     this.title = title;
+    this.lastActivity = creation;
 
     this.summary = new ConversationSummary(id, owner, creation, title);
 
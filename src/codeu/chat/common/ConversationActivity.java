@@ -0,0 +1,68 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Time;
+
+// CONVERSATION ACTIVITY
+//
+// A conversation summary along with how active the conversation is. The
+// summary never changes, but the activity changes with every new message so
+// it is only a snapshot of when it was read.
+public final class ConversationActivity {
+
+  public static final Serializer<ConversationActivity> SERIALIZER =
+      new Serializer<ConversationActivity>() {
+
+    @Override
+    public void write(OutputStream out, ConversationActivity value) throws IOException {
+
+      ConversationSummary.SERIALIZER.write(out, value.summary);
+      Time.SERIALIZER.write(out, value.lastActivity);
+      Serializers.INTEGER.write(out, value.messageCount);
+
+    }
+
+    @Override
+    public ConversationActivity read(InputStream in) throws IOException {
+
+      return new ConversationActivity(
+          ConversationSummary.SERIALIZER.read(in),
+          Time.SERIALIZER.read(in),
+          Serializers.INTEGER.read(in)
+      );
+
+    }
+  };
+
+  public final ConversationSummary summary;
+  public final Time lastActivity;
+  public final int messageCount;
+
+  public ConversationActivity(ConversationSummary summary, Time lastActivity, int messageCount) {
+
+    this.summary = summary;
+    this.lastActivity = lastActivity;
+    this.messageCount = messageCount;
+
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Uuid;
+
+// CONVERSATION DELTA
+//
+// The changes to the set of conversations between a generation the caller
+// already has and the current generation. Works the same way as UserDelta
+// but only carries the summary of each added conversation. Conversations are
+// never changed once added, so "updated" only holds new conversations.
+public final class ConversationDelta {
+
+  private static final Serializer<Collection<ConversationSummary>> SUMMARY_COLLECTION =
+      Serializers.collection(ConversationSummary.SERIALIZER);
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+
+  public static final Serializer<ConversationDelta> SERIALIZER = new Serializer<ConversationDelta>() {
+
+    @Override
+    public void write(OutputStream out, ConversationDelta value) throws IOException {
+
+      Uuid.SERIALIZER.write(out, value.generation);
+      Serializers.BOOLEAN.write(out, value.full);
+      SUMMARY_COLLECTION.write(out, value.updated);
+      UUID_COLLECTION.write(out, value.removed);
+
+    }
+
+    @Override
+    public ConversationDelta read(InputStream in) throws IOException {
+
+      return new ConversationDelta(
+          Uuid.SERIALIZER.read(in),
+          Serializers.BOOLEAN.read(in),
+          SUMMARY_COLLECTION.read(in),
+          UUID_COLLECTION.read(in)
+      );
+
+    }
+  };
+
+  public final Uuid generation;
+  public final boolean full;
+  public final Collection<ConversationSummary> updated;
+  public final Collection<Uuid> removed;
+
+  public ConversationDelta(Uuid generation, boolean full, Collection<ConversationSummary> updated, Collection<Uuid> removed) {
+
+    this.generation = generation;
+    this.full = full;
+    this.updated = updated;
+    this.removed = removed;
+
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Uuid;
+
+// CONVERSATION PAGE
+//
+// One page of conversation summaries in a given order. To read the next page
+// pass the id of the last summary as the cursor. A page with fewer summaries
+// than were asked for is the last page.
+//
+// "generation" is the conversation generation when the page was read. A
+// caller that reads every page can pass the generation of the first page to
+// getConversationsChangedSince to pick up anything that changed while it was
+// paging.
+public final class ConversationPage {
+
+  // The orders that conversations can be listed in. Ties are broken by id so
+  // that every conversation has a single place in each order.
+  public static final int
+      BY_TITLE = 0,     // title, ignoring case
+      BY_CREATION = 1,  // oldest first
+      BY_ACTIVITY = 2;  // most recent message first
+
+  private static final Serializer<Collection<ConversationSummary>> SUMMARY_COLLECTION =
+      Serializers.collection(ConversationSummary.SERIALIZER);
+
+  public static final Serializer<ConversationPage> SERIALIZER = new Serializer<ConversationPage>() {
+
+    @Override
+    public void write(OutputStream out, ConversationPage value) throws IOException {
+
+      Uuid.SERIALIZER.write(out, value.generation);
+      SUMMARY_COLLECTION.write(out, value.summaries);
+
+    }
+
+    @Override
+    public ConversationPage read(InputStream in) throws IOException {
+
+      return new ConversationPage(
+          Uuid.SERIALIZER.read(in),
+          SUMMARY_COLLECTION.read(in)
+      );
+
+    }
+  };
+
+  public final Uuid generation;
+  public final Collection<ConversationSummary> summaries;
+
+  public ConversationPage(Uuid generation, Collection<ConversationSummary> summaries) {
+
+    this.generation = generation;
+    this.summaries = summaries;
+
+  }
+
+  public static boolean isOrder(int order) {
+    return order == BY_TITLE || order == BY_CREATION || order == BY_ACTIVITY;
+  }
+}
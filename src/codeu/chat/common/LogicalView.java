@@ -37,6 +37,34 @@ public interface LogicalView {
   //   Get all users whose ID are not found in the given set of ids.
   Collection<User> getUsersExcluding(Collection<Uuid> ids);
 
+  // GET USERS CHANGED SINCE
+  //
+  //   Get every user that was added, changed or removed after the given user
+  //   generation along with the current generation. If the generation is not
+  //   one the server gave out (e.g. Uuid.NULL or one from before a restart)
+  //   the delta will be a full list of users.
+  UserDelta getUsersChangedSince(Uuid generation);
+
+  // GET CONVERSATIONS CHANGED SINCE
+  //
+  //   The same as getUsersChangedSince but for conversations. Conversation
+  //   generations are separate from user generations.
+  ConversationDelta getConversationsChangedSince(Uuid generation);
+
+  // GET CONVERSATION PAGE
+  //
+  //   Get up to "count" conversation summaries in the given order (one of the
+  //   ConversationPage orders) starting after the conversation "after". Use
+  //   Uuid.NULL to start at the beginning. If "after" is not found (e.g. it was
+  //   deleted) the page starts at the beginning.
+  ConversationPage getConversationPage(int order, Uuid after, int count);
+
+  // GET RECENT CONVERSATIONS
+  //
+  //   Get the "count" most recently active conversations, most recent first,
+  //   along with when each was last active and how many messages it has.
+  Collection<ConversationActivity> getRecentConversations(int count);
+
   // GET CONVERSATIONS
   //
   //   Get a collection of conversations given the start and end of a time series.
@@ -14,6 +14,14 @@
 
 package codeu.chat.common;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 public final class NetworkCode {
 
   public static final int
@@ -59,5 +67,82 @@ public final class NetworkCode {
       SEARCHREQUEST = 39,
       SEARCHRESPONSE = 40,
       TAGREQUEST = 41,
-      TAGRESPONSE = 42;
+      TAGRESPONSE = 42,
+      RELAY_FILTERED_READ_REQUEST = 43,
+      RELAY_FILTERED_READ_RESPONSE = 44,
+      STATS_REQUEST = 45,
+      STATS_RESPONSE = 46,
+      GET_USERS_CHANGED_REQUEST = 47,
+      GET_USERS_CHANGED_RESPONSE = 48,
+      SUBSCRIBE_REQUEST = 49,
+      SUBSCRIBE_RESPONSE = 50,
+      GET_CONVERSATIONS_CHANGED_REQUEST = 51,
+      GET_CONVERSATIONS_CHANGED_RESPONSE = 52,
+      PING_REQUEST = 53,
+      PING_RESPONSE = 54,
+      GET_CONVERSATION_PAGE_REQUEST = 55,
+      GET_CONVERSATION_PAGE_RESPONSE = 56,
+      GET_RECENT_CONVERSATIONS_REQUEST = 57,
+      GET_RECENT_CONVERSATIONS_RESPONSE = 58,
+      // Sent by a server after the response to a connection's only request,
+      // just before it closes the connection. A request sent on the connection
+      // after this is never read.
+      CONNECTION_CLOSING = 59;
+
+  private static final Map<Integer, String> NAMES = new HashMap<>();
+
+  // Requests that only read from the server. Sending one of these twice has
+  // the same effect as sending it once.
+  private static final Set<Integer> READ_ONLY = new HashSet<>(Arrays.asList(
+      GET_USERS_BY_ID_REQUEST,
+      GET_ALL_CONVERSATIONS_REQUEST,
+      GET_CONVERSATIONS_BY_ID_REQUEST,
+      GET_MESSAGES_BY_ID_REQUEST,
+      GET_CONVERSATIONS_BY_TIME_REQUEST,
+      GET_CONVERSATIONS_BY_TITLE_REQUEST,
+      GET_MESSAGES_BY_TIME_REQUEST,
+      GET_MESSAGES_BY_RANGE_REQUEST,
+      GET_USER_GENERATION_REQUEST,
+      GET_USERS_EXCLUDING_REQUEST,
+      RELAY_READ_REQUEST,
+      SEARCHREQUEST,
+      TAGREQUEST,
+      RELAY_FILTERED_READ_REQUEST,
+      STATS_REQUEST,
+      GET_USERS_CHANGED_REQUEST,
+      GET_CONVERSATIONS_CHANGED_REQUEST,
+      PING_REQUEST,
+      GET_CONVERSATION_PAGE_REQUEST,
+      GET_RECENT_CONVERSATIONS_REQUEST));
+
+  static {
+    // Build the names from the fields above so that new codes never need to
+    // be added in a second place.
+    for (final Field field : NetworkCode.class.getFields()) {
+      if (field.getType() == int.class && Modifier.isStatic(field.getModifiers())) {
+        try {
+          NAMES.put(field.getInt(null), field.getName());
+        } catch (IllegalAccessException ex) {
+          // All the codes are public, so this can not happen.
+        }
+      }
+    }
+  }
+
+  // NAME
+  //
+  // Get the name of a network code for logs and stats. Codes that are not
+  // known are named by their value.
+  public static String name(int code) {
+    final String name = NAMES.get(code);
+    return name == null ? Integer.toString(code) : name;
+  }
+
+  // IS READ ONLY
+  //
+  // Check if a request only reads from the server, so that it is safe to send
+  // again when it is not known whether the server got it.
+  public static boolean isReadOnly(int code) {
+    return READ_ONLY.contains(code);
+  }
 }
@@ -133,4 +133,18 @@ public interface Relay {
   // was given Uuids.NULL.
   Collection<Bundle> read(Uuid teamId, byte[] teamSecret, Uuid root, int range);
 
+  // READ (FILTERED)
+  //
+  // Read a series of bundles from the relay in the same way as "read" but only
+  // get bundles that the team has not already seen. Bundles written by the
+  // reading team are never returned. If "conversations" is not empty, only
+  // bundles that are part of one of those conversations will be returned. The
+  // root works the same way as in "read" and should be the id of the last
+  // bundle returned by a previous read.
+  Collection<Bundle> read(Uuid teamId,
+                          byte[] teamSecret,
+                          Uuid root,
+                          int range,
+                          Collection<Uuid> conversations);
+
 }
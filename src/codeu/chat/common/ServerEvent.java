@@ -0,0 +1,89 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Uuid;
+
+// SERVER EVENT
+//
+// A single change on the server that is pushed to subscribed clients. Events
+// only carry ids so that they stay small; a client that cares about the change
+// asks for the full object with the normal requests.
+//
+//   MESSAGE_ADDED      - "id" is the message, "parent" is its conversation.
+//   CONVERSATION_ADDED - "id" is the conversation.
+//   USER_CHANGED       - "id" is a user that was added, changed or removed.
+//
+// "parent" is Uuid.NULL for anything other than a message.
+public final class ServerEvent {
+
+  public static final int
+      MESSAGE_ADDED = 1,
+      CONVERSATION_ADDED = 2,
+      USER_CHANGED = 3;
+
+  public static final Serializer<ServerEvent> SERIALIZER = new Serializer<ServerEvent>() {
+
+    @Override
+    public void write(OutputStream out, ServerEvent value) throws IOException {
+
+      Serializers.INTEGER.write(out, value.type);
+      Uuid.SERIALIZER.write(out, value.id);
+      Uuid.SERIALIZER.write(out, value.parent);
+
+    }
+
+    @Override
+    public ServerEvent read(InputStream in) throws IOException {
+
+      return new ServerEvent(
+          Serializers.INTEGER.read(in),
+          Uuid.SERIALIZER.read(in),
+          Uuid.SERIALIZER.read(in)
+      );
+
+    }
+  };
+
+  public final int type;
+  public final Uuid id;
+  public final Uuid parent;
+
+  public ServerEvent(int type, Uuid id, Uuid parent) {
+
+    this.type = type;
+    this.id = id;
+    this.parent = parent;
+
+  }
+
+  public static ServerEvent messageAdded(Message message, Uuid conversation) {
+    return new ServerEvent(MESSAGE_ADDED, message.id, conversation);
+  }
+
+  public static ServerEvent conversationAdded(Conversation conversation) {
+    return new ServerEvent(CONVERSATION_ADDED, conversation.id, Uuid.NULL);
+  }
+
+  public static ServerEvent userChanged(User user) {
+    return new ServerEvent(USER_CHANGED, user.id, Uuid.NULL);
+  }
+}
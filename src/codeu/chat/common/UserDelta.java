@@ -0,0 +1,79 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import codeu.chat.util.Serializer;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Uuid;
+
+// USER DELTA
+//
+// The changes to the set of users between a generation the caller already has
+// and the current generation. "updated" holds every user that was added or
+// changed and "removed" holds the id of every user that was deleted. When
+// "full" is set, the caller's generation could not be used (it was from
+// another server or is too new) and "updated" holds every user instead, so
+// anything the caller had should be dropped.
+public final class UserDelta {
+
+  private static final Serializer<Collection<User>> USER_COLLECTION =
+      Serializers.collection(User.SERIALIZER);
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+
+  public static final Serializer<UserDelta> SERIALIZER = new Serializer<UserDelta>() {
+
+    @Override
+    public void write(OutputStream out, UserDelta value) throws IOException {
+
+      Uuid.SERIALIZER.write(out, value.generation);
+      Serializers.BOOLEAN.write(out, value.full);
+      USER_COLLECTION.write(out, value.updated);
+      UUID_COLLECTION.write(out, value.removed);
+
+    }
+
+    @Override
+    public UserDelta read(InputStream in) throws IOException {
+
+      return new UserDelta(
+          Uuid.SERIALIZER.read(in),
+          Serializers.BOOLEAN.read(in),
+          USER_COLLECTION.read(in),
+          UUID_COLLECTION.read(in)
+      );
+
+    }
+  };
+
+  public final Uuid generation;
+  public final boolean full;
+  public final Collection<User> updated;
+  public final Collection<Uuid> removed;
+
+  public UserDelta(Uuid generation, boolean full, Collection<User> updated, Collection<Uuid> removed) {
+
+    this.generation = generation;
+    this.full = full;
+    this.updated = updated;
+    this.removed = removed;
+
+  }
+}
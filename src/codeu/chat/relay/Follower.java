@@ -0,0 +1,183 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.relay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.common.Relay;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Timeline;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
+
+// FOLLOWER
+//
+// The follower keeps a standby relay in sync with a leader relay. It reads the
+// leader's history (in order, from all teams) and copies each bundle into the
+// standby with its original id so that servers can switch to the standby and
+// keep reading from where they left off.
+//
+// The follower never promotes the standby on its own. A leader that only looks
+// unreachable from the standby may still be taking writes from servers, and two
+// leaders would hand out the same bundle ids. Promotion is done by an operator:
+// stop the old leader, then create the "promote file". The follower checks for
+// the file before each poll, promotes the standby and deletes the file. The old
+// leader must not be started again as a leader, only as a follower of the new
+// one.
+public final class Follower {
+
+  private final static Logger.Log LOG = Logger.newLog(Follower.class);
+
+  private final Server standby;
+  private final ConnectionSource leader;
+  private final Uuid teamId;
+  private final byte[] teamSecret;
+
+  private final long refreshMs;
+  private final File promoteFile;
+  private final int range;
+
+  private Uuid lastSeen = Uuid.NULL;
+  private int failures = 0;
+
+  // FOLLOWER
+  //
+  // The team id and secret are only used to read from the leader, any team that
+  // the leader knows can be used.
+  //   - "refreshMs" is how long to wait between polls of the leader.
+  //   - "promoteFile" is the file whose creation promotes the standby.
+  //   - "range" is how many bundles to ask for in each read.
+  public Follower(Server standby,
+                  ConnectionSource leader,
+                  Uuid teamId,
+                  byte[] teamSecret,
+                  long refreshMs,
+                  File promoteFile,
+                  int range) {
+
+    this.standby = standby;
+    this.leader = leader;
+    this.teamId = teamId;
+    this.teamSecret = Arrays.copyOf(teamSecret, teamSecret.length);
+    this.refreshMs = refreshMs;
+    this.promoteFile = promoteFile;
+    this.range = range;
+  }
+
+  // START
+  //
+  // Put the standby into follower mode and start tailing the leader on the
+  // given timeline.
+  public void start(final Timeline timeline) {
+
+    standby.follow();
+
+    timeline.scheduleNow(new Runnable() {
+      @Override
+      public void run() {
+
+        if (promoteFile.exists()) {
+          promote();
+          return;
+        }
+
+        if (poll()) {
+          failures = 0;
+        } else {
+          failures += 1;
+          LOG.warning("Failed to reach leader relay (%d in a row). To take over, stop the " +
+                      "leader and create %s", failures, promoteFile);
+        }
+
+        timeline.scheduleIn(refreshMs, this);
+      }
+    });
+  }
+
+  // PROMOTE
+  //
+  // The file is deleted so that a standby started later with the same files
+  // does not promote itself straight away.
+  private void promote() {
+
+    if (failures == 0) {
+      LOG.warning("Promoting standby relay while the leader relay can still be reached");
+    } else {
+      LOG.warning("Promoting standby relay");
+    }
+
+    standby.promote();
+
+    if (!promoteFile.delete()) {
+      LOG.warning("Failed to delete %s", promoteFile);
+    }
+  }
+
+  // POLL
+  //
+  // Read everything the leader has after the last bundle that was copied. Keep
+  // reading while the leader returns full pages so that a standby that is far
+  // behind will catch up in a single poll. Returns false if the leader could
+  // not be reached.
+  private boolean poll() {
+
+    try {
+
+      Collection<Relay.Bundle> page;
+
+      do {
+        page = read(lastSeen);
+
+        for (final Relay.Bundle bundle : page) {
+          standby.replicate(bundle);
+          lastSeen = bundle.id();
+        }
+
+      } while (page.size() >= range);
+
+      return true;
+
+    } catch (Exception ex) {
+
+      LOG.error(ex, "Failed to read from leader relay.");
+      return false;
+
+    }
+  }
+
+  private Collection<Relay.Bundle> read(Uuid root) throws IOException {
+
+    try (final Connection connection = leader.connect()) {
+
+      Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_READ_REQUEST);
+      Uuid.SERIALIZER.write(connection.out(), teamId);
+      Serializers.BYTES.write(connection.out(), teamSecret);
+      Uuid.SERIALIZER.write(connection.out(), root);
+      Serializers.INTEGER.write(connection.out(), range);
+
+      if (Serializers.INTEGER.read(connection.in()) != NetworkCode.RELAY_READ_RESPONSE) {
+        throw new IOException("Leader did not handle RELAY_READ_REQUEST");
+      }
+
+      return ServerFrontEnd.BUNDLE_COLLECTION.read(connection.in());
+    }
+  }
+}
@@ -17,10 +17,16 @@ package codeu.chat.relay;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Queue;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import codeu.chat.common.LinearUuidGenerator;
 import codeu.chat.common.Relay;
@@ -101,8 +107,39 @@ public final class Server implements Relay {
 
   }
 
-  private final Queue<Relay.Bundle> history = new LinkedList<>();
-  private final Map<Uuid, byte[]> teamSecrets = new HashMap<>();
+  // The history is keyed by the bundle's position (the int value of its id) so
+  // that finding the root of a read is a lookup rather than a walk. The team and
+  // conversation indexes hold the same bundles so that filtered reads only need
+  // to look at the bundles they could return.
+  //
+  // All of these are concurrent maps so that any number of reads can walk them
+  // without taking a lock. Bundles are only ever appended to the end or evicted
+  // from the front, and only while holding "sequencer", so a reader will always
+  // see the history in order even if it races with a write.
+  private final NavigableMap<Integer, Relay.Bundle> history = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<Uuid, NavigableMap<Integer, Relay.Bundle>> historyByTeam =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Uuid, NavigableMap<Integer, Relay.Bundle>> historyByConversation =
+      new ConcurrentHashMap<>();
+
+  // The number of bundles in the history. The size of a skip list is found by
+  // walking it, which is too slow to do on every write.
+  private final AtomicInteger historySize = new AtomicInteger();
+
+  // TEAM SECRETS
+  //
+  // The map of team secrets is never changed once it is set. Changes to the
+  // teams build a new map and swap it in so that authenticating is just a read
+  // of the current map without any locking.
+  private volatile Map<Uuid, byte[]> teamSecrets = Collections.emptyMap();
+  private final Object teamLock = new Object();
+
+  // SEQUENCER
+  //
+  // Writes need to be ordered so that ids and positions in the history always
+  // line up. Holding this lock makes the writer the only one allowed to make
+  // ids, evict old bundles and append new ones. Reads never take it.
+  private final Object sequencer = new Object();
 
   private final int maxHistory;
   private final int maxRead;
@@ -124,7 +161,11 @@ public final class Server implements Relay {
   // As a side note, the ids start at 1 and not 0 to avoid the first id from
   // matching the NULL id which is defined as (null, 0);
 
- private final Uuid.Generator idGenerator = new LinearUuidGenerator(null, 1, Integer.MAX_VALUE);
+ private Uuid.Generator idGenerator = new LinearUuidGenerator(null, 1, Integer.MAX_VALUE);
+
+  // When following, the relay is a standby copy of another relay. It will serve
+  // reads but refuses writes as all bundles must come from the leader.
+  private volatile boolean following = false;
 
   // SERVER
   //
@@ -142,14 +183,22 @@ public final class Server implements Relay {
   // Let the relay know of a team's secret so that it will accept messages from that
   // team. If there is already a team entry, the secret will NOT be updated and the
   // call will return false.
+  // To change or remove teams, use "setTeams".
   public boolean addTeam(Uuid id, byte[] secret) {
 
     LOG.info("Adding team to relay %s", id);
 
-    final boolean open = teamSecrets.get(id) == null;
+    final boolean open;
+
+    synchronized (teamLock) {
+
+      open = teamSecrets.get(id) == null;
 
-    if (open) {
-      teamSecrets.put(id, secret);
+      if (open) {
+        final Map<Uuid, byte[]> updated = new HashMap<>(teamSecrets);
+        updated.put(id, Arrays.copyOf(secret, secret.length));
+        teamSecrets = Collections.unmodifiableMap(updated);
+      }
     }
 
     LOG.info(open ?
@@ -159,6 +208,75 @@ public final class Server implements Relay {
     return open;
   }
 
+  // SET TEAMS
+  //
+  // Replace all the teams that the relay knows. Teams that are not in the new
+  // set will no longer be able to read or write and teams that are in both
+  // will use their new secret.
+  public void setTeams(Map<Uuid, byte[]> teams) {
+
+    final Map<Uuid, byte[]> updated = new HashMap<>();
+
+    for (final Map.Entry<Uuid, byte[]> entry : teams.entrySet()) {
+      updated.put(entry.getKey(), Arrays.copyOf(entry.getValue(), entry.getValue().length));
+    }
+
+    synchronized (teamLock) {
+      teamSecrets = Collections.unmodifiableMap(updated);
+    }
+
+    LOG.info("Set relay teams count=%d", updated.size());
+  }
+
+  // FOLLOW
+  //
+  // Make this relay a standby. Writes from teams will be refused and the only
+  // way to add bundles will be through "replicate".
+  public void follow() {
+    LOG.info("Relay is now following a leader");
+    following = true;
+  }
+
+  // PROMOTE
+  //
+  // Make this relay the leader. It will start accepting writes and new bundles
+  // will continue on from the last bundle that was replicated.
+  public void promote() {
+    LOG.info("Relay has been promoted to leader");
+    following = false;
+  }
+
+  public boolean isFollowing() {
+    return following;
+  }
+
+  // REPLICATE
+  //
+  // Add a bundle that was read from the leader relay. The bundle keeps its id,
+  // time and team so that readers can use the same roots with either relay.
+  // Bundles that are not after the last bundle in the history are ignored and
+  // the call will return false.
+  public boolean replicate(Relay.Bundle bundle) {
+
+    final int position = bundle.id().id();
+
+    synchronized (sequencer) {
+
+      if (maxHistory <= 0 || (!history.isEmpty() && position <= history.lastKey())) {
+        return false;
+      }
+
+      makeRoom();
+      index(bundle);
+
+      // Move the generator along so that if this relay is promoted, the ids it
+      // makes will come after the ones made by the leader.
+      idGenerator = new LinearUuidGenerator(null, position, Integer.MAX_VALUE);
+    }
+
+    return true;
+  }
+
   @Override
   public Relay.Bundle.Component pack(Uuid id, String text, Time time) {
     return new Component(id, text, time);
@@ -171,7 +289,18 @@ public final class Server implements Relay {
                        Relay.Bundle.Component conversation,
                        Relay.Bundle.Component message) {
 
-    if (authenticate(teamId, teamSecret)) {
+    if (following) {
+
+      LOG.warning(
+          "Write attempt to standby relay team=%s user=%s conversation=%s message=%s",
+          teamId,
+          user.id(),
+          conversation.id(),
+          message.id());
+
+      return false;
+
+    } else if (authenticate(teamId, teamSecret)) {
 
       LOG.info(
           "Writing to server team=%s user=%s conversation=%s message=%s",
@@ -180,17 +309,22 @@ public final class Server implements Relay {
           conversation.id(),
           message.id());
 
-      if (history.size() >= maxHistory) {
-         history.remove();
+      synchronized (sequencer) {
+
+        makeRoom();
+
+        if (maxHistory > 0) {
+          index(new Bundle(
+              idGenerator.make(),
+              Time.now(),
+              teamId,
+              user,
+              conversation,
+              message));
+        }
       }
 
-      return history.offer(new Bundle(
-          idGenerator.make(),
-          Time.now(),
-          teamId,
-          user,
-          conversation,
-          message));
+      return true;
     } else {
 
       LOG.warning(
@@ -216,35 +350,193 @@ public final class Server implements Relay {
           range,
           maxRead);
 
-      for (final Relay.Bundle message : history) {
+      for (final Relay.Bundle bundle : after(history, root).values()) {
+        if (found.size() >= Math.min(range, maxRead)) {
+          break;
+        }
+        found.add(bundle);
+      }
 
-        // Only add a message if there is room. We cannot stop
-        // searching in case we see the root later on.
-        if (found.size() < Math.min(range, maxRead)) {
-          found.add(message);
+      LOG.info(
+          "Read request complete requested=%d fullfilled=%d",
+          range,
+          found.size());
+
+    } else {
+
+      LOG.info(
+          "Unauthroized attempt to read from server team=%s",
+          teamId);
+    }
+
+    return found;
+  }
+
+  @Override
+  public Collection<Relay.Bundle> read(Uuid teamId,
+                                       byte[] teamSecret,
+                                       Uuid root,
+                                       int range,
+                                       Collection<Uuid> conversations) {
+
+    final Collection<Relay.Bundle> found = new ArrayList<>();
+
+    if (authenticate(teamId, teamSecret)) {
+
+      LOG.info(
+         "Request to read filtered from server requested=%d allowed=%d conversations=%d",
+          range,
+          maxRead,
+          conversations.size());
+
+      final int limit = Math.min(range, maxRead);
+
+      // Writes add to the indexes one at a time, so without a common end a
+      // reader could find a bundle in one index but miss an older one that was
+      // added to an index it had already read. The reader would then move past
+      // the older bundle and never see it. Bundles are added to the history
+      // after the indexes, so every bundle up to the last one in the history is
+      // in all of its indexes. Reading only that far means nothing can be
+      // skipped, anything newer is left for the next read.
+      final Map.Entry<Integer, Relay.Bundle> last = history.lastEntry();
+      final int high = last == null ? 0 : last.getKey();
+
+      // Pick which indexes could hold bundles for the reader. If the reader gave
+      // conversations, only those conversations' indexes need to be read, else
+      // it is every team's index other than the reader's own.
+      final Collection<NavigableMap<Integer, Relay.Bundle>> sources = new ArrayList<>();
+
+      if (conversations.isEmpty()) {
+        for (final Map.Entry<Uuid, NavigableMap<Integer, Relay.Bundle>> entry : historyByTeam.entrySet()) {
+          if (!Uuid.equals(entry.getKey(), teamId)) {
+            sources.add(entry.getValue());
+          }
+        }
+      } else {
+        for (final Uuid conversation : new HashSet<>(conversations)) {
+          final NavigableMap<Integer, Relay.Bundle> source = historyByConversation.get(conversation);
+          if (source != null) {
+            sources.add(source);
+          }
+        }
+      }
+
+      // Each index is already in history order, so taking at most "limit" bundles
+      // from each and then keeping the first "limit" of the merged set gives the
+      // same bundles as walking the history would, without touching bundles that
+      // the reader does not want.
+      final NavigableMap<Integer, Relay.Bundle> merged = new TreeMap<>();
+
+      for (final NavigableMap<Integer, Relay.Bundle> source : sources) {
+        int taken = 0;
+        for (final Relay.Bundle bundle : after(source, root).headMap(high, true).values()) {
+          if (taken >= limit) {
+            break;
+          }
+          if (!Uuid.equals(bundle.team(), teamId)) {
+            merged.put(bundle.id().id(), bundle);
+            taken++;
+          }
         }
+      }
 
-        // If the start is found, drop all previous messages.
-        if (message.id().equals(root)) {
-          found.clear();
+      for (final Relay.Bundle bundle : merged.values()) {
+        if (found.size() >= limit) {
+          break;
         }
+        found.add(bundle);
       }
 
       LOG.info(
-          "Read request complete requested=%d fullfilled=%d",
+          "Read filtered request complete requested=%d fullfilled=%d",
           range,
           found.size());
 
     } else {
 
       LOG.info(
-          "Unauthroized attempt to read from server team=%s",
+          "Unauthroized attempt to read filtered from server team=%s",
           teamId);
     }
 
     return found;
   }
 
+  // AFTER
+  //
+  // Get the part of a history that comes after the root. If the root is no longer
+  // in the full history (or never was) the whole of the given history is returned.
+  private NavigableMap<Integer, Relay.Bundle> after(NavigableMap<Integer, Relay.Bundle> source,
+                                                    Uuid root) {
+    return root != null && root.root() == null && history.containsKey(root.id()) ?
+        source.tailMap(root.id(), false) :
+        source;
+  }
+
+  // MAKE ROOM
+  //
+  // Evict the oldest bundles until there is room for one more. Only called
+  // while holding "sequencer".
+  private void makeRoom() {
+    while (historySize.get() > 0 && historySize.get() >= maxHistory) {
+      evict(history.firstEntry().getValue());
+    }
+  }
+
+  private void index(Relay.Bundle bundle) {
+
+    final int position = bundle.id().id();
+
+    // Add to the full history last so that any reader that finds the bundle
+    // there will also be able to find it in the indexes.
+    indexFor(historyByTeam, bundle.team()).put(position, bundle);
+    indexFor(historyByConversation, bundle.conversation().id()).put(position, bundle);
+    if (history.put(position, bundle) == null) {
+      historySize.incrementAndGet();
+    }
+  }
+
+  private void evict(Relay.Bundle bundle) {
+
+    final int position = bundle.id().id();
+
+    // Remove from the full history first so that readers stop using the bundle
+    // as a root before it leaves the indexes.
+    if (history.remove(position) != null) {
+      historySize.decrementAndGet();
+    }
+    unindex(historyByTeam, bundle.team(), position);
+    unindex(historyByConversation, bundle.conversation().id(), position);
+  }
+
+  private static NavigableMap<Integer, Relay.Bundle> indexFor(
+      ConcurrentMap<Uuid, NavigableMap<Integer, Relay.Bundle>> indexes,
+      Uuid key) {
+
+    NavigableMap<Integer, Relay.Bundle> index = indexes.get(key);
+
+    if (index == null) {
+      index = new ConcurrentSkipListMap<>();
+      indexes.put(key, index);
+    }
+
+    return index;
+  }
+
+  private static void unindex(ConcurrentMap<Uuid, NavigableMap<Integer, Relay.Bundle>> indexes,
+                              Uuid key,
+                              int position) {
+
+    final NavigableMap<Integer, Relay.Bundle> index = indexes.get(key);
+
+    if (index != null) {
+      index.remove(position);
+      if (index.isEmpty()) {
+        indexes.remove(key);
+      }
+    }
+  }
+
   private boolean authenticate(Uuid id, byte[] secret) {
     return id != null && Arrays.equals(secret, teamSecrets.get(id));
   }
@@ -27,12 +27,13 @@ import codeu.chat.util.Serializers;
 import codeu.chat.util.Time;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.KeepAlive;
 
 public final class ServerFrontEnd {
 
   private final static Logger.Log LOG = Logger.newLog(ServerFrontEnd.class);
 
-  private static final Serializer<Relay.Bundle.Component> COMPONENT_SERIALIZER =
+  static final Serializer<Relay.Bundle.Component> COMPONENT_SERIALIZER =
       new Serializer<Relay.Bundle.Component>() {
 
     @Override
@@ -62,7 +63,7 @@ public final class ServerFrontEnd {
     }
   };
 
-  private static final Serializer<Relay.Bundle> BUNDLE_SERIALIZER =
+  static final Serializer<Relay.Bundle> BUNDLE_SERIALIZER =
       new Serializer<Relay.Bundle>() {
 
     @Override
@@ -102,22 +103,58 @@ public final class ServerFrontEnd {
     }
   };
 
+  static final Serializer<Collection<Relay.Bundle>> BUNDLE_COLLECTION =
+      Serializers.collection(BUNDLE_SERIALIZER);
+
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+
   private final Relay backEnd;
 
   public ServerFrontEnd(Relay backEnd) {
     this.backEnd = backEnd;
   }
 
+  // HANDLE CONNECTION
+  //
+  // Handle requests from the connection until the client closes it. Clients
+  // can send many requests over one connection. The caller is left to close
+  // the connection.
   public void handleConnection(Connection connection) throws IOException {
 
     LOG.info("Handling Connection - start");
 
-    switch (Serializers.INTEGER.read(connection.in())) {
+    while (KeepAlive.awaitRequest(connection) && handleRequest(connection)) {
+      // Keep going until the client is done with the connection.
+    }
+
+    LOG.info("Handling Connection - end");
+  }
+
+  // HANDLE REQUEST
+  //
+  // Handle a single request. Returns false if the request was not known, in
+  // which case the rest of it was not read and the connection can not be used
+  // again.
+  public boolean handleRequest(Connection connection) throws IOException {
+
+    final int type = Serializers.INTEGER.read(connection.in());
+
+    switch (type) {
       case NetworkCode.RELAY_READ_REQUEST: handleReadMessage(connection); break;
       case NetworkCode.RELAY_WRITE_REQUEST: handleWriteMessage(connection); break;
+      case NetworkCode.RELAY_FILTERED_READ_REQUEST: handleFilteredReadMessage(connection); break;
+      case NetworkCode.PING_REQUEST: handlePing(connection); break;
+      default:
+        LOG.warning("Unknown request type %d, closing connection.", type);
+        return false;
     }
 
-    LOG.info("Handling Connection - end");
+    return true;
+  }
+
+  private void handlePing(Connection connection) throws IOException {
+    Serializers.INTEGER.write(connection.out(), NetworkCode.PING_RESPONSE);
   }
 
   private void handleReadMessage(Connection connection) throws IOException {
@@ -140,11 +177,38 @@ public final class ServerFrontEnd {
     LOG.info("Reading result.size=%d", result.size());
 
     Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_READ_RESPONSE);
-    Serializers.collection(BUNDLE_SERIALIZER).write(connection.out(), result);
+    BUNDLE_COLLECTION.write(connection.out(), result);
 
     LOG.info("Handling Read Message - end");
   }
 
+  private void handleFilteredReadMessage(Connection connection) throws IOException {
+
+    LOG.info("Handling Filtered Read Message - start");
+
+    final Uuid teamId = Uuid.SERIALIZER.read(connection.in());
+    final byte[] teamSecret = Serializers.BYTES.read(connection.in());
+    final Uuid root = Uuid.SERIALIZER.read(connection.in());
+    final int range = Serializers.INTEGER.read(connection.in());
+    final Collection<Uuid> conversations = UUID_COLLECTION.read(connection.in());
+
+    LOG.info(
+        "Reading filtered team=%s root=%s range=%d conversations=%d",
+        teamId,
+        root,
+        range,
+        conversations.size());
+
+    final Collection<Relay.Bundle> result = backEnd.read(teamId, teamSecret, root, range, conversations);
+
+    LOG.info("Reading filtered result.size=%d", result.size());
+
+    Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_FILTERED_READ_RESPONSE);
+    BUNDLE_COLLECTION.write(connection.out(), result);
+
+    LOG.info("Handling Filtered Read Message - end");
+  }
+
   private void handleWriteMessage(Connection connection) throws IOException {
 
     LOG.info("Handling Write Message - start");
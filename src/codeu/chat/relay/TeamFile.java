@@ -0,0 +1,136 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.relay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import codeu.chat.common.Secret;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Uuid;
+
+// TEAM FILE
+//
+// The team file lists every team that the relay will accept and the secret for
+// each team. Each line is "<team id>:<team secret>". Blank lines and lines
+// starting with "#" are skipped.
+//
+// The file is only read again when it has changed on disk so that it can be
+// checked often without re-parsing it each time.
+//
+// Lines that can not be parsed are logged and skipped, the rest of the file is
+// still used. The teams that are loaded replace all of the relay's teams, so a
+// load that finds no teams at all (e.g. the file was caught just after being
+// truncated) is rejected and the caller keeps the teams it has.
+//
+// A file that is caught half written would lose the teams after the point it
+// was cut off. To update the file, write the new contents to another file in
+// the same directory and rename it over the team file, so the relay only ever
+// sees the old file or the new one.
+public final class TeamFile {
+
+  private final static Logger.Log LOG = Logger.newLog(TeamFile.class);
+
+  private final File file;
+
+  private long lastModified = -1;
+  private long lastLength = -1;
+
+  public TeamFile(String path) {
+    this.file = new File(path);
+  }
+
+  // LOAD IF CHANGED
+  //
+  // Read all the teams from the file if the file has changed since the last
+  // time it was checked. If the file has not changed, could not be read or was
+  // rejected, this will return null so that the caller can keep the teams it
+  // has. A rejected file is not read again until it changes.
+  public Map<Uuid, byte[]> loadIfChanged() {
+
+    final long modified = file.lastModified();
+    final long length = file.length();
+
+    if (modified == lastModified && length == lastLength) {
+      return null;
+    }
+
+    lastModified = modified;
+    lastLength = length;
+
+    try {
+
+      return load();
+
+    } catch (IOException ex) {
+
+      LOG.error(ex, "Failed to load team data, keeping the current teams");
+      return null;
+
+    }
+  }
+
+  private Map<Uuid, byte[]> load() throws IOException {
+
+    final Map<Uuid, byte[]> teams = new HashMap<>();
+
+    try (final BufferedReader reader = new BufferedReader(new FileReader(file))) {
+
+      int number = 0;
+
+      String line;
+      for (line = reader.readLine();
+           line != null;
+           line = reader.readLine()) {
+
+        number++;
+        line = line.trim();
+
+        if (line.length() == 0) {
+          // This line is blank, skip it
+        } else if (line.startsWith("#")) {
+          // this is a comment, skip it
+        } else {
+
+          try {
+
+            final String[] tokens = line.split(":");
+
+            // There are just so many things that could go wrong when parsing
+            // this line that it is not worth trying to handle ahead of time.
+            // So instead just try to parse it and catch any exception.
+
+            final Uuid id = Uuid.parse(tokens[0].trim());
+            final byte[] secret = Secret.parse(tokens[1].trim());
+
+            teams.put(id, secret);
+          } catch (Exception ex) {
+            LOG.warning("Skipping line %d of %s, could not parse \"%s\"", number, file, line);
+          }
+        }
+      }
+    }
+
+    if (teams.isEmpty()) {
+      throw new IOException("No teams in " + file);
+    }
+
+    return teams;
+  }
+}
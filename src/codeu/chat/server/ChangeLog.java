@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import codeu.chat.common.LinearUuidGenerator;
+import codeu.chat.util.Uuid;
+
+// CHANGE LOG
+//
+// Tracks which ids changed in which generation so that a caller can ask for
+// everything that changed after a generation it already has. Each id has at
+// most one entry (the generation it last changed in) so the log is never
+// larger than the number of ids that were ever added. Removed ids keep their
+// entry so that the removal can be passed on.
+final class ChangeLog {
+
+  // Generations share a random root so that a generation from another run of
+  // the server is never mistaken for one of ours.
+  private final Uuid.Generator generations =
+      new LinearUuidGenerator(new Uuid(new Random().nextInt()), 1, Integer.MAX_VALUE);
+
+  private Uuid current = generations.make();
+
+  private final Map<Uuid, Integer> changedIn = new HashMap<>();
+  private final TreeMap<Integer, Uuid> changes = new TreeMap<>();
+
+  public Uuid generation() {
+    return current;
+  }
+
+  public void changed(Uuid id) {
+
+    current = generations.make();
+
+    final Integer previous = changedIn.put(id, current.id());
+    if (previous != null) {
+      changes.remove(previous);
+    }
+    changes.put(current.id(), id);
+  }
+
+  // KNOWS
+  //
+  // Check if the generation was given out by this log. Anything else (e.g.
+  // Uuid.NULL or a generation from before a restart) can not be used to find
+  // what changed.
+  public boolean knows(Uuid generation) {
+    return generation != null &&
+           Uuid.related(generation, current) &&
+           generation.id() <= current.id();
+  }
+
+  // CHANGED SINCE
+  //
+  // Get the id of everything that changed after the given generation, oldest
+  // change first. Only the tail of the log is visited. The generation must be
+  // one that the log knows.
+  public Collection<Uuid> changedSince(Uuid generation) {
+    return new ArrayList<>(changes.tailMap(generation.id(), false).values());
+  }
+}
@@ -22,12 +22,14 @@ import java.util.Iterator;
 import java.util.UUID;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
 
 import codeu.chat.common.BasicController;
 import codeu.chat.common.Conversation;
 import codeu.chat.common.Message;
 import codeu.chat.common.RandomUuidGenerator;
 import codeu.chat.common.RawController;
+import codeu.chat.common.ServerEvent;
 import codeu.chat.common.User;
 import codeu.chat.util.Logger;
 import codeu.chat.util.Time;
@@ -37,6 +39,17 @@ public final class Controller implements RawController, BasicController {
 
   private final static Logger.Log LOG = Logger.newLog(Controller.class);
 
+  // LISTENER
+  //
+  // Told about each change after it has been made to the model. Listeners are
+  // called on the same thread as the change so they should hand the event off
+  // rather than do any real work.
+  public interface Listener {
+    void onEvent(ServerEvent event);
+  }
+
+  private final List<Listener> listeners = new ArrayList<>();
+
   private Map<String, User> userNames = new HashMap<>();
 
   private final Model model;
@@ -47,6 +60,10 @@ public final class Controller implements RawController, BasicController {
     this.uuidGenerator = new RandomUuidGenerator(serverId, System.currentTimeMillis());
   }
 
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
   @Override
   public Message newMessage(Uuid author, Uuid conversation, String body) {
     return newMessage(createId(), author, conversation, body, Time.now());
@@ -67,8 +84,11 @@ public final class Controller implements RawController, BasicController {
     if(model.userById().first(id) == null){
       return null;
     } else {
-      model.userById().first(id).setAlias(alias);
-      return model.userById().first(id);
+      final User user = model.userById().first(id);
+      user.setAlias(alias);
+      model.update(user);
+      publish(ServerEvent.userChanged(user));
+      return user;
     }
   }
 
@@ -120,7 +140,9 @@ public final class Controller implements RawController, BasicController {
 
     if (foundUser != null && foundConversation != null && isIdFree(id)) {
 
-      message = new Message(id, Uuid.NULL, Uuid.NULL, creationTime, author, body);
+      // The new message goes after the current last message so that the chain
+      // can be walked backwards as well as forwards.
+      message = new Message(id, Uuid.NULL, foundConversation.lastMessage, creationTime, author, body);
       model.add(message);
       LOG.info("Message added: %s", message.id);
 
@@ -150,10 +172,13 @@ public final class Controller implements RawController, BasicController {
       // Update the conversation to point to the new last message as it has changed.
 
       foundConversation.lastMessage = message.id;
+      model.touch(foundConversation, message.creation);
 
       if (!foundConversation.users.contains(foundUser)) {
         foundConversation.users.add(foundUser.id);
       }
+
+      publish(ServerEvent.messageAdded(message, foundConversation.id));
     }
 
     return message;
@@ -166,13 +191,11 @@ public final class Controller implements RawController, BasicController {
     final Conversation foundConversation = model.conversationById().first(conversation);
     final User foundUser = model.userById().first(foundMessage.author);
 
-    Iterator<Message> iteratorBefore;
-    Iterator<Message> iteratorAfter;
-
     boolean success = true;
 
     if (foundMessage != null && foundUser != null && foundConversation != null) {
       model.delete(foundMessage);
+      foundConversation.messageCount = Math.max(0, foundConversation.messageCount - 1);
 
       if (Uuid.equals(foundConversation.lastMessage, msg)) {
         // This message was the conversation's last one
@@ -189,8 +212,7 @@ public final class Controller implements RawController, BasicController {
           // This message was the conversation's last message, but not the first one
           // Update the last message value to penultimate message,
           // and pointer of the penultimate message to null
-          iteratorBefore = model.messageByTime().before(foundMessage.creation).iterator();
-          final Message newLastMessage = findNewLastMessage(iteratorBefore);
+          final Message newLastMessage = model.messageById().first(foundMessage.previous);
 
           newLastMessage.next = Uuid.NULL;
           foundConversation.lastMessage = newLastMessage.id;
@@ -204,8 +226,7 @@ public final class Controller implements RawController, BasicController {
           // This message was the first message in a conversation that has other messages
           // Update the first message value to the second message,
           // update the pointer of the second message
-          iteratorAfter = model.messageByTime().after(foundMessage.creation).iterator();
-          final Message newFirstMessage = findNewFirstMessage(iteratorAfter);
+          final Message newFirstMessage = model.messageById().first(foundMessage.next);
 
           newFirstMessage.previous = Uuid.NULL;
           foundConversation.firstMessage = newFirstMessage.id;
@@ -215,10 +236,8 @@ public final class Controller implements RawController, BasicController {
         } else {
           // This message was not the first, nor the last message and there are more messages
           // Update the pointers
-          iteratorBefore = model.messageByTime().before(foundMessage.creation).iterator();
-          iteratorAfter = model.messageByTime().after(foundMessage.creation).iterator();
-          final Message newPrevMessage = findNewLastMessage(iteratorBefore);
-          final Message newNextMessage = findNewFirstMessage(iteratorAfter);
+          final Message newPrevMessage = model.messageById().first(foundMessage.previous);
+          final Message newNextMessage = model.messageById().first(foundMessage.next);
 
           newNextMessage.previous = newPrevMessage.id;
           newPrevMessage.next = newNextMessage.id;
@@ -235,32 +254,6 @@ public final class Controller implements RawController, BasicController {
     return success;
   }
 
-  private Message findNewFirstMessage(Iterator<Message> iterator) {
-    // Given an iterator of all the messages that came after the message
-    // to be deleted, which was the first message in the conversation,
-    // this method finds and returns the second message in the conversation
-    Message first = null;
-
-    if(iterator.hasNext()) {
-      first = iterator.next();
-    }
-    return  first;
-  }
-
-  private Message findNewLastMessage(Iterator<Message> iterator) {
-    // Given an iterator of all the messages that came before the message
-    // to be deleted, which was the last message in the conversation,
-    // this method finds and returns the second-to-last message in the conversation
-    Message last = null;
-
-    while (iterator.hasNext()) {
-      last = iterator.next();
-
-    }
-
-    return last;
-  }
-
   @Override
   public User newUser(Uuid id, String name, Time creationTime) {
 
@@ -271,6 +264,7 @@ public final class Controller implements RawController, BasicController {
       user = new User(id, name, creationTime);
       userNames.put(name,user);
       model.add(user);
+      publish(ServerEvent.userChanged(user));
 
       LOG.info(
               "newUser success (user.id=%s user.name=%s user.time=%s)",
@@ -300,6 +294,7 @@ public final class Controller implements RawController, BasicController {
       user = new User(id, name, creationTime, nickName);
       userNames.put(name,user);
       model.add(user);
+      publish(ServerEvent.userChanged(user));
 
       LOG.info(
               "newUser success (user.id=%s user.name=%s user.time=%s user.nickName=%s)",
@@ -328,6 +323,7 @@ public final class Controller implements RawController, BasicController {
       user = userNames.get(name);
       userNames.remove(name);
       model.remove(user);
+      publish(ServerEvent.userChanged(user));
       LOG.info(
           "deleteUser success (user.id=%s user.name=%s user.time=%s)",
           user.id,
@@ -351,6 +347,7 @@ public final class Controller implements RawController, BasicController {
     if (foundOwner != null && isIdFree(id)) {
       conversation = new Conversation(id, owner, creationTime, title);
       model.add(conversation);
+      publish(ServerEvent.conversationAdded(conversation));
 
       LOG.info("Conversation added: " + conversation.id);
     }
@@ -380,6 +377,12 @@ public final class Controller implements RawController, BasicController {
     return success;
   }
 
+  private void publish(ServerEvent event) {
+    for (final Listener listener : listeners) {
+      listener.onEvent(event);
+    }
+  }
+
   private Uuid createId() {
 
     Uuid candidate;
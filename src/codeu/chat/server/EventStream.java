@@ -0,0 +1,182 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.common.ServerEvent;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.connections.Connection;
+
+// EVENT STREAM
+//
+// Pushes each change the controller makes to every subscribed connection.
+// Subscribed connections are kept open and only ever written to.
+//
+// Each subscriber has its own writer thread and its own queue of at most
+// MAX_BACKLOG events. Publishing an event only adds it to those queues, so
+// neither the timeline that handles requests nor any other subscriber ever
+// waits on a socket write. A subscriber whose queue fills up has stopped
+// keeping up (or stopped reading) and is disconnected; closing its connection
+// also frees a writer that is stuck in a write. The client can subscribe again
+// and reload what it missed.
+//
+// Events that queue up while a write is in progress are sent together, so a
+// burst of changes costs one flush per subscriber rather than one per change.
+final class EventStream implements Controller.Listener {
+
+  private final static Logger.Log LOG = Logger.newLog(EventStream.class);
+
+  // The number of events that can wait for a single subscriber before the
+  // subscriber is dropped.
+  static final int MAX_BACKLOG = 1024;
+
+  private final ServerStats stats;
+  private final int maxBacklog;
+
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong fellBehind = new AtomicLong();
+
+  public EventStream(ServerStats stats) {
+    this(stats, MAX_BACKLOG);
+  }
+
+  EventStream(ServerStats stats, int maxBacklog) {
+    this.stats = stats;
+    this.maxBacklog = maxBacklog;
+  }
+
+  // SUBSCRIBE
+  //
+  // Take ownership of the connection. The connection is closed by the stream
+  // when a write to it fails or the subscriber falls behind.
+  public void subscribe(Connection connection) {
+
+    final Subscriber subscriber = new Subscriber(connection, maxBacklog);
+
+    subscribers.add(subscriber);
+    subscriber.writer.start();
+  }
+
+  @Override
+  public void onEvent(ServerEvent event) {
+
+    published.incrementAndGet();
+
+    for (final Subscriber subscriber : subscribers) {
+      if (!subscriber.queue.offer(event)) {
+        LOG.info("Dropping subscriber that fell behind by %d events.", maxBacklog);
+        fellBehind.incrementAndGet();
+        drop(subscriber);
+      }
+    }
+  }
+
+  public void writeTo(Map<String, Long> snapshot) {
+    snapshot.put("events.subscribers", (long) subscribers.size());
+    snapshot.put("events.published", published.get());
+    snapshot.put("events.dropped_subscribers", dropped.get());
+    snapshot.put("events.fell_behind", fellBehind.get());
+  }
+
+  // Only the first call for a subscriber has any effect, so the writer and
+  // the publishing thread can both give up on a subscriber at the same time.
+  private void drop(Subscriber subscriber) {
+
+    if (!subscriber.closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    subscribers.remove(subscriber);
+    dropped.incrementAndGet();
+
+    try {
+      subscriber.connection.close();
+    } catch (Exception ex) {
+      LOG.error(ex, "Exception while closing subscriber connection.");
+    }
+
+    // Wake the writer if it is waiting for events rather than writing.
+    subscriber.writer.interrupt();
+
+    stats.connectionClosed();
+  }
+
+  private void write(Subscriber subscriber) {
+
+    final List<ServerEvent> events = new ArrayList<>();
+
+    try {
+      Serializers.INTEGER.write(subscriber.connection.out(), NetworkCode.SUBSCRIBE_RESPONSE);
+      subscriber.connection.out().flush();
+
+      while (!subscriber.closed.get()) {
+
+        events.add(subscriber.queue.take());
+        subscriber.queue.drainTo(events);
+
+        for (final ServerEvent event : events) {
+          ServerEvent.SERIALIZER.write(subscriber.connection.out(), event);
+        }
+        subscriber.connection.out().flush();
+
+        events.clear();
+      }
+    } catch (InterruptedException ex) {
+      // The subscriber was dropped while the writer was waiting for events.
+    } catch (IOException ex) {
+      if (!subscriber.closed.get()) {
+        LOG.info("Dropping subscriber: %s", ex.getMessage());
+      }
+    }
+
+    drop(subscriber);
+  }
+
+  private final class Subscriber {
+
+    final Connection connection;
+    final BlockingQueue<ServerEvent> queue;
+    final AtomicBoolean closed = new AtomicBoolean(false);
+    final Thread writer;
+
+    Subscriber(Connection connection, int maxBacklog) {
+
+      this.connection = connection;
+      this.queue = new ArrayBlockingQueue<>(maxBacklog);
+
+      this.writer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          write(Subscriber.this);
+        }
+      }, "subscriber-writer");
+      this.writer.setDaemon(true);
+    }
+  }
+}
@@ -14,21 +14,27 @@
 
 package codeu.chat.server;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationDelta;
+import codeu.chat.common.ConversationPage;
 import codeu.chat.common.ConversationSummary;
-import codeu.chat.common.LinearUuidGenerator;
 import codeu.chat.common.Message;
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Time;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.Logger;
 import codeu.chat.util.store.Store;
 import codeu.chat.util.store.StoreAccessor;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,27 +47,52 @@ public final class Model {
 
     @Override
     public int compare(Uuid a, Uuid b) {
-
-      if (a == b) { return 0; }
-
-      if (a == null && b != null) { return -1; }
-
-      if (a != null && b == null) { return 1; }
-
-      final int order = Integer.compare(a.id(), b.id());
-      return order == 0 ? compare(a.root(), b.root()) : order;
+      return Uuid.compare(a, b);
     }
   };
 
+  // Compare the milliseconds directly as this is called on every step through
+  // the time indexes.
   private static final Comparator<Time> TIME_COMPARE = new Comparator<Time>() {
     @Override
     public int compare(Time a, Time b) {
-      return a.compareTo(b);
+      return Long.compare(a.inMs(), b.inMs());
     }
   };
 
   private static final Comparator<String> STRING_COMPARE = String.CASE_INSENSITIVE_ORDER;
 
+  // The conversation orders used for paging. Each one falls back to the id so
+  // that no two conversations are equal and a page can start right after any
+  // conversation.
+  private static final Comparator<Conversation> CONVERSATION_BY_TITLE =
+      new Comparator<Conversation>() {
+        @Override
+        public int compare(Conversation a, Conversation b) {
+          final int order = STRING_COMPARE.compare(a.title, b.title);
+          return order == 0 ? UUID_COMPARE.compare(a.id, b.id) : order;
+        }
+      };
+
+  private static final Comparator<Conversation> CONVERSATION_BY_CREATION =
+      new Comparator<Conversation>() {
+        @Override
+        public int compare(Conversation a, Conversation b) {
+          final int order = TIME_COMPARE.compare(a.creation, b.creation);
+          return order == 0 ? UUID_COMPARE.compare(a.id, b.id) : order;
+        }
+      };
+
+  // Most recent activity first.
+  private static final Comparator<Conversation> CONVERSATION_BY_ACTIVITY =
+      new Comparator<Conversation>() {
+        @Override
+        public int compare(Conversation a, Conversation b) {
+          final int order = TIME_COMPARE.compare(b.lastActivity, a.lastActivity);
+          return order == 0 ? UUID_COMPARE.compare(a.id, b.id) : order;
+        }
+      };
+
   private final Store<Uuid, User> userById = new Store<>(UUID_COMPARE);
   private final Store<Time, User> userByTime = new Store<>(TIME_COMPARE);
   protected final Store<String, User> userByText = new Store<>(STRING_COMPARE);
@@ -70,27 +101,44 @@ public final class Model {
   private final Store<Time, Conversation> conversationByTime = new Store<>(TIME_COMPARE);
   private final Store<String, Conversation> conversationByText = new Store<>(STRING_COMPARE);
 
+  private final NavigableSet<Conversation> conversationsByTitle =
+      new TreeSet<>(CONVERSATION_BY_TITLE);
+  private final NavigableSet<Conversation> conversationsByCreation =
+      new TreeSet<>(CONVERSATION_BY_CREATION);
+  private final NavigableSet<Conversation> conversationsByActivity =
+      new TreeSet<>(CONVERSATION_BY_ACTIVITY);
+
   private final Store<Uuid, Message> messageById = new Store<>(UUID_COMPARE);
   private final Store<Time, Message> messageByTime = new Store<>(TIME_COMPARE);
   private final Store<String, Message> messageByText = new Store<>(STRING_COMPARE);
   protected final HashMap<String, ArrayList<Message>> messageByUserID = new HashMap<>();
   protected final HashMap<String, ArrayList<Message>> tags = new HashMap<>();
 
-  private final Uuid.Generator userGenerations = new LinearUuidGenerator(null, 1, Integer.MAX_VALUE);
-  private Uuid currentUserGeneration = userGenerations.make();
+  private final ChangeLog userLog = new ChangeLog();
+  private final ChangeLog conversationLog = new ChangeLog();
 
   public void add(User user) {
-    currentUserGeneration = userGenerations.make();
-
     userById.insert(user.id, user);
     userByTime.insert(user.creation, user);
     userByText.insert(user.name, user);
+
+    userLog.changed(user.id);
+  }
+
+  // UPDATE
+  //
+  // Record that a user already in the model was changed in place (e.g. its
+  // alias was set) so that it will be part of the next delta.
+  public void update(User user) {
+    userLog.changed(user.id);
   }
 
   public void remove(User user){
     userById.remove(user.id);
     userByTime.remove(user.creation);
     userByText.remove(user.name);
+
+    userLog.changed(user.id);
   }
 
   public StoreAccessor<Uuid, User> userById() {
@@ -106,13 +154,162 @@ public final class Model {
   }
 
   public Uuid userGeneration() {
-    return currentUserGeneration;
+    return userLog.generation();
+  }
+
+  // USER CHANGES SINCE
+  //
+  // Get every user that changed after the given generation. Only the users
+  // in the tail of the change log are visited, so a caller that is up to date
+  // costs nothing more than the lookup.
+  public UserDelta userChangesSince(Uuid generation) {
+
+    final boolean known = userLog.knows(generation);
+
+    final Collection<User> updated = new ArrayList<>();
+    final Collection<Uuid> removed = new ArrayList<>();
+
+    if (known) {
+      for (final Uuid id : userLog.changedSince(generation)) {
+        final User user = userById.first(id);
+        if (user == null) {
+          removed.add(id);
+        } else {
+          updated.add(user);
+        }
+      }
+    } else {
+      for (final User user : userById.all()) {
+        updated.add(user);
+      }
+    }
+
+    return new UserDelta(userLog.generation(), !known, updated, removed);
+  }
+
+  // CONVERSATION CHANGES SINCE
+  //
+  // The same as userChangesSince but for conversations. Only the summary of
+  // each conversation is returned.
+  public ConversationDelta conversationChangesSince(Uuid generation) {
+
+    final boolean known = conversationLog.knows(generation);
+
+    final Collection<ConversationSummary> updated = new ArrayList<>();
+    final Collection<Uuid> removed = new ArrayList<>();
+
+    if (known) {
+      for (final Uuid id : conversationLog.changedSince(generation)) {
+        final Conversation conversation = conversationById.first(id);
+        if (conversation == null) {
+          removed.add(id);
+        } else {
+          updated.add(conversation.summary);
+        }
+      }
+    } else {
+      for (final Conversation conversation : conversationById.all()) {
+        updated.add(conversation.summary);
+      }
+    }
+
+    return new ConversationDelta(conversationLog.generation(), !known, updated, removed);
   }
 
   public void add(Conversation conversation) {
     conversationById.insert(conversation.id, conversation);
     conversationByTime.insert(conversation.creation, conversation);
     conversationByText.insert(conversation.title, conversation);
+
+    conversationsByTitle.add(conversation);
+    conversationsByCreation.add(conversation);
+    conversationsByActivity.add(conversation);
+
+    conversationLog.changed(conversation.id);
+  }
+
+  // TOUCH
+  //
+  // Record that a message was added to a conversation at the given time. The
+  // message is counted and the last activity moves forward. The activity
+  // order is keyed on the last activity, so the conversation has to be taken
+  // out of the index while it changes. Times older than the current last
+  // activity (e.g. late messages from the relay) do not move it.
+  public void touch(Conversation conversation, Time time) {
+
+    conversation.messageCount += 1;
+
+    if (TIME_COMPARE.compare(time, conversation.lastActivity) <= 0) {
+      return;
+    }
+
+    final boolean indexed = conversationsByActivity.remove(conversation);
+    conversation.lastActivity = time;
+    if (indexed) {
+      conversationsByActivity.add(conversation);
+    }
+  }
+
+  public Uuid conversationGeneration() {
+    return conversationLog.generation();
+  }
+
+  // CONVERSATION PAGE
+  //
+  // Get the summaries of up to "count" conversations in the given order that
+  // come after the conversation "after". If "after" is Uuid.NULL or is not a
+  // known conversation the page starts at the beginning of the order. Only
+  // the conversations on the page are visited.
+  public List<ConversationSummary> conversationPage(int order, Uuid after, int count) {
+
+    final NavigableSet<Conversation> index = conversationIndex(order);
+    final Conversation cursor = conversationById.first(after);
+
+    final Iterable<Conversation> from =
+        (cursor == null || !index.contains(cursor)) ? index : index.tailSet(cursor, false);
+
+    final List<ConversationSummary> page = new ArrayList<>();
+
+    for (final Conversation conversation : from) {
+      if (page.size() >= count) {
+        break;
+      }
+      page.add(conversation.summary);
+    }
+
+    return page;
+  }
+
+  // RECENT CONVERSATIONS
+  //
+  // Get the activity of the "count" most recently active conversations. Only
+  // the head of the activity index is visited.
+  public List<ConversationActivity> recentConversations(int count) {
+
+    final List<ConversationActivity> recent = new ArrayList<>();
+
+    for (final Conversation conversation : conversationsByActivity) {
+      if (recent.size() >= count) {
+        break;
+      }
+      recent.add(new ConversationActivity(
+          conversation.summary, conversation.lastActivity, conversation.messageCount));
+    }
+
+    return recent;
+  }
+
+  private NavigableSet<Conversation> conversationIndex(int order) {
+    switch (order) {
+      case ConversationPage.BY_TITLE:
+        return conversationsByTitle;
+      case ConversationPage.BY_CREATION:
+        return conversationsByCreation;
+      case ConversationPage.BY_ACTIVITY:
+        return conversationsByActivity;
+      default:
+        throw new IllegalArgumentException("Unknown conversation order " + order);
+    }
   }
 
   public StoreAccessor<Uuid, Conversation> conversationById() {
@@ -120,6 +317,12 @@ public final class Model {
   }
 
   public void delete(Conversation conversation) {
+    conversationLog.changed(conversation.id);
+
+    conversationsByTitle.remove(conversation);
+    conversationsByCreation.remove(conversation);
+    conversationsByActivity.remove(conversation);
+
     if(conversationById.contains(conversation.id)) {
       conversationById.delete(conversation.id);
       System.out.println(conversationById.all().toString());
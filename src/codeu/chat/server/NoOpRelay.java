@@ -63,4 +63,14 @@ public final class NoOpRelay implements Relay {
 
     return new ArrayList<Relay.Bundle>();
   }
+
+  @Override
+  public Collection<Relay.Bundle> read(Uuid teamId,
+                                       byte[] teamSecret,
+                                       Uuid root,
+                                       int range,
+                                       Collection<Uuid> conversations) {
+
+    return new ArrayList<Relay.Bundle>();
+  }
 }
@@ -18,7 +18,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import codeu.chat.common.NetworkCode;
 import codeu.chat.common.Relay;
@@ -117,10 +119,53 @@ public final class RemoteRelay implements Relay {
     }
   };
 
-  private final ConnectionSource source;
+  private static final Serializer<Collection<Relay.Bundle>> BUNDLE_COLLECTION =
+      Serializers.collection(BUNDLE_SERIALIZER);
+
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+
+  // How many calls in a row have to fail on the current relay before calls are
+  // sent to the next relay first.
+  private static final int FAIL_OVER_AFTER = 3;
+
+  // CALL
+  //
+  // A single request/response exchange with a relay. If the exchange throws, or
+  // the relay does not accept the call, the call is tried on the next relay.
+  private static abstract class Call<T> {
+
+    abstract T call(Connection connection) throws IOException;
+
+    // ACCEPTED
+    //
+    // Check the result of a call. A standby relay answers writes by refusing
+    // them, so this is the only way to tell that the call needs another relay.
+    boolean accepted(T result) { return true; }
+  }
+
+  private final List<ConnectionSource> sources;
+
+  // The index of the relay that calls are sent to first and how many calls in
+  // a row have failed on it. Calls only move on after FAIL_OVER_AFTER failures
+  // so that one network blip does not move them. They never move back to an
+  // earlier relay: it may have been restarted with an empty history, or it
+  // may still be a leader that is no longer the one the other relays follow.
+  // Going back to it takes a restart of the server.
+  private int current = 0;
+  private int failures = 0;
 
   public RemoteRelay(ConnectionSource source) {
-    this.source = source;
+    this(Arrays.asList(source));
+  }
+
+  // REMOTE RELAY
+  //
+  // Create a remote relay that can fail over between multiple relays. The first
+  // source should be the leader and the rest should be standby relays in the
+  // order they are meant to take over.
+  public RemoteRelay(List<ConnectionSource> sources) {
+    this.sources = new ArrayList<>(sources);
   }
 
   @Override
@@ -129,57 +174,153 @@ public final class RemoteRelay implements Relay {
   }
 
   @Override
-  public boolean write(Uuid teamId,
-                       byte[] teamSecret,
-                       Relay.Bundle.Component user,
-                       Relay.Bundle.Component conversation,
-                       Relay.Bundle.Component message) {
-
-    boolean result = false;
-
-    try (final Connection connection = source.connect()) {
-
-      Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_WRITE_REQUEST);
-      Uuid.SERIALIZER.write(connection.out(), teamId);
-      Serializers.BYTES.write(connection.out(), teamSecret);
-      COMPONENT_SERIALIZER.write(connection.out(), user);
-      COMPONENT_SERIALIZER.write(connection.out(), conversation);
-      COMPONENT_SERIALIZER.write(connection.out(), message);
-
-      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.RELAY_WRITE_RESPONSE) {
-        result = Serializers.BOOLEAN.read(connection.in());
-      } else {
-        LOG.error("Server did not handle RELAY_WRITE_REQUEST");
+  public boolean write(final Uuid teamId,
+                       final byte[] teamSecret,
+                       final Relay.Bundle.Component user,
+                       final Relay.Bundle.Component conversation,
+                       final Relay.Bundle.Component message) {
+
+    return send("RELAY_WRITE_REQUEST", false, new Call<Boolean>() {
+      @Override
+      Boolean call(Connection connection) throws IOException {
+
+        Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_WRITE_REQUEST);
+        Uuid.SERIALIZER.write(connection.out(), teamId);
+        Serializers.BYTES.write(connection.out(), teamSecret);
+        COMPONENT_SERIALIZER.write(connection.out(), user);
+        COMPONENT_SERIALIZER.write(connection.out(), conversation);
+        COMPONENT_SERIALIZER.write(connection.out(), message);
+
+        if (Serializers.INTEGER.read(connection.in()) == NetworkCode.RELAY_WRITE_RESPONSE) {
+          return Serializers.BOOLEAN.read(connection.in());
+        } else {
+          LOG.error("Server did not handle RELAY_WRITE_REQUEST");
+          return false;
+        }
       }
-    } catch (Exception ex) {
-      LOG.error(ex, "Unexpected error when sending RELAY_WRITE_REQUEST");;
-    }
 
-    return result;
+      @Override
+      boolean accepted(Boolean written) {
+        return written;
+      }
+    });
   }
 
   @Override
-  public Collection<Relay.Bundle> read(Uuid teamId, byte[] teamSecret, Uuid root, int range) {
+  public Collection<Relay.Bundle> read(final Uuid teamId,
+                                       final byte[] teamSecret,
+                                       final Uuid root,
+                                       final int range) {
+
+    final Collection<Relay.Bundle> none = new ArrayList<>();
+
+    return send("RELAY_READ_REQUEST", none, new Call<Collection<Relay.Bundle>>() {
+      @Override
+      Collection<Relay.Bundle> call(Connection connection) throws IOException {
+
+        // Each attempt has its own result so that a retry after a partial read
+        // does not return bundles twice.
+        final Collection<Relay.Bundle> result = new ArrayList<>();
+
+        Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_READ_REQUEST);
+        Uuid.SERIALIZER.write(connection.out(), teamId);
+        Serializers.BYTES.write(connection.out(), teamSecret);
+        Uuid.SERIALIZER.write(connection.out(), root);
+        Serializers.INTEGER.write(connection.out(), range);
+
+        if (Serializers.INTEGER.read(connection.in()) == NetworkCode.RELAY_READ_RESPONSE) {
+          result.addAll(BUNDLE_COLLECTION.read(connection.in()));
+        } else {
+          LOG.error("Server did not handle RELAY_READ_REQUEST");
+        }
+
+        return result;
+      }
+    });
+  }
 
-    final Collection<Relay.Bundle> result = new ArrayList<>();
+  @Override
+  public Collection<Relay.Bundle> read(final Uuid teamId,
+                                       final byte[] teamSecret,
+                                       final Uuid root,
+                                       final int range,
+                                       final Collection<Uuid> conversations) {
+
+    final Collection<Relay.Bundle> none = new ArrayList<>();
+
+    return send("RELAY_FILTERED_READ_REQUEST", none, new Call<Collection<Relay.Bundle>>() {
+      @Override
+      Collection<Relay.Bundle> call(Connection connection) throws IOException {
+
+        final Collection<Relay.Bundle> result = new ArrayList<>();
+
+        Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_FILTERED_READ_REQUEST);
+        Uuid.SERIALIZER.write(connection.out(), teamId);
+        Serializers.BYTES.write(connection.out(), teamSecret);
+        Uuid.SERIALIZER.write(connection.out(), root);
+        Serializers.INTEGER.write(connection.out(), range);
+        UUID_COLLECTION.write(connection.out(), conversations);
+
+        if (Serializers.INTEGER.read(connection.in()) == NetworkCode.RELAY_FILTERED_READ_RESPONSE) {
+          result.addAll(BUNDLE_COLLECTION.read(connection.in()));
+        } else {
+          LOG.error("Server did not handle RELAY_FILTERED_READ_REQUEST");
+        }
+
+        return result;
+      }
+    });
+  }
+
+  // SEND
+  //
+  // Make the call on the current relay. If it cannot be reached or does not
+  // accept the call, try the relays after it in order. Relays before the
+  // current one are never tried. If none of them took the call, "fallback" is
+  // returned.
+  private <T> T send(String name, T fallback, Call<T> call) {
+
+    for (int index = current(); index < sources.size(); index++) {
+
+      try (final Connection connection = sources.get(index).connect()) {
 
-    try (final Connection connection = source.connect()) {
+        final T result = call.call(connection);
 
-      Serializers.INTEGER.write(connection.out(), NetworkCode.RELAY_READ_REQUEST);
-      Uuid.SERIALIZER.write(connection.out(), teamId);
-      Serializers.BYTES.write(connection.out(), teamSecret);
-      Uuid.SERIALIZER.write(connection.out(), root);
-      Serializers.INTEGER.write(connection.out(), range);
+        if (call.accepted(result)) {
+          succeeded(index);
+          return result;
+        }
 
-      if (Serializers.INTEGER.read(connection.in()) == NetworkCode.RELAY_READ_RESPONSE) {
-        result.addAll(Serializers.collection(BUNDLE_SERIALIZER).read(connection.in()));
-      } else {
-        LOG.error("Server did not handle RELAY_READ_REQUEST");
+        LOG.warning("Relay %d did not accept %s", index, name);
+
+      } catch (Exception ex) {
+        LOG.error(ex, "Unexpected error when sending %s to relay %d", name, index);
       }
-    } catch (Exception ex) {
-      LOG.error(ex, "Unexpected error when sending RELAY_READ_REQUEST");
+
+      failed(index);
     }
 
-    return result;
+    return fallback;
+  }
+
+  private synchronized int current() {
+    return current;
+  }
+
+  private synchronized void succeeded(int index) {
+    if (index == current) {
+      failures = 0;
+    }
+  }
+
+  private synchronized void failed(int index) {
+    if (index == current && current + 1 < sources.size()) {
+      failures += 1;
+      if (failures >= FAIL_OVER_AFTER) {
+        LOG.warning("Failing over from relay %d to relay %d", current, current + 1);
+        current += 1;
+        failures = 0;
+      }
+    }
   }
 }
@@ -0,0 +1,139 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// REQUEST TRACE
+//
+// The timeline of a single request. A request goes through four phases:
+//
+//   wait    - from when the connection was accepted until the server started
+//             handling it (time spent behind other requests).
+//   decode  - reading the request's arguments.
+//   execute - doing the work in the model, view or controller.
+//   encode  - writing the response.
+//
+// The trace also counts the bytes read and written for the request. Each mark
+// is a single call to System.nanoTime so every request can be traced.
+final class RequestTrace {
+
+  private final long accepted;
+
+  private int type = -1;
+
+  private long started;
+  private long decoded;
+  private long executed;
+  private long finished;
+
+  private long bytesIn = 0;
+  private long bytesOut = 0;
+
+  private final InputStream in;
+  private final OutputStream out;
+
+  RequestTrace(long accepted, final InputStream in, final OutputStream out) {
+
+    this.accepted = accepted;
+    this.started = System.nanoTime();
+
+    this.in = new FilterInputStream(in) {
+
+      @Override
+      public int read() throws IOException {
+        final int value = super.read();
+        if (value >= 0) {
+          bytesIn += 1;
+        }
+        return value;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        if (read > 0) {
+          bytesIn += read;
+        }
+        return read;
+      }
+    };
+
+    this.out = new OutputStream() {
+
+      @Override
+      public void write(int value) throws IOException {
+        out.write(value);
+        bytesOut += 1;
+      }
+
+      @Override
+      public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        bytesOut += length;
+      }
+
+      @Override
+      public void flush() throws IOException {
+        out.flush();
+      }
+    };
+  }
+
+  InputStream in() { return in; }
+
+  OutputStream out() { return out; }
+
+  // The type is only known once it has been read from the connection.
+  void type(int type) { this.type = type; }
+
+  void decoded() { decoded = System.nanoTime(); }
+
+  void executed() { executed = System.nanoTime(); }
+
+  void finished() { finished = System.nanoTime(); }
+
+  int type() { return type; }
+
+  long bytesIn() { return bytesIn; }
+
+  long bytesOut() { return bytesOut; }
+
+  // Phases that were never marked (for example a request type that does not
+  // decode anything) take no time and the next phase starts where the last
+  // marked one ended.
+
+  long waitNanos() { return started - accepted; }
+
+  long decodeNanos() { return decodedAt() - started; }
+
+  long executeNanos() { return executedAt() - decodedAt(); }
+
+  long encodeNanos() { return finished - executedAt(); }
+
+  // The time the server spent handling the request, not counting the wait.
+  long handleNanos() { return finished - started; }
+
+  // The time the client saw, from when the connection was accepted.
+  long totalNanos() { return finished - accepted; }
+
+  private long decodedAt() { return decoded == 0 ? started : decoded; }
+
+  private long executedAt() { return executed == 0 ? decodedAt() : executed; }
+}
@@ -20,21 +20,39 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationDelta;
+import codeu.chat.common.ConversationPage;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.common.LinearUuidGenerator;
 import codeu.chat.common.Message;
 import codeu.chat.common.NetworkCode;
 import codeu.chat.common.Relay;
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Logger;
+import codeu.chat.util.Serializer;
 import codeu.chat.util.Serializers;
 import codeu.chat.util.Time;
 import codeu.chat.util.Timeline;
 import codeu.chat.util.Uuid;
 import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.KeepAlive;
 
 public final class Server {
 
@@ -42,8 +60,64 @@ public final class Server {
 
   private static final int RELAY_REFRESH_MS = 5000;  // 5 seconds
 
+  // The most bundles to ask the relay for in each read.
+  private static final int RELAY_READ_RANGE = 32;
+
+  private static final Serializer<Map<String, Long>> STATS_SERIALIZER =
+      Serializers.map(Serializers.STRING, Serializers.LONG);
+
+  // Serializers made from other serializers are made once here instead of on
+  // every call.
+  private static final Serializer<Collection<Uuid>> UUID_COLLECTION =
+      Serializers.collection(Uuid.SERIALIZER);
+  private static final Serializer<Collection<User>> USER_COLLECTION =
+      Serializers.collection(User.SERIALIZER);
+  private static final Serializer<Collection<Message>> MESSAGE_COLLECTION =
+      Serializers.collection(Message.SERIALIZER);
+  private static final Serializer<Collection<Conversation>> CONVERSATION_COLLECTION =
+      Serializers.collection(Conversation.SERIALIZER);
+  private static final Serializer<Collection<ConversationSummary>> SUMMARY_COLLECTION =
+      Serializers.collection(ConversationSummary.SERIALIZER);
+  private static final Serializer<Collection<ConversationActivity>> ACTIVITY_COLLECTION =
+      Serializers.collection(ConversationActivity.SERIALIZER);
+  private static final Serializer<User> NULLABLE_USER =
+      Serializers.nullable(User.SERIALIZER);
+  private static final Serializer<Message> NULLABLE_MESSAGE =
+      Serializers.nullable(Message.SERIALIZER);
+  private static final Serializer<Conversation> NULLABLE_CONVERSATION =
+      Serializers.nullable(Conversation.SERIALIZER);
+
+  // An empty subscription means that the server wants bundles from every
+  // conversation (other than the ones it wrote itself).
+  private static final Collection<Uuid> ALL_CONVERSATIONS = Arrays.asList(new Uuid[0]);
+
+  // The most connections that can be kept open at once. Each one has a thread
+  // waiting for its next request.
+  private static final int MAX_CONNECTION_THREADS = 256;
+
+  // What happens to a connection after a request.
+  private static final int KEEP_OPEN = 0;   // wait for the next request
+  private static final int CLOSE = 1;       // close it
+  private static final int HANDED_OFF = 2;  // something else owns it now
+
   private final Timeline timeline = new Timeline();
 
+  private final ExecutorService connections = new ThreadPoolExecutor(
+      0,
+      MAX_CONNECTION_THREADS,
+      KeepAlive.IDLE_TIMEOUT_MS,
+      TimeUnit.MILLISECONDS,
+      new SynchronousQueue<Runnable>(),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "connection-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   private final Uuid id;
   private final byte[] secret;
 
@@ -54,6 +128,24 @@ public final class Server {
   private final Relay relay;
   private Uuid lastSeen = Uuid.NULL;
 
+  private final ServerStats stats = new ServerStats();
+
+  // Clients that keep a connection open to be told about changes.
+  private final EventStream events = new EventStream(stats);
+
+  // Only one in this many requests has its phases added to the stats. Every
+  // request is still traced so that any slow request can be logged.
+  private static final int PHASE_SAMPLE_EVERY = 16;
+  private int traced = 0;
+
+  private volatile SlowRequestLog slowLog = null;
+
+  // How the last read from the relay went. These are only used for stats. If
+  // the last read filled the whole range then the server is behind the relay.
+  private volatile long lastRelayReadMs = 0;
+  private volatile int lastRelayReadCount = 0;
+  private volatile long relayReadFailures = 0;
+
   public Server(final Uuid id, final byte[] secret, final Relay relay) {
 
     this.id = id;
@@ -62,6 +154,8 @@ public final class Server {
     this.controller = new Controller(id, model);
     this.relay = relay;
 
+    controller.addListener(events);
+
     timeline.scheduleNow(new Runnable() {
       @Override
       public void run() {
@@ -69,13 +163,22 @@ public final class Server {
 
           LOG.info("Reading update from relay...");
 
-          for (final Relay.Bundle bundle : relay.read(id, secret, lastSeen, 32)) {
+          // Only ask for bundles from other teams. This server already has all
+          // of its own messages, so there is no reason to download them again.
+          final Collection<Relay.Bundle> bundles =
+              relay.read(id, secret, lastSeen, RELAY_READ_RANGE, ALL_CONVERSATIONS);
+
+          for (final Relay.Bundle bundle : bundles) {
             onBundle(bundle);
             lastSeen = bundle.id();
           }
 
+          lastRelayReadMs = System.currentTimeMillis();
+          lastRelayReadCount = bundles.size();
+
         } catch (Exception ex) {
 
+          relayReadFailures += 1;
           LOG.error(ex, "Failed to read update from relay.");
 
         }
@@ -85,48 +188,264 @@ public final class Server {
     });
   }
 
+  // LOG SLOW REQUESTS
+  //
+  // Write every request that takes longer than the log's threshold (from when
+  // it started to arrive to when its response was written) to the log.
+  public void logSlowRequests(SlowRequestLog log) {
+    this.slowLog = log;
+  }
+
+  // STOP
+  //
+  // Stop reading from the relay and handling requests. Threads waiting on an
+  // open connection are left to finish on their own. This is a non-blocking
+  // call.
+  public void stop() {
+    timeline.stop();
+    connections.shutdown();
+  }
+
+  // HANDLE CONNECTION
+  //
+  // Connections are kept open between requests so that a client can send many
+  // requests over one connection. Each connection gets a thread that waits for
+  // its next request, but the requests themselves are still handled one at a
+  // time on the timeline. If every connection thread is in use the connection
+  // is only used for a single request, as it was before connections were kept
+  // open. The response is then followed by CONNECTION_CLOSING so that a client
+  // that keeps connections does not send another request on it.
   public void handleConnection(final Connection connection) {
-    timeline.scheduleNow(new Runnable() {
-      @Override
-      public void run() {
-        try {
 
-          LOG.info("Handling connection...");
+    stats.connectionOpened();
 
-          final boolean success = onMessage(
-              connection.in(),
-              connection.out());
+    try {
 
-          LOG.info("Connection handled: %s", success ? "ACCEPTED" : "REJECTED");
-        } catch (Exception ex) {
+      connections.execute(new Runnable() {
+        @Override
+        public void run() {
+          serve(connection);
+        }
+      });
 
-          LOG.error(ex, "Exception while handling connection.");
+    } catch (RejectedExecutionException ex) {
 
+      LOG.warning("No connection threads left, handling a single request.");
+
+      timeline.scheduleNow(new Runnable() {
+        @Override
+        public void run() {
+          finish(connection, closing(connection, handleRequest(connection, System.nanoTime())));
         }
+      });
+    }
+  }
 
-        try {
-          connection.close();
-        } catch (Exception ex) {
-          LOG.error(ex, "Exception while closing connection.");
+  // SERVE
+  //
+  // Handle requests from the connection until the client closes it, it is
+  // idle for too long, or a request leaves it in a state where it can not be
+  // used again. Runs on the connection's own thread.
+  private void serve(final Connection connection) {
+
+    int outcome = CLOSE;
+
+    try {
+
+      do {
+
+        if (!KeepAlive.awaitRequest(connection)) {
+          outcome = CLOSE;
+          break;
+        }
+
+        final long accepted = System.nanoTime();
+
+        final FutureTask<Integer> request = new FutureTask<>(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return handleRequest(connection, accepted);
+          }
+        });
+
+        timeline.scheduleNow(request);
+        outcome = request.get();
+
+      } while (outcome == KEEP_OPEN);
+
+    } catch (SocketTimeoutException ex) {
+
+      LOG.info("Closing idle connection.");
+      outcome = CLOSE;
+
+    } catch (Exception ex) {
+
+      LOG.error(ex, "Exception while waiting for request.");
+      outcome = CLOSE;
+
+    }
+
+    finish(connection, outcome);
+  }
+
+  // HANDLE REQUEST
+  //
+  // Read and handle the request that has started to arrive on the connection.
+  // Must be run on the timeline. Returns what should happen to the connection
+  // next.
+  private int handleRequest(Connection connection, long accepted) {
+
+    int outcome = CLOSE;
+
+    try {
+
+      LOG.info("Handling request...");
+
+      final RequestTrace trace = new RequestTrace(accepted, connection.in(), connection.out());
+
+      boolean success = false;
+
+      try {
+        trace.type(Serializers.INTEGER.read(trace.in()));
+
+        if (trace.type() == NetworkCode.SUBSCRIBE_REQUEST) {
+          // The connection now belongs to the event stream, which will
+          // close it once the client goes away.
+          events.subscribe(connection);
+          outcome = HANDED_OFF;
+          success = true;
+        } else {
+          success = onMessage(trace.type(), trace, trace.in(), trace.out());
+          // A request that was not handled may not have been read in full.
+          outcome = success ? KEEP_OPEN : CLOSE;
         }
+      } finally {
+        trace.finished();
+        onTraced(trace, success);
       }
-    });
+
+      LOG.info("Request handled: %s", success ? "ACCEPTED" : "REJECTED");
+    } catch (Exception ex) {
+
+      LOG.error(ex, "Exception while handling request.");
+      outcome = CLOSE;
+
+    }
+
+    return outcome;
+  }
+
+  // Tell the client that the connection will not be used again. Only needed
+  // when the connection would otherwise have been kept open.
+  private static int closing(Connection connection, int outcome) {
+
+    if (outcome == KEEP_OPEN) {
+      try {
+        Serializers.INTEGER.write(connection.out(), NetworkCode.CONNECTION_CLOSING);
+        connection.out().flush();
+      } catch (Exception ex) {
+        LOG.error(ex, "Exception while closing connection.");
+      }
+      return CLOSE;
+    }
+
+    return outcome;
+  }
+
+  private void finish(Connection connection, int outcome) {
+
+    if (outcome == HANDED_OFF) {
+      return;
+    }
+
+    try {
+      connection.close();
+    } catch (Exception ex) {
+      LOG.error(ex, "Exception while closing connection.");
+    }
+
+    stats.connectionClosed();
+  }
+
+  // STATS
+  //
+  // Get a snapshot of the server's stats. The names are stable so that tools
+  // can watch them over time.
+  public Map<String, Long> stats() {
+
+    final Map<String, Long> snapshot = new LinkedHashMap<>();
+
+    stats.writeTo(snapshot);
+    events.writeTo(snapshot);
+
+    snapshot.put("store.userById", (long) model.userById().size());
+    snapshot.put("store.userByTime", (long) model.userByTime().size());
+    snapshot.put("store.userByText", (long) model.userByText().size());
+    snapshot.put("store.conversationById", (long) model.conversationById().size());
+    snapshot.put("store.conversationByTime", (long) model.conversationByTime().size());
+    snapshot.put("store.conversationByText", (long) model.conversationByText().size());
+    snapshot.put("store.messageById", (long) model.messageById().size());
+    snapshot.put("store.messageByTime", (long) model.messageByTime().size());
+    snapshot.put("store.messageByText", (long) model.messageByText().size());
+
+    // The relay does not say where its head is, but the ids it gives bundles
+    // count up from one so "last_seen" is how far into the relay's history
+    // the server has read. "behind" is set when the last read was cut short by
+    // the range, meaning there is more waiting.
+    final long lastRead = lastRelayReadMs;
+    snapshot.put("relay.last_seen", (long) lastSeen.id());
+    snapshot.put("relay.last_read_count", (long) lastRelayReadCount);
+    snapshot.put("relay.last_read_age_ms",
+                 lastRead == 0 ? -1 : System.currentTimeMillis() - lastRead);
+    snapshot.put("relay.behind", lastRelayReadCount >= RELAY_READ_RANGE ? 1L : 0L);
+    snapshot.put("relay.read_failures", relayReadFailures);
+
+    final Timeline.Stats timelineStats = timeline.stats();
+    snapshot.put("timeline.scheduled", timelineStats.scheduled);
+    snapshot.put("timeline.completed", timelineStats.completed);
+    snapshot.put("timeline.failed", timelineStats.failed);
+    snapshot.put("timeline.waiting", timelineStats.waiting);
+    snapshot.put("timeline.due", timelineStats.due);
+    snapshot.put("timeline.lag.p99_us", timelineStats.lag.percentile(99) / 1000);
+
+    return snapshot;
   }
 
-  private boolean onMessage(InputStream in, OutputStream out) throws IOException {
+  private void onTraced(RequestTrace trace, boolean success) {
+
+    stats.request(trace.type(), trace.handleNanos(), !success);
+    stats.bytes(trace.bytesIn(), trace.bytesOut());
+
+    traced += 1;
+    if (traced % PHASE_SAMPLE_EVERY == 0) {
+      stats.phases(trace);
+    }
+
+    final SlowRequestLog log = slowLog;
+    if (log != null && log.isSlow(trace)) {
+      log.write(trace, success);
+    }
+  }
 
-    final int type = Serializers.INTEGER.read(in);
+  // ON MESSAGE
+  //
+  // Handle a single request. Each branch marks the trace once it has read its
+  // arguments ("decoded") and once it has done its work ("executed"), whatever
+  // is left is the time spent writing the response.
+  private boolean onMessage(int type, RequestTrace trace, InputStream in, OutputStream out) throws IOException {
 
     if (type == NetworkCode.NEW_MESSAGE_REQUEST) {
 
       final Uuid author = Uuid.SERIALIZER.read(in);
       final Uuid conversation = Uuid.SERIALIZER.read(in);
       final String content = Serializers.STRING.read(in);
+      trace.decoded();
 
       final Message message = controller.newMessage(author, conversation, content);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.NEW_MESSAGE_RESPONSE);
-      Serializers.nullable(Message.SERIALIZER).write(out, message);
+      NULLABLE_MESSAGE.write(out, message);
 
       timeline.scheduleNow(createSendToRelayEvent(
           author,
@@ -137,167 +456,270 @@ public final class Server {
 
       final String name = Serializers.STRING.read(in);
       final String nickName = Serializers.STRING.read(in);
+      trace.decoded();
 
       final User user = controller.newUser(name, nickName);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.NEW_USER_RESPONSE);
-      Serializers.nullable(User.SERIALIZER).write(out, user);
+      NULLABLE_USER.write(out, user);
 
     } else if (type == NetworkCode.NICKNAME_REQUEST) {
 
       final Uuid uuid = Uuid.SERIALIZER.read(in);
       final String alias = Serializers.STRING.read(in);
+      trace.decoded();
 
       final User result = controller.setAlias(uuid, alias);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.NICKNAME_RESPONSE);
-      Serializers.nullable(User.SERIALIZER).write(out,result);
+      NULLABLE_USER.write(out, result);
 
     } else if (type == NetworkCode.NEW_CONVERSATION_REQUEST) {
 
       final String title = Serializers.STRING.read(in);
       final Uuid owner = Uuid.SERIALIZER.read(in);
+      trace.decoded();
 
       final Conversation conversation = controller.newConversation(title, owner);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.NEW_CONVERSATION_RESPONSE);
-      Serializers.nullable(Conversation.SERIALIZER).write(out, conversation);
+      NULLABLE_CONVERSATION.write(out, conversation);
 
     } else if (type == NetworkCode.SEARCHREQUEST) {
 
       final String authorID = Serializers.STRING.read(in);
+      trace.decoded();
+
       ArrayList<Message> mes = controller.searchByUserID(authorID);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.SEARCHRESPONSE);
-      Serializers.collection(Message.SERIALIZER).write(out, mes);
+      MESSAGE_COLLECTION.write(out, mes);
 
 
     } else if(type == NetworkCode.TAGREQUEST) {
 
       final String tag = Serializers.STRING.read(in);
+      trace.decoded();
+
       ArrayList<Message> messagesByTag = controller.searchByTag(tag);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.TAGRESPONSE);
-      Serializers.collection(Message.SERIALIZER).write(out, messagesByTag);
+      MESSAGE_COLLECTION.write(out, messagesByTag);
 
     } else if (type == NetworkCode.GET_USERS_BY_ID_REQUEST) {
 
-      final Collection<Uuid> ids = Serializers.collection(Uuid.SERIALIZER).read(in);
+      final Collection<Uuid> ids = UUID_COLLECTION.read(in);
+      trace.decoded();
 
       final Collection<User> users = view.getUsers(ids);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_USERS_BY_ID_RESPONSE);
-      Serializers.collection(User.SERIALIZER).write(out, users);
+      USER_COLLECTION.write(out, users);
 
     } else if (type == NetworkCode.GET_ALL_CONVERSATIONS_REQUEST) {
 
       final Collection<ConversationSummary> conversations = view.getAllConversations();
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_ALL_CONVERSATIONS_RESPONSE);
-      Serializers.collection(ConversationSummary.SERIALIZER).write(out, conversations);
+      SUMMARY_COLLECTION.write(out, conversations);
 
     } else if (type == NetworkCode.GET_CONVERSATIONS_BY_ID_REQUEST) {
 
-      final Collection<Uuid> ids = Serializers.collection(Uuid.SERIALIZER).read(in);
+      final Collection<Uuid> ids = UUID_COLLECTION.read(in);
+      trace.decoded();
 
       final Collection<Conversation> conversations = view.getConversations(ids);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_CONVERSATIONS_BY_ID_RESPONSE);
-      Serializers.collection(Conversation.SERIALIZER).write(out, conversations);
+      CONVERSATION_COLLECTION.write(out, conversations);
 
     } else if (type == NetworkCode.GET_MESSAGES_BY_ID_REQUEST) {
 
-      final Collection<Uuid> ids = Serializers.collection(Uuid.SERIALIZER).read(in);
+      final Collection<Uuid> ids = UUID_COLLECTION.read(in);
+      trace.decoded();
 
       final Collection<Message> messages = view.getMessages(ids);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_MESSAGES_BY_ID_RESPONSE);
-      Serializers.collection(Message.SERIALIZER).write(out, messages);
+      MESSAGE_COLLECTION.write(out, messages);
 
     } else if (type == NetworkCode.GET_USER_GENERATION_REQUEST) {
 
+      final Uuid generation = view.getUserGeneration();
+      trace.executed();
+
       Serializers.INTEGER.write(out, NetworkCode.GET_USER_GENERATION_RESPONSE);
-      Uuid.SERIALIZER.write(out, view.getUserGeneration());
+      Uuid.SERIALIZER.write(out, generation);
 
     } else if (type == NetworkCode.GET_USERS_EXCLUDING_REQUEST) {
 
-      final Collection<Uuid> ids = Serializers.collection(Uuid.SERIALIZER).read(in);
+      final Collection<Uuid> ids = UUID_COLLECTION.read(in);
+      trace.decoded();
 
       final Collection<User> users = view.getUsersExcluding(ids);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_USERS_EXCLUDING_RESPONSE);
-      Serializers.collection(User.SERIALIZER).write(out, users);
+      USER_COLLECTION.write(out, users);
+
+    } else if (type == NetworkCode.GET_USERS_CHANGED_REQUEST) {
+
+      final Uuid generation = Uuid.SERIALIZER.read(in);
+      trace.decoded();
+
+      final UserDelta delta = view.getUsersChangedSince(generation);
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.GET_USERS_CHANGED_RESPONSE);
+      UserDelta.SERIALIZER.write(out, delta);
+
+    } else if (type == NetworkCode.GET_CONVERSATIONS_CHANGED_REQUEST) {
+
+      final Uuid generation = Uuid.SERIALIZER.read(in);
+      trace.decoded();
+
+      final ConversationDelta delta = view.getConversationsChangedSince(generation);
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.GET_CONVERSATIONS_CHANGED_RESPONSE);
+      ConversationDelta.SERIALIZER.write(out, delta);
+
+    } else if (type == NetworkCode.GET_CONVERSATION_PAGE_REQUEST) {
+
+      final int order = Serializers.INTEGER.read(in);
+      final Uuid after = Uuid.SERIALIZER.read(in);
+      final int count = Serializers.INTEGER.read(in);
+      trace.decoded();
+
+      final ConversationPage page = view.getConversationPage(order, after, count);
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.GET_CONVERSATION_PAGE_RESPONSE);
+      ConversationPage.SERIALIZER.write(out, page);
+
+    } else if (type == NetworkCode.GET_RECENT_CONVERSATIONS_REQUEST) {
+
+      final int count = Serializers.INTEGER.read(in);
+      trace.decoded();
+
+      final Collection<ConversationActivity> recent = view.getRecentConversations(count);
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.GET_RECENT_CONVERSATIONS_RESPONSE);
+      ACTIVITY_COLLECTION.write(out, recent);
 
     } else if (type == NetworkCode.GET_CONVERSATIONS_BY_TIME_REQUEST) {
 
       final Time startTime = Time.SERIALIZER.read(in);
       final Time endTime = Time.SERIALIZER.read(in);
+      trace.decoded();
 
       final Collection<Conversation> conversations = view.getConversations(startTime, endTime);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_CONVERSATIONS_BY_TIME_RESPONSE);
-      Serializers.collection(Conversation.SERIALIZER).write(out, conversations);
+      CONVERSATION_COLLECTION.write(out, conversations);
 
     } else if (type == NetworkCode.GET_CONVERSATIONS_BY_TITLE_REQUEST) {
 
       final String filter = Serializers.STRING.read(in);
+      trace.decoded();
 
       final Collection<Conversation> conversations = view.getConversations(filter);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_CONVERSATIONS_BY_TITLE_RESPONSE);
-      Serializers.collection(Conversation.SERIALIZER).write(out, conversations);
+      CONVERSATION_COLLECTION.write(out, conversations);
 
     } else if (type == NetworkCode.GET_MESSAGES_BY_TIME_REQUEST) {
 
       final Uuid conversation = Uuid.SERIALIZER.read(in);
       final Time startTime = Time.SERIALIZER.read(in);
       final Time endTime = Time.SERIALIZER.read(in);
+      trace.decoded();
 
       final Collection<Message> messages = view.getMessages(conversation, startTime, endTime);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_MESSAGES_BY_TIME_RESPONSE);
-      Serializers.collection(Message.SERIALIZER).write(out, messages);
+      MESSAGE_COLLECTION.write(out, messages);
 
     } else if (type == NetworkCode.GET_MESSAGES_BY_RANGE_REQUEST) {
 
       final Uuid rootMessage = Uuid.SERIALIZER.read(in);
       final int range = Serializers.INTEGER.read(in);
+      trace.decoded();
 
       final Collection<Message> messages = view.getMessages(rootMessage, range);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.GET_MESSAGES_BY_RANGE_RESPONSE);
-      Serializers.collection(Message.SERIALIZER).write(out, messages);
+      MESSAGE_COLLECTION.write(out, messages);
 
     } else if (type == NetworkCode.DELETE_USER_REQUEST) {
         final String name = Serializers.STRING.read(in);
+        trace.decoded();
+
         final User user = controller.deleteUser(name);
+        trace.executed();
 
         Serializers.INTEGER.write(out, NetworkCode.DELETE_USER_RESPONSE);
-        Serializers.nullable(User.SERIALIZER).write(out, user);
+        NULLABLE_USER.write(out, user);
 
     } else if (type == NetworkCode.DELETE_MESSAGE_REQUEST) {
 
       final Uuid msg = Uuid.SERIALIZER.read(in);
       final Uuid conversation = Uuid.SERIALIZER.read(in);
+      trace.decoded();
 
       final boolean succeeded = controller.deleteMessage(msg, conversation);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.DELETE_MESSAGE_RESPONSE);
 
     } else if (type == NetworkCode.DELETE_CONVERSATION_REQUEST) {
 
       final Uuid conversation = Uuid.SERIALIZER.read(in);
+      trace.decoded();
 
       controller.deleteConversation(conversation);
+      trace.executed();
 
       Serializers.INTEGER.write(out, NetworkCode.DELETE_CONVERSATION_RESPONSE);
 
+    } else if (type == NetworkCode.STATS_REQUEST) {
+
+      final Map<String, Long> snapshot = stats();
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.STATS_RESPONSE);
+      STATS_SERIALIZER.write(out, snapshot);
+
+    } else if (type == NetworkCode.PING_REQUEST) {
+
+      // Used by clients to check that a connection they kept open still works.
+      trace.executed();
+
+      Serializers.INTEGER.write(out, NetworkCode.PING_RESPONSE);
+
     } else {
 
       // In the case that the message was not handled make a dummy message with
-      // the type "NO_MESSAGE" so that the client still gets something.
+      // the type "NO_MESSAGE" so that the client still gets something. The
+      // rest of the request was not read so the connection can not be used
+      // again.
 
       Serializers.INTEGER.write(out, NetworkCode.NO_MESSAGE);
+      return false;
 
     }
 
@@ -0,0 +1,176 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.util.LatencyRecorder;
+
+// SERVER STATS
+//
+// Counters and latency histograms for the requests a server handles. Every
+// update is a handful of atomic adds so the stats can stay on all the time,
+// even while the server is under load.
+public final class ServerStats {
+
+  // Request types are NetworkCode values. Any type at or above this limit is
+  // counted together with the others that are too large.
+  private static final int MAX_TYPE = 64;
+
+  private final AtomicLongArray requests = new AtomicLongArray(MAX_TYPE + 1);
+  private final AtomicLongArray errors = new AtomicLongArray(MAX_TYPE + 1);
+
+  // Recorders are only made for the types that are actually seen.
+  private final AtomicReferenceArray<LatencyRecorder> latency =
+      new AtomicReferenceArray<>(MAX_TYPE + 1);
+
+  private final AtomicLong bytesIn = new AtomicLong();
+  private final AtomicLong bytesOut = new AtomicLong();
+
+  private final LatencyRecorder waitPhase = new LatencyRecorder();
+  private final LatencyRecorder decodePhase = new LatencyRecorder();
+  private final LatencyRecorder executePhase = new LatencyRecorder();
+  private final LatencyRecorder encodePhase = new LatencyRecorder();
+
+  private final AtomicLong connections = new AtomicLong();
+  private final AtomicInteger activeConnections = new AtomicInteger();
+
+  // CONNECTION OPENED / CONNECTION CLOSED
+  //
+  // A connection counts as active from when the server accepts it until it is
+  // closed, which includes any time it spends waiting to be handled.
+  public void connectionOpened() {
+    connections.incrementAndGet();
+    activeConnections.incrementAndGet();
+  }
+
+  public void connectionClosed() {
+    activeConnections.decrementAndGet();
+  }
+
+  // REQUEST
+  //
+  // Record one request of the given type and how long it took to handle. If
+  // handling it failed it is also counted as an error.
+  public void request(int type, long nanos, boolean failed) {
+
+    final int slot = slotOf(type);
+
+    requests.incrementAndGet(slot);
+
+    if (failed) {
+      errors.incrementAndGet(slot);
+    }
+
+    LatencyRecorder recorder = latency.get(slot);
+
+    if (recorder == null) {
+      latency.compareAndSet(slot, null, new LatencyRecorder());
+      recorder = latency.get(slot);
+    }
+
+    recorder.record(nanos);
+  }
+
+  // BYTES
+  //
+  // Add the bytes that one request read and wrote to the totals.
+  public void bytes(long in, long out) {
+    bytesIn.addAndGet(in);
+    bytesOut.addAndGet(out);
+  }
+
+  // PHASES
+  //
+  // Record how long each phase of a request took. This is only called for a
+  // sample of requests as the per-request totals are already kept by
+  // "request".
+  void phases(RequestTrace trace) {
+    waitPhase.record(trace.waitNanos());
+    decodePhase.record(trace.decodeNanos());
+    executePhase.record(trace.executeNanos());
+    encodePhase.record(trace.encodeNanos());
+  }
+
+  public long requests(int type) { return requests.get(slotOf(type)); }
+
+  public long errors(int type) { return errors.get(slotOf(type)); }
+
+  public long bytesIn() { return bytesIn.get(); }
+
+  public long bytesOut() { return bytesOut.get(); }
+
+  public int activeConnections() { return activeConnections.get(); }
+
+  // WRITE TO
+  //
+  // Add every stat to the given map. Latencies are given in microseconds and
+  // request types that have never been seen are left out.
+  public void writeTo(Map<String, Long> stats) {
+
+    long totalRequests = 0;
+    long totalErrors = 0;
+
+    for (int slot = 0; slot <= MAX_TYPE; slot++) {
+      totalRequests += requests.get(slot);
+      totalErrors += errors.get(slot);
+    }
+
+    stats.put("connections.total", connections.get());
+    stats.put("connections.active", (long) activeConnections.get());
+    stats.put("bytes.in", bytesIn.get());
+    stats.put("bytes.out", bytesOut.get());
+    stats.put("requests.total", totalRequests);
+    stats.put("errors.total", totalErrors);
+
+    for (int slot = 0; slot <= MAX_TYPE; slot++) {
+
+      final LatencyRecorder recorder = latency.get(slot);
+
+      if (recorder == null) {
+        continue;
+      }
+
+      final String name = slot == MAX_TYPE ? "OTHER" : NetworkCode.name(slot);
+
+      stats.put("requests." + name, requests.get(slot));
+      stats.put("errors." + name, errors.get(slot));
+      stats.put("latency." + name + ".p50_us", recorder.percentile(50) / 1000);
+      stats.put("latency." + name + ".p90_us", recorder.percentile(90) / 1000);
+      stats.put("latency." + name + ".p99_us", recorder.percentile(99) / 1000);
+      stats.put("latency." + name + ".max_us", recorder.max() / 1000);
+    }
+
+    writePhase(stats, "wait", waitPhase);
+    writePhase(stats, "decode", decodePhase);
+    writePhase(stats, "execute", executePhase);
+    writePhase(stats, "encode", encodePhase);
+  }
+
+  private static void writePhase(Map<String, Long> stats, String name, LatencyRecorder recorder) {
+    stats.put("phase." + name + ".p50_us", recorder.percentile(50) / 1000);
+    stats.put("phase." + name + ".p99_us", recorder.percentile(99) / 1000);
+  }
+
+  private static int slotOf(int type) {
+    return type >= 0 && type < MAX_TYPE ? type : MAX_TYPE;
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import codeu.chat.common.NetworkCode;
+
+// SLOW REQUEST LOG
+//
+// A log file just for requests that took longer than a threshold. Each line
+// has the request's type, whether it succeeded, how long each phase took (in
+// milliseconds) and how many bytes went each way. Keeping these out of the main
+// log means they can be found without searching through every request.
+//
+// Slow requests should be rare, so lines are written on the thread handling
+// the request.
+public final class SlowRequestLog {
+
+  private final PrintWriter writer;
+  private final long thresholdNanos;
+
+  private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+  public SlowRequestLog(String file, long thresholdMs) throws IOException {
+    this.writer = new PrintWriter(new FileWriter(file, true /* append */), true /* auto flush */);
+    this.thresholdNanos = thresholdMs * 1000000L;
+  }
+
+  boolean isSlow(RequestTrace trace) {
+    return trace.totalNanos() >= thresholdNanos;
+  }
+
+  synchronized void write(RequestTrace trace, boolean success) {
+    writer.println(String.format(
+        "%s %s %s total=%.3f wait=%.3f decode=%.3f execute=%.3f encode=%.3f in=%dB out=%dB",
+        format.format(new Date()),
+        NetworkCode.name(trace.type()),
+        success ? "OK" : "FAILED",
+        trace.totalNanos() / 1e6,
+        trace.waitNanos() / 1e6,
+        trace.decodeNanos() / 1e6,
+        trace.executeNanos() / 1e6,
+        trace.encodeNanos() / 1e6,
+        trace.bytesIn(),
+        trace.bytesOut()));
+  }
+}
@@ -29,11 +29,15 @@ import java.util.regex.Pattern;
 
 import codeu.chat.common.BasicView;
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationDelta;
+import codeu.chat.common.ConversationPage;
 import codeu.chat.common.ConversationSummary;
 import codeu.chat.common.LogicalView;
 import codeu.chat.common.Message;
 import codeu.chat.common.SinglesView;
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Logger;
 import codeu.chat.util.Time;
 import codeu.chat.util.Uuid;
@@ -43,6 +47,10 @@ public final class View implements BasicView, LogicalView, SinglesView {
 
   private final static Logger.Log LOG = Logger.newLog(View.class);
 
+  // The most conversations that will be put in one page no matter how many
+  // were asked for.
+  static final int MAX_CONVERSATION_PAGE = 1000;
+
   private final Model model;
 
   public View(Model model) {
@@ -83,6 +91,37 @@ public final class View implements BasicView, LogicalView, SinglesView {
     return model.userGeneration();
   }
 
+  @Override
+  public UserDelta getUsersChangedSince(Uuid generation) {
+    return model.userChangesSince(generation);
+  }
+
+  @Override
+  public ConversationDelta getConversationsChangedSince(Uuid generation) {
+    return model.conversationChangesSince(generation);
+  }
+
+  @Override
+  public ConversationPage getConversationPage(int order, Uuid after, int count) {
+
+    final Collection<ConversationSummary> summaries;
+
+    if (ConversationPage.isOrder(order)) {
+      summaries = model.conversationPage(
+          order, after, Math.max(0, Math.min(count, MAX_CONVERSATION_PAGE)));
+    } else {
+      LOG.warning("Unknown conversation order %d", order);
+      summaries = new ArrayList<>();
+    }
+
+    return new ConversationPage(model.conversationGeneration(), summaries);
+  }
+
+  @Override
+  public Collection<ConversationActivity> getRecentConversations(int count) {
+    return model.recentConversations(Math.max(0, Math.min(count, MAX_CONVERSATION_PAGE)));
+  }
+
   @Override
   public Collection<User> getUsersExcluding(Collection<Uuid> ids) {
 
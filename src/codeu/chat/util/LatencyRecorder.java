@@ -0,0 +1,150 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// LATENCY RECORDER
+//
+// A histogram of durations (in nanoseconds) that can be recorded to from many
+// threads at once without locking. Values are put into buckets that grow with
+// the size of the value (every power of two is split into 16 buckets) so the
+// recorder uses a fixed amount of memory and any percentile it reports is
+// within about 6% of the real value.
+public final class LatencyRecorder {
+
+  // Each power of two is split into 2^SUB_BITS buckets.
+  private static final int SUB_BITS = 4;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+
+  // Values below SUB_COUNT get a bucket each, after that there are SUB_COUNT
+  // buckets for each power of two up to 2^62.
+  private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  // RECORD
+  //
+  // Add a single duration to the recorder. Negative values are treated as zero.
+  public void record(long nanos) {
+
+    final long value = Math.max(0, nanos);
+
+    buckets.incrementAndGet(indexOf(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  public long count() { return count.get(); }
+
+  public long max() { return max.get(); }
+
+  public long mean() {
+    final long seen = count.get();
+    return seen == 0 ? 0 : total.get() / seen;
+  }
+
+  // PERCENTILE
+  //
+  // Get the duration (in nanoseconds) that "percent" percent of the recorded
+  // durations were less than or equal to. The value returned is the top of the
+  // bucket that the percentile fell in, but never more than the max.
+  public long percentile(double percent) {
+
+    final long seen = count.get();
+
+    if (seen == 0) {
+      return 0;
+    }
+
+    final long target = Math.max(1, (long) Math.ceil(seen * Math.min(100.0, percent) / 100.0));
+
+    long running = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      running += buckets.get(i);
+      if (running >= target) {
+        return Math.min(highestOf(i), max.get());
+      }
+    }
+
+    return max.get();
+  }
+
+  // RESET
+  //
+  // Clear all recorded values. Values recorded while resetting may or may not
+  // be kept.
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  // SUMMARY
+  //
+  // A one line, human-readable summary of the recorder with all times given in
+  // microseconds.
+  public String summary() {
+    return String.format(
+        "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+        count(),
+        mean() / 1000.0,
+        percentile(50) / 1000.0,
+        percentile(90) / 1000.0,
+        percentile(99) / 1000.0,
+        percentile(99.9) / 1000.0,
+        max() / 1000.0);
+  }
+
+  private static int indexOf(long value) {
+
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+
+    // "exponent" is the position of the highest set bit. The sub-bucket comes
+    // from the SUB_BITS bits just below it.
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+
+    return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  private static long highestOf(int index) {
+
+    if (index < SUB_COUNT) {
+      return index;
+    }
+
+    final int exponent = index / SUB_COUNT + SUB_BITS - 1;
+    final long sub = index % SUB_COUNT;
+    final long width = 1L << (exponent - SUB_BITS);
+
+    return (1L << exponent) + (sub + 1) * width - 1;
+  }
+}
@@ -15,7 +15,13 @@
 package codeu.chat.util;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 
 public final class Logger {
 
@@ -43,6 +49,24 @@ public final class Logger {
     logger.setUseParentHandlers(false);
   }
 
+  // Looking up the method that made a log call means walking the stack, which
+  // is the most expensive part of logging. It is off unless asked for, without
+  // it each record is tagged with the class that the log was created for.
+  private static volatile boolean callerInfo = false;
+
+  // When async output is enabled, records are handed to the writer through this
+  // ring and written by the writer's thread. When it is null, records are
+  // written on the thread that logged them.
+  private static volatile Ring<LogRecord> ring = null;
+  private static Thread writer = null;
+  private static volatile boolean stopping = false;
+
+  // How many records were thrown away because the ring was full.
+  private static final AtomicLong dropped = new AtomicLong();
+
+  // How long the writer sleeps when there is nothing to write.
+  private static final long WRITER_IDLE_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
   public static void enableFileOutput(String file) throws IOException {
 
     final java.util.logging.Handler handler =
@@ -59,55 +83,286 @@ public final class Logger {
     logger.addHandler(handler);
   }
 
+  // ENABLE CALLER INFO
+  //
+  // Include the class and method that made each log call in the record. This
+  // costs a stack walk per record that is logged (records that are filtered out
+  // by their level never pay for it).
+  public static void enableCallerInfo(boolean enabled) {
+    callerInfo = enabled;
+  }
+
+  // ENABLE ASYNC OUTPUT
+  //
+  // Stop writing records on the thread that logs them. Records are instead put
+  // in a ring that can hold "capacity" records and a background thread writes
+  // them to the handlers. If the writer falls behind and the ring fills up, new
+  // records are dropped (and counted) rather than making the logging thread
+  // wait. Errors are still written right away so that they are never dropped
+  // or lost when the process exits. Calling this more than once has no effect.
+  public static synchronized void enableAsyncOutput(int capacity) {
+
+    if (ring != null) {
+      return;
+    }
+
+    ring = new Ring<>(capacity);
+
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "logger-writer");
+    writer.setDaemon(true);
+    writer.start();
+
+    // The writer is a daemon thread so that it never holds the process open, so
+    // give it a moment to write what it has before the process exits.
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        stopping = true;
+        LockSupport.unpark(writer);
+        try {
+          writer.join(1000);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }));
+  }
+
+  // DROPPED
+  //
+  // The number of records that were dropped because the async ring was full.
+  public static long dropped() {
+    return dropped.get();
+  }
+
   public static Log newLog(Class<?> c) {
 
     final java.util.logging.Logger log =
         java.util.logging.Logger.getLogger(c.getName());
 
-    // Note: This Logger calls the standard java Logger, so the class/method lookup
-    // needs to go one level deeper.  Otherwise it will appear that all the log
-    // calls are coming from this object. Use logp() (log precise) to do this.
+    final String className = c.getName();
+
+    // Note: The level is checked before anything else so that calls below the
+    // logger's level cost nothing more than the check. The message is only
+    // formatted (and the caller only looked up) for records that will be kept.
     return new Log() {
 
       @Override
       public void verbose(String message, Object... params) {
-        log.logp(java.util.logging.Level.FINE,
-            Thread.currentThread().getStackTrace()[2].getClassName(),
-            Thread.currentThread().getStackTrace()[2].getMethodName(),
-            String.format(message, params));
+        if (log.isLoggable(Level.FINE)) {
+          publish(log, className, Level.FINE, null, message, params);
+        }
       }
 
       @Override
       public void info(String message, Object... params) {
-        log.logp(java.util.logging.Level.INFO,
-            Thread.currentThread().getStackTrace()[2].getClassName(),
-            Thread.currentThread().getStackTrace()[2].getMethodName(),
-            String.format(message, params));
+        if (log.isLoggable(Level.INFO)) {
+          publish(log, className, Level.INFO, null, message, params);
+        }
       }
 
       @Override
       public void warning(String message, Object... params) {
-        log.logp(java.util.logging.Level.WARNING,
-                 Thread.currentThread().getStackTrace()[2].getClassName(),
-                 Thread.currentThread().getStackTrace()[2].getMethodName(),
-                 String.format(message, params));
+        if (log.isLoggable(Level.WARNING)) {
+          publish(log, className, Level.WARNING, null, message, params);
+        }
       }
 
       @Override
       public void error(String message, Object... params) {
-        log.logp(java.util.logging.Level.SEVERE,
-                 Thread.currentThread().getStackTrace()[2].getClassName(),
-                 Thread.currentThread().getStackTrace()[2].getMethodName(),
-                 String.format(message, params));
+        if (log.isLoggable(Level.SEVERE)) {
+          publish(log, className, Level.SEVERE, null, message, params);
+        }
       }
 
       @Override
       public void error(Throwable error, String message, Object... params) {
-        log.logp(java.util.logging.Level.SEVERE,
-                 Thread.currentThread().getStackTrace()[2].getClassName(),
-                 Thread.currentThread().getStackTrace()[2].getMethodName(),
-                 String.format(message, params), error);
+        if (log.isLoggable(Level.SEVERE)) {
+          publish(log, className, Level.SEVERE, error, message, params);
+        }
       }
     };
   }
+
+  private static void publish(java.util.logging.Logger log,
+                              String className,
+                              Level level,
+                              Throwable error,
+                              String message,
+                              Object... params) {
+
+    final LogRecord record = new LogRecord(level, String.format(message, params));
+
+    record.setLoggerName(log.getName());
+    record.setThrown(error);
+
+    if (callerInfo) {
+      final StackTraceElement caller = findCaller();
+      if (caller != null) {
+        record.setSourceClassName(caller.getClassName());
+        record.setSourceMethodName(caller.getMethodName());
+      }
+    } else {
+      // Setting the source stops the record from walking the stack to find it
+      // when it is formatted.
+      record.setSourceClassName(className);
+      record.setSourceMethodName(null);
+    }
+
+    final Ring<LogRecord> current = ring;
+
+    if (current == null || level == Level.SEVERE) {
+      log.log(record);
+    } else if (!current.offer(record)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  // FIND CALLER
+  //
+  // The first frame on the stack that is not part of this class (or the Log
+  // classes inside it) is the code that made the log call.
+  private static StackTraceElement findCaller() {
+
+    final String prefix = Logger.class.getName();
+
+    for (final StackTraceElement frame : new Throwable().getStackTrace()) {
+      final String name = frame.getClassName();
+      if (!name.equals(prefix) && !name.startsWith(prefix + "$")) {
+        return frame;
+      }
+    }
+
+    return null;
+  }
+
+  // DRAIN
+  //
+  // The writer's loop. Every logger created with "newLog" sends its records up
+  // to the "codeu.chat" logger, so the writer can skip the hierarchy and give
+  // each record straight to its handlers.
+  private static void drain() {
+
+    final Ring<LogRecord> current = ring;
+    long reported = 0;
+
+    while (true) {
+
+      LogRecord record = current.poll();
+
+      if (record == null) {
+
+        // Only report drops between batches so that the report does not fill
+        // the ring that is already struggling.
+        final long seen = dropped.get();
+        if (seen != reported) {
+          final LogRecord report = new LogRecord(
+              Level.WARNING,
+              String.format("Dropped %d log records (ring full)", seen - reported));
+          report.setLoggerName(logger.getName());
+          report.setSourceClassName(Logger.class.getName());
+          write(report);
+          reported = seen;
+        }
+
+        if (stopping) {
+          return;
+        }
+
+        LockSupport.parkNanos(WRITER_IDLE_NS);
+        continue;
+      }
+
+      while (record != null) {
+        write(record);
+        record = current.poll();
+      }
+    }
+  }
+
+  private static void write(LogRecord record) {
+    for (final Handler handler : logger.getHandlers()) {
+      try {
+        handler.publish(record);
+      } catch (Exception ex) {
+        // There is nowhere left to report this. Keep the writer alive for the
+        // records that come after.
+      }
+    }
+  }
+
+  // RING
+  //
+  // A bounded, lock-free queue for many producers and a single consumer.
+  // Producers claim a position by moving "head" forward and then fill the slot
+  // at that position. The consumer takes from "tail" and treats an empty slot
+  // as "nothing yet", so a slot that was claimed but not filled yet simply
+  // holds the consumer back until it is filled, keeping records in order.
+  static final class Ring<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail = 0;
+
+    Ring(int capacity) {
+
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Ring capacity must be at least 1");
+      }
+
+      // Round up to a power of two so that positions can be turned into slot
+      // indexes with a mask. Only "capacity" slots will ever be used.
+      this.capacity = capacity;
+      this.mask = Integer.highestOneBit((capacity - 1) << 1 | 1) - 1;
+      this.slots = new AtomicReferenceArray<>(mask + 1);
+    }
+
+    // OFFER
+    //
+    // Add a value to the ring. Returns false without waiting if the ring is full.
+    // Safe to call from any thread.
+    boolean offer(T value) {
+
+      while (true) {
+
+        final long position = head.get();
+
+        if (position - tail >= capacity) {
+          return false;
+        }
+
+        if (head.compareAndSet(position, position + 1)) {
+          slots.set((int) (position & mask), value);
+          return true;
+        }
+      }
+    }
+
+    // POLL
+    //
+    // Take the oldest value from the ring or null if there is nothing to take.
+    // Must only be called from one thread.
+    T poll() {
+
+      final int index = (int) (tail & mask);
+      final T value = slots.get(index);
+
+      if (value != null) {
+        // The slot has to be cleared before the tail moves past it, otherwise a
+        // producer could claim the slot and fill it before it was cleared.
+        slots.set(index, null);
+        tail = tail + 1;
+      }
+
+      return value;
+    }
+  }
 }
@@ -14,14 +14,31 @@
 
 package codeu.chat.util;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class Serializers {
 
+  // Each thread keeps a buffer that values are read into and written from so
+  // that reading a value does not need an array of its own. A buffer that has
+  // to grow past MAX_KEPT_BUFFER is used once and not kept, so that a single
+  // large value does not hold on to memory.
+  private static final int MIN_BUFFER = 256;
+  private static final int MAX_KEPT_BUFFER = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[MIN_BUFFER];
+    }
+  };
+
   public static final Serializer<Boolean> BOOLEAN = new Serializer<Boolean>() {
 
     @Override
@@ -40,19 +57,26 @@ public final class Serializers {
     @Override
     public void write(OutputStream out, Integer value) throws IOException {
 
-      for (int i = 24; i >= 0; i -= 8) {
-        out.write(0xFF & (value >>> i));
+      final byte[] buffer = buffer(4);
+      final int primitive = value;
+
+      for (int i = 0; i < 4; i++) {
+        buffer[i] = (byte) (primitive >>> (24 - 8 * i));
       }
 
+      out.write(buffer, 0, 4);
     }
 
     @Override
     public Integer read(InputStream in) throws IOException {
 
+      final byte[] buffer = buffer(4);
+      readFully(in, buffer, 4);
+
       int value = 0;
 
       for (int i = 0; i < 4; i++) {
-        value = (value << 8) | in.read();
+        value = (value << 8) | (buffer[i] & 0xFF);
       }
 
       return value;
@@ -64,23 +88,29 @@ public final class Serializers {
     @Override
     public void write(OutputStream out, Long value) throws IOException {
 
-      for (int i = 56; i >= 0; i -= 8) {
-        out.write((int)(0xFF & (value >>> i)));
+      final byte[] buffer = buffer(8);
+      final long primitive = value;
+
+      for (int i = 0; i < 8; i++) {
+        buffer[i] = (byte) (primitive >>> (56 - 8 * i));
       }
 
+      out.write(buffer, 0, 8);
     }
 
     @Override
     public Long read(InputStream in) throws IOException {
 
+      final byte[] buffer = buffer(8);
+      readFully(in, buffer, 8);
+
       long value = 0;
 
       for (int i = 0; i < 8; i++) {
-        value = (value << 8) | in.read();
+        value = (value << 8) | (buffer[i] & 0xFF);
       }
 
       return value;
-
     }
   };
 
@@ -100,9 +130,7 @@ public final class Serializers {
       final int length = INTEGER.read(input);
       final byte[] array = new byte[length];
 
-      for (int i = 0; i < length; i++) {
-        array[i] = (byte)input.read();
-      }
+      readFully(input, array, length);
 
       return array;
 
@@ -121,7 +149,14 @@ public final class Serializers {
     @Override
     public String read(InputStream input) throws IOException {
 
-      return new String(BYTES.read(input));
+      // Read straight into the thread's buffer so that the only copy made is
+      // the one inside the new string.
+      final int length = INTEGER.read(input);
+      final byte[] buffer = buffer(length);
+
+      readFully(input, buffer, length);
+
+      return new String(buffer, 0, length);
 
     }
   };
@@ -150,6 +185,37 @@ public final class Serializers {
     };
   }
 
+  // MAP
+  //
+  // Entries are written in the map's iteration order and read back into a map
+  // that keeps that order.
+  public static <K, V> Serializer<Map<K, V>> map(final Serializer<K> keys,
+                                                 final Serializer<V> values) {
+
+    return new Serializer<Map<K, V>>() {
+
+      @Override
+      public void write(OutputStream out, Map<K, V> value) throws IOException {
+        INTEGER.write(out, value.size());
+        for (final Map.Entry<K, V> entry : value.entrySet()) {
+          keys.write(out, entry.getKey());
+          values.write(out, entry.getValue());
+        }
+      }
+
+      @Override
+      public Map<K, V> read(InputStream in) throws IOException {
+        final int size = INTEGER.read(in);
+        final Map<K, V> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          final K key = keys.read(in);
+          map.put(key, values.read(in));
+        }
+        return map;
+      }
+    };
+  }
+
   public static <T> Serializer<T> nullable(final Serializer<T> serializer) {
 
     final int NO_VALUE = 0x00;
@@ -173,5 +239,42 @@ public final class Serializers {
       }
     };
   }
-}
 
+  // Get this thread's buffer, making sure it can hold at least "size" bytes.
+  private static byte[] buffer(int size) {
+
+    final byte[] current = BUFFER.get();
+
+    if (current.length >= size) {
+      return current;
+    }
+
+    final byte[] larger = new byte[Math.max(size, current.length * 2)];
+
+    if (larger.length <= MAX_KEPT_BUFFER) {
+      BUFFER.set(larger);
+    }
+
+    return larger;
+  }
+
+  // Fill the first "length" bytes of "buffer" from the stream. Unlike a single
+  // read, this will not return until all the bytes are there or the stream has
+  // ended.
+  private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+
+    int read = 0;
+
+    while (read < length) {
+
+      final int count = in.read(buffer, read, length - read);
+
+      if (count < 0) {
+        throw new EOFException(String.format(
+            "Stream ended after %d of %d bytes", read, length));
+      }
+
+      read += count;
+    }
+  }
+}
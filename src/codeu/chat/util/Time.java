@@ -39,27 +39,45 @@ public final class Time implements Comparable<Time> {
     }
   };
 
-  private static final SimpleDateFormat formatter =
-      new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss.SSS");
+  // SimpleDateFormat is not safe to share between threads, so each thread gets
+  // its own.
+  private static final ThreadLocal<SimpleDateFormat> FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss.SSS");
+    }
+  };
 
-  private final Date date;
+  // The time is kept as a plain count of milliseconds (since the epoch) so that
+  // a Time is a single object and comparing two times is comparing two longs.
+  private final long totalMs;
 
-  private Time(long totalMs) { this.date = new Date(totalMs); }
+  private Time(long totalMs) { this.totalMs = totalMs; }
 
-  public long inMs() { return date.getTime(); }
+  public long inMs() { return totalMs; }
 
   @Override
   public int compareTo(Time other) {
-    return date.compareTo(other.date);
+    return Long.compare(totalMs, other.totalMs);
   }
 
   public boolean inRange(Time start, Time end) {
-    return this.compareTo(start) >= 0 && this.compareTo(end) <= 0;
+    return totalMs >= start.totalMs && totalMs <= end.totalMs;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Time && ((Time) other).totalMs == totalMs;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (totalMs ^ (totalMs >>> 32));
   }
 
   @Override
   public String toString() {
-    return formatter.format(date);
+    return FORMATTER.get().format(new Date(totalMs));
   }
 
   public static Time fromMs(long ms) { return new Time(ms); }
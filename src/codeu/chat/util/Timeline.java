@@ -14,9 +14,16 @@
 
 package codeu.chat.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 // TIMELINE
 //
@@ -24,135 +31,342 @@ import java.util.concurrent.PriorityBlockingQueue;
 // when work needs to be ordered by time. The timeline manages its own threads
 // and there is no way to know outside of the code that is executed when the
 // code has been executed.
+//
+// Events that are not due yet are kept in a hierarchical timing wheel. Adding
+// and cancelling an event are both constant time no matter how many events are
+// waiting, and the thread that drives the wheel wakes up once per tick rather
+// than being interrupted every time something is scheduled.
+//
+// A timeline can have more than one executor. Events can be given a key (for
+// example the id of a conversation) and all events with the same key will run
+// on the same executor, one after another, in the order they became due. Events
+// without a key are spread across the executors and can run at the same time
+// as any other event. With a single executor (the default) every event runs one
+// after another.
 public final class Timeline {
 
   private final static Logger.Log LOG = Logger.newLog(Timeline.class);
 
-  private static final class Event implements Comparable<Event> {
+  // HANDLE
+  //
+  // Returned when an event is scheduled so that it can be cancelled before it
+  // runs.
+  public interface Handle {
+
+    // CANCEL
+    //
+    // Stop the event from running. Returns false if the event has already
+    // started running (or was already cancelled).
+    boolean cancel();
+
+    boolean isCancelled();
+
+  }
+
+  // The length of a single tick of the wheel. Events scheduled in the future
+  // will run at the start of the first tick after their time, so this is also
+  // how late an event can be.
+  private static final long TICK_MS = 5;
+
+  // The wheel has LEVELS levels of SLOTS slots each. Level 0 covers the next
+  // SLOTS ticks, level 1 the next SLOTS^2 ticks and so on. With 5ms ticks, four
+  // levels of 64 slots cover about 23 hours. Anything further out than that
+  // waits in the overflow list.
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private static final int WAITING = 0;
+  private static final int RUNNING = 1;
+  private static final int CANCELLED = 2;
+
+  // STATS
+  //
+  // A snapshot of what the timeline has done since it was created. The counts
+  // are read one at a time while the timeline is running so they may not add
+  // up exactly. The recorders are live and will keep changing.
+  public static final class Stats {
+
+    // The number of events that have been scheduled, have run without
+    // throwing, have thrown, and were dropped because they were cancelled.
+    public final long scheduled;
+    public final long completed;
+    public final long failed;
+    public final long cancelled;
+
+    // The number of events waiting for their time in the wheel, and the number
+    // of events that are due and waiting for an executor.
+    public final long waiting;
+    public final long due;
+
+    // "lag" is the time from when an event was due to when it started running
+    // and "runTime" is how long events took to run. Both are in nanoseconds.
+    public final LatencyRecorder lag;
+    public final LatencyRecorder runTime;
+
+    private Stats(long scheduled,
+                  long completed,
+                  long failed,
+                  long cancelled,
+                  long waiting,
+                  long due,
+                  LatencyRecorder lag,
+                  LatencyRecorder runTime) {
+      this.scheduled = scheduled;
+      this.completed = completed;
+      this.failed = failed;
+      this.cancelled = cancelled;
+      this.waiting = waiting;
+      this.due = due;
+      this.lag = lag;
+      this.runTime = runTime;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "scheduled=%d completed=%d failed=%d cancelled=%d waiting=%d due=%d\n" +
+          "  lag: %s\n" +
+          "  run: %s",
+          scheduled,
+          completed,
+          failed,
+          cancelled,
+          waiting,
+          due,
+          lag.summary(),
+          runTime.summary());
+    }
+  }
 
-    public final long time;
+  private static final class Event implements Handle {
+
+    public final long tick;
+    public final long timeMs;
+    public final long dueNanos;
+    public final long sequence;
+    public final Object key;
     public final Runnable callback;
 
-    public Event(long time, Runnable callback) {
-      this.time = time;
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+
+    // The next event in the same slot. Only used by the wheel thread.
+    public Event next;
+
+    public Event(long tick,
+                 long timeMs,
+                 long dueNanos,
+                 long sequence,
+                 Object key,
+                 Runnable callback) {
+      this.tick = tick;
+      this.timeMs = timeMs;
+      this.dueNanos = dueNanos;
+      this.sequence = sequence;
+      this.key = key;
       this.callback = callback;
     }
 
     @Override
-    public int compareTo(Event other) {
-      return Long.compare(time, other.time);
+    public boolean cancel() {
+      return state.compareAndSet(WAITING, CANCELLED);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    // START
+    //
+    // Mark the event as running. Returns false if the event was cancelled and
+    // should not be run.
+    public boolean start() {
+      return state.compareAndSet(WAITING, RUNNING);
     }
   }
 
-  private final BlockingQueue<Event> backlog = new PriorityBlockingQueue<>();
-  private final BlockingQueue<Runnable> todo = new LinkedBlockingQueue<>();
+  // Events that come due together leave the wheel in time order, and events
+  // with the same time in the order they were scheduled.
+  private static final Comparator<Event> DUE_ORDER = new Comparator<Event>() {
+    @Override
+    public int compare(Event a, Event b) {
+      final int order = Long.compare(a.timeMs, b.timeMs);
+      return order == 0 ? Long.compare(a.sequence, b.sequence) : order;
+    }
+  };
+
+  // New events are passed to the wheel thread through this queue so that the
+  // wheel itself is only ever touched by one thread and needs no locking.
+  private final Queue<Event> incoming = new ConcurrentLinkedQueue<>();
+
+  // Each executor has its own queue of due events. Keyed events always go to
+  // the same queue, events without a key take turns.
+  private final List<BlockingQueue<Event>> todo = new ArrayList<>();
+  private final AtomicInteger nextUnkeyed = new AtomicInteger();
+
+  private final AtomicLong scheduled = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong cancelled = new AtomicLong();
+  private final AtomicLong waiting = new AtomicLong();
+
+  private final LatencyRecorder lag = new LatencyRecorder();
+  private final LatencyRecorder runTime = new LatencyRecorder();
 
-  private boolean running = true;
+  // Each slot is a list of events in the order they were added. The tails are
+  // kept so that adding to a slot is constant time and keeps that order.
+  private final Event[][] wheel = new Event[LEVELS][SLOTS];
+  private final Event[][] tails = new Event[LEVELS][SLOTS];
+  private Event overflow = null;
+  private Event overflowTail = null;
+
+  // Events that the wheel found to be due, waiting to be sorted and sent to
+  // the executors. Only used by the wheel thread.
+  private final List<Event> due = new ArrayList<>();
+
+  // The last tick that the wheel has processed. Only used by the wheel thread.
+  private long currentTick = System.currentTimeMillis() / TICK_MS;
+
+  private volatile boolean running = true;
 
   // This thread is used to track the time of events and moves events from the
-  // "backlog" queue to the "todo" queue when it is time to execute. They are
-  // separated to allow this thread to be safely interrupted.
+  // wheel to the "todo" queues when it is time to execute. It wakes up once per
+  // tick, takes any new events, and runs the wheel forward to the current time.
   private final Thread scheduler = new Thread() {
     @Override
     public void run() {
       while (running) {
 
-        Event next;
-
-        try {
-          next = backlog.take();
-        } catch (InterruptedException ex) {
-          // Rather than try to handle the exception here, set "next"
-          // to null and let the normal flow handle the case.
-          next = null;
+        for (Event event = incoming.poll(); event != null; event = incoming.poll()) {
+          insert(event);
         }
 
-        long sleep = 0;
-
-        if (next != null) {
-
-          final long now = System.currentTimeMillis();
-
-          // Check which queue the event should be added to. If it
-          // is time to execute, it should be added to the "todo"
-          // queue. If it is not time, it should be added back to the
-          // "backlog".
-          // If the item is added back to the backlog, we know how long
-          // it will be until it will be executed. That means we can sleep
-          // until then.
-          if (next.time <= now) {
-            forceAdd(todo, next.callback);
-            sleep = 0;
-          } else {
-            // Put it back (it's not time).
-            forceAdd(backlog, next);
-            sleep = next.time - now;
-          }
-        }
+        final long now = System.currentTimeMillis();
+        final long nowTick = now / TICK_MS;
 
-        if (sleep > 0) {
-          try {
-            Thread.sleep(sleep);
-          } catch (InterruptedException ex) {
-            // There are two cases this will happen:
-            //  1. A new item was added and we are being woken to
-            //     check if we need to update the time.
-            //  2. It is time to exit and we need to wake-up so that
-            //     we can check that "running" is "false".
-          }
+        while (currentTick < nowTick) {
+          advance();
         }
-      }
-    }
-  };
 
-  // This thread is used to run the code that was given to the time line. This
-  // worker does not need to know anything about the time. Once an event gets to
-  // here - it is considered "on time" and will be executed.
-  private final Thread executor = new Thread() {
-    @Override
-    public void run() {
-      while (running) {
+        dispatchDue();
+
         try {
-          todo.take().run();
-        } catch (Exception ex) {
-          // Catch all exceptions here to stop any rogue action from
-          // take down the timeline.
-          LOG.warning(
-              "An exception was seen on the timeline (%s)",
-              ex.toString());
+          Thread.sleep(TICK_MS - (now % TICK_MS));
+        } catch (InterruptedException ex) {
+          // The only time this thread is interrupted is when the timeline is
+          // stopping. The loop will check "running" and exit.
         }
       }
     }
   };
 
+  // These threads are used to run the code that was given to the time line.
+  // The workers do not need to know anything about the time. Once an event gets
+  // to here - it is considered "on time" and will be executed.
+  private final List<Thread> executors = new ArrayList<>();
+
   public Timeline() {
+    this(1);
+  }
+
+  // TIMELINE
+  //
+  // Create a timeline that will run due events on "executorCount" threads.
+  public Timeline(int executorCount) {
+
+    for (int i = 0; i < Math.max(1, executorCount); i++) {
+      final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+      todo.add(queue);
+      executors.add(newExecutor(queue));
+    }
+
     scheduler.start();
-    executor.start();
+
+    for (final Thread executor : executors) {
+      executor.start();
+    }
   }
 
   // SCHEDULE NOW
   //
   // Add an event to the timeline so that it will occur as soon as possible.
-  public void scheduleNow(Runnable callback) {
-    scheduleAt(System.currentTimeMillis(), callback);
+  public Handle scheduleNow(Runnable callback) {
+    return scheduleAt(null, System.currentTimeMillis(), callback);
+  }
+
+  public Handle scheduleNow(Object key, Runnable callback) {
+    return scheduleAt(key, System.currentTimeMillis(), callback);
   }
 
   // SCHEDULE IN
   //
   // Add an event to the timeline so that it will occur in approximately in a
   // set amount of milliseconds.
-  public void scheduleIn(long ms, Runnable callback) {
-    scheduleAt(System.currentTimeMillis() + ms, callback);
+  public Handle scheduleIn(long ms, Runnable callback) {
+    return scheduleAt(null, System.currentTimeMillis() + ms, callback);
+  }
+
+  public Handle scheduleIn(Object key, long ms, Runnable callback) {
+    return scheduleAt(key, System.currentTimeMillis() + ms, callback);
   }
 
   // SCHEDULE AT
   //
   // Add an event to the timeline so that will occur approximately at a fixed
-  // point in time.
-  public void scheduleAt(long timeMs, Runnable callback) {
-    final Event event = new Event(timeMs, callback);
-    forceAdd(backlog, event);
-    scheduler.interrupt();  // wake it up
+  // point in time. Events that are already due skip the wheel and go straight
+  // to an executor.
+  public Handle scheduleAt(long timeMs, Runnable callback) {
+    return scheduleAt(null, timeMs, callback);
+  }
+
+  // SCHEDULE AT (KEYED)
+  //
+  // Add an event with a key. The event will never run at the same time as any
+  // other event with an equal key. A null key is the same as no key.
+  public Handle scheduleAt(Object key, long timeMs, Runnable callback) {
+
+    final long now = System.currentTimeMillis();
+
+    // Round up so that the event's tick never starts before its time.
+    final Event event = new Event(
+        (timeMs + TICK_MS - 1) / TICK_MS,
+        timeMs,
+        System.nanoTime() + Math.max(0, timeMs - now) * 1000000L,
+        scheduled.incrementAndGet(),
+        key,
+        callback);
+
+    if (timeMs <= now) {
+      dispatch(event);
+    } else {
+      waiting.incrementAndGet();
+      incoming.offer(event);
+    }
+
+    return event;
+  }
+
+  // STATS
+  //
+  // Get a snapshot of the timeline's counters and queue sizes.
+  public Stats stats() {
+
+    long due = 0;
+    for (final BlockingQueue<Event> queue : todo) {
+      due += queue.size();
+    }
+
+    return new Stats(
+        scheduled.get(),
+        completed.get(),
+        failed.get(),
+        cancelled.get(),
+        waiting.get(),
+        due,
+        lag,
+        runTime);
   }
 
   // STOP
@@ -164,7 +378,9 @@ public final class Timeline {
     // Interrupt does not force a thread to exit. It signals the
     // thead that it is time to stop execution. As the threads may
     // be sleeping, this will force them awake.
-    executor.interrupt();
+    for (final Thread executor : executors) {
+      executor.interrupt();
+    }
     scheduler.interrupt();
   }
 
@@ -172,10 +388,185 @@ public final class Timeline {
   //
   // Wait for the timeline to shutdown. This is a blocking call.
   public void join() {
-    forceJoin(executor);
+    for (final Thread executor : executors) {
+      forceJoin(executor);
+    }
     forceJoin(scheduler);
   }
 
+  private Thread newExecutor(final BlockingQueue<Event> queue) {
+    return new Thread() {
+      @Override
+      public void run() {
+        while (running) {
+          try {
+            execute(queue.take());
+          } catch (InterruptedException ex) {
+            // The timeline is stopping, let the loop check "running".
+          }
+        }
+      }
+    };
+  }
+
+  // EXECUTE
+  //
+  // Run a due event (unless it was cancelled) and record how late it was and
+  // how long it took.
+  private void execute(Event event) {
+
+    if (!event.start()) {
+      cancelled.incrementAndGet();
+      return;
+    }
+
+    final long start = System.nanoTime();
+    lag.record(start - event.dueNanos);
+
+    try {
+      event.callback.run();
+      completed.incrementAndGet();
+    } catch (Exception ex) {
+      // Catch all exceptions here to stop any rogue action from
+      // take down the timeline.
+      failed.incrementAndGet();
+      LOG.warning(
+          "An exception was seen on the timeline (%s)",
+          ex.toString());
+    } finally {
+      runTime.record(System.nanoTime() - start);
+    }
+  }
+
+  // DISPATCH
+  //
+  // Hand a due event to an executor. Keyed events are always sent to the same
+  // executor so that they run in order and never at the same time. The sign
+  // bit is masked off so that a negative hash still picks a valid executor.
+  private void dispatch(Event event) {
+
+    final int index = event.key == null ?
+        (nextUnkeyed.getAndIncrement() & Integer.MAX_VALUE) % todo.size() :
+        (event.key.hashCode() & Integer.MAX_VALUE) % todo.size();
+
+    forceAdd(todo.get(index), event);
+  }
+
+  // INSERT
+  //
+  // Put an event into the wheel. The level is the lowest level where the
+  // event's tick and the current tick only differ in that level's slot (or
+  // below). That slot will be reached (and the event moved down a level) before
+  // the event is due.
+  private void insert(Event event) {
+
+    if (event.isCancelled()) {
+      waiting.decrementAndGet();
+      cancelled.incrementAndGet();
+      return;
+    }
+
+    if (event.tick <= currentTick) {
+      waiting.decrementAndGet();
+      due.add(event);
+      return;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+
+      final int shift = SLOT_BITS * (level + 1);
+
+      if ((event.tick >>> shift) == (currentTick >>> shift)) {
+        final int slot = (int) ((event.tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        if (wheel[level][slot] == null) {
+          wheel[level][slot] = event;
+        } else {
+          tails[level][slot].next = event;
+        }
+        tails[level][slot] = event;
+        return;
+      }
+    }
+
+    if (overflow == null) {
+      overflow = event;
+    } else {
+      overflowTail.next = event;
+    }
+    overflowTail = event;
+  }
+
+  // DISPATCH DUE
+  //
+  // Send everything the wheel found to be due to the executors. Events can
+  // reach the due list from different slots and levels (e.g. one that was
+  // moved down a level and one that was added to the lower level directly),
+  // so they are sorted first.
+  private void dispatchDue() {
+
+    if (due.isEmpty()) {
+      return;
+    }
+
+    Collections.sort(due, DUE_ORDER);
+
+    for (final Event event : due) {
+      dispatch(event);
+    }
+
+    due.clear();
+  }
+
+  // ADVANCE
+  //
+  // Move the wheel forward one tick. Any higher level slot that lines up with
+  // the new tick has its events moved down, then every event in the new tick's
+  // level 0 slot is due.
+  private void advance() {
+
+    currentTick += 1;
+
+    if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+      final Event head = overflow;
+      overflow = null;
+      overflowTail = null;
+      reinsert(head);
+    }
+
+    for (int level = LEVELS - 1; level > 0; level--) {
+
+      final int shift = SLOT_BITS * level;
+
+      if ((currentTick & ((1L << shift) - 1)) == 0) {
+        final int slot = (int) ((currentTick >>> shift) & SLOT_MASK);
+        final Event head = wheel[level][slot];
+        wheel[level][slot] = null;
+        tails[level][slot] = null;
+        reinsert(head);
+      }
+    }
+
+    final int slot = (int) (currentTick & SLOT_MASK);
+    final Event head = wheel[0][slot];
+    wheel[0][slot] = null;
+    tails[0][slot] = null;
+    reinsert(head);
+  }
+
+  // REINSERT
+  //
+  // Move every event in a slot's list, from the head, so that the events keep
+  // their order in the slots they are moved to.
+  private void reinsert(Event head) {
+    Event current = head;
+    while (current != null) {
+      final Event next = current.next;
+      current.next = null;
+      insert(current);
+      current = next;
+    }
+  }
+
   private static void forceJoin(Thread thread) {
     while (true) {
       try {
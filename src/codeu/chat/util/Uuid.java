@@ -15,6 +15,7 @@
 package codeu.chat.util;
 
 import java.lang.StringBuilder;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -54,19 +55,25 @@ public final class Uuid {
       // "input.read" can only return one by of data so there is no need
       // to check that the bounds of 0 to 255 is respected.
       final int length = in.read();
-      final int[] chain = new int[length];
 
-      for (int i = 0; i < length; i++) {
-        chain[i] = Serializers.INTEGER.read(in);
+      if (length < 0) {
+        throw new EOFException("Stream ended before Uuid length");
       }
 
-      Uuid head = null;
+      return readChain(in, length);
+    }
+
+    // The chain is written from the tail to the root, so each link reads its
+    // own id and then reads the rest of the chain as its root.
+    private Uuid readChain(InputStream in, int length) throws IOException {
 
-      for (int i = length - 1; i >= 0; i--) {
-        head = new Uuid(head, chain[i]);
+      if (length == 0) {
+        return null;
       }
 
-      return head;
+      final int id = Serializers.INTEGER.read(in);
+
+      return new Uuid(readChain(in, length - 1), id);
     }
   };
 
@@ -151,6 +158,20 @@ public final class Uuid {
 
   }
 
+  // Order two Uuids by their ids from the tail to the root. Null comes before
+  // any Uuid. The order has no meaning other than being the same every time.
+  public static int compare(Uuid a, Uuid b) {
+
+    if (a == b) { return 0; }
+
+    if (a == null) { return -1; }
+
+    if (b == null) { return 1; }
+
+    final int order = Integer.compare(a.id(), b.id());
+    return order == 0 ? compare(a.root(), b.root()) : order;
+  }
+
   // Compute a hash code for the Uuids by walking up the chain.
   private static int hash(Uuid id) {
 
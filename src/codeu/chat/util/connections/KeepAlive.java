@@ -0,0 +1,64 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util.connections;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// KEEP ALIVE
+//
+// Lets a server handle many requests, one after the other, over a single
+// connection. Between requests the server waits in "awaitRequest" until the
+// client starts sending the next request or closes the connection. Clients
+// that only send one request and then close still work as before.
+//
+// A server should close the connection after any request it could not read
+// in full, as the rest of that request would be read as the next one.
+public final class KeepAlive {
+
+  // How long a server keeps a connection open with no request on it. Clients
+  // that keep connections around should stop using them well before this.
+  public static final int IDLE_TIMEOUT_MS = 60000;
+
+  private KeepAlive() { }
+
+  // AWAIT REQUEST
+  //
+  // Send anything still waiting to be written and block until the next
+  // request starts to arrive. Nothing is read from the request. Returns false
+  // if the client closed the connection instead. If the connection came from
+  // a source with an idle timeout and no request arrives in time this will
+  // throw a SocketTimeoutException.
+  public static boolean awaitRequest(Connection connection) throws IOException {
+
+    connection.out().flush();
+
+    final InputStream in = connection.in();
+
+    if (!in.markSupported()) {
+      throw new IOException("Connection can not be kept alive without mark support");
+    }
+
+    in.mark(1);
+
+    if (in.read() < 0) {
+      return false;
+    }
+
+    in.reset();
+    return true;
+  }
+}
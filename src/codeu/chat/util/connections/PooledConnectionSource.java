@@ -0,0 +1,416 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util.connections;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.util.Logger;
+import codeu.chat.util.Serializers;
+
+// POOLED CONNECTION SOURCE
+//
+// A connection source for clients that keeps connections open after they are
+// closed so that later calls to "connect" can use them again instead of
+// opening a new socket each time. The server must handle many requests per
+// connection (see KeepAlive).
+//
+// Connections are handed out for one request/response exchange at a time. When
+// one is closed it goes back into the pool only if nothing went wrong with it
+// and its response was read in full. At most "maxIdle" connections are kept.
+//
+// A connection that has been idle for a while is checked with a ping before it
+// is used. A server that can only handle a single request on a connection
+// follows the response with CONNECTION_CLOSING. Such a connection is not kept,
+// and if the marker only arrives after the next request was sent, the server
+// never read that request, so any request is sent again on a new connection.
+//
+// If a kept connection still turns out to be dead (the server closed it
+// before the response started) there is no way to know if the server got
+// the request. Requests that only read (see NetworkCode.isReadOnly) are sent
+// again on a new connection, before any of the response has been read, so
+// callers never see it. Any other request (e.g. a new message) could end up
+// being done twice, so the failure is passed on to the caller instead.
+public final class PooledConnectionSource implements ConnectionSource {
+
+  private final static Logger.Log LOG = Logger.newLog(PooledConnectionSource.class);
+
+  // Connections are never kept for as long as the server would keep them.
+  private static final long MAX_IDLE_MS = KeepAlive.IDLE_TIMEOUT_MS / 2;
+
+  // Connections idle for longer than this are pinged before they are used.
+  private static final long PING_AFTER_MS = 5000;
+
+  private static final int DEFAULT_MAX_IDLE = 4;
+
+  private final ConnectionSource source;
+  private final int maxIdle;
+
+  // The most recently used connection is at the front.
+  private final Deque<Pooled> idle = new ArrayDeque<>();
+  private boolean closed = false;
+
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+
+  public PooledConnectionSource(ConnectionSource source) {
+    this(source, DEFAULT_MAX_IDLE);
+  }
+
+  public PooledConnectionSource(ConnectionSource source, int maxIdle) {
+    this.source = source;
+    this.maxIdle = maxIdle;
+  }
+
+  @Override
+  public Connection connect() throws IOException {
+
+    Pooled pooled;
+
+    while ((pooled = takeIdle()) != null) {
+
+      if (pooled.idleMs() < PING_AFTER_MS || ping(pooled)) {
+        reused.incrementAndGet();
+        return new Lease(pooled, true);
+      }
+
+      LOG.info("Dropping pooled connection that failed a ping.");
+      pooled.closeQuietly();
+    }
+
+    return new Lease(open(), false);
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    synchronized (idle) {
+      closed = true;
+      for (final Pooled pooled : idle) {
+        pooled.closeQuietly();
+      }
+      idle.clear();
+    }
+
+    source.close();
+  }
+
+  // How many new connections were opened, how many times a kept connection
+  // was used again, and how many requests had to be sent again because a kept
+  // connection was dead.
+  public long opened() { return opened.get(); }
+
+  public long reused() { return reused.get(); }
+
+  public long retried() { return retried.get(); }
+
+  private Pooled open() throws IOException {
+    opened.incrementAndGet();
+    return new Pooled(source.connect());
+  }
+
+  // Get the most recently used connection that has not been idle for too
+  // long. Connections that have been idle for too long are closed.
+  private Pooled takeIdle() {
+
+    synchronized (idle) {
+
+      while (!idle.isEmpty()) {
+
+        final Pooled pooled = idle.pollFirst();
+
+        if (pooled.idleMs() < MAX_IDLE_MS) {
+          return pooled;
+        }
+
+        pooled.closeQuietly();
+      }
+
+      return null;
+    }
+  }
+
+  private void release(Pooled pooled) {
+
+    synchronized (idle) {
+      if (!closed && idle.size() < maxIdle) {
+        pooled.lastUsed = System.currentTimeMillis();
+        idle.addFirst(pooled);
+        return;
+      }
+    }
+
+    pooled.closeQuietly();
+  }
+
+  private static boolean ping(Pooled pooled) {
+    try {
+      Serializers.INTEGER.write(pooled.connection.out(), NetworkCode.PING_REQUEST);
+      return Serializers.INTEGER.read(pooled.connection.in()) == NetworkCode.PING_RESPONSE &&
+             pooled.connection.in().available() == 0;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  // POOLED
+  //
+  // A connection that is open to the server and when it was last used.
+  private static final class Pooled {
+
+    final Connection connection;
+    long lastUsed = System.currentTimeMillis();
+
+    Pooled(Connection connection) {
+      this.connection = connection;
+    }
+
+    long idleMs() {
+      return System.currentTimeMillis() - lastUsed;
+    }
+
+    void closeQuietly() {
+      try {
+        connection.close();
+      } catch (IOException ex) {
+        LOG.error(ex, "Failed to close pooled connection.");
+      }
+    }
+  }
+
+  // LEASE
+  //
+  // The connection given to a caller for one exchange. The request is held
+  // until the caller asks for the input stream so that it can be sent again
+  // if the connection it was first sent on turns out to be dead. After that,
+  // any failure on the streams marks the connection as broken so that it is
+  // not put back into the pool.
+  private final class Lease implements Connection {
+
+    private Pooled pooled;
+    private boolean reused;
+
+    private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+
+    private InputStream in = null;
+    private OutputStream out = null;
+
+    private boolean broken = false;
+    private boolean released = false;
+
+    Lease(Pooled pooled, boolean reused) {
+      this.pooled = pooled;
+      this.reused = reused;
+    }
+
+    @Override
+    public InputStream in() throws IOException {
+
+      if (in == null) {
+        send();
+        in = new FilterInputStream(pooled.connection.in()) {
+          @Override
+          public int read() throws IOException {
+            try {
+              return super.read();
+            } catch (IOException ex) {
+              broken = true;
+              throw ex;
+            }
+          }
+
+          @Override
+          public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+              return super.read(buffer, offset, length);
+            } catch (IOException ex) {
+              broken = true;
+              throw ex;
+            }
+          }
+        };
+      }
+
+      return in;
+    }
+
+    @Override
+    public OutputStream out() throws IOException {
+
+      if (in == null) {
+        // Still writing the request.
+        return request;
+      }
+
+      if (out == null) {
+        out = new FilterOutputStream(pooled.connection.out()) {
+          @Override
+          public void write(int b) throws IOException {
+            try {
+              super.write(b);
+            } catch (IOException ex) {
+              broken = true;
+              throw ex;
+            }
+          }
+
+          @Override
+          public void write(byte[] buffer, int offset, int length) throws IOException {
+            try {
+              pooled.connection.out().write(buffer, offset, length);
+            } catch (IOException ex) {
+              broken = true;
+              throw ex;
+            }
+          }
+
+          @Override
+          public void flush() throws IOException {
+            try {
+              super.flush();
+            } catch (IOException ex) {
+              broken = true;
+              throw ex;
+            }
+          }
+        };
+      }
+
+      return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      if (released) {
+        return;
+      }
+
+      released = true;
+
+      if (broken) {
+        // Sending the request failed, do not send it again.
+        pooled.closeQuietly();
+        return;
+      }
+
+      if (in == null) {
+        // The caller never read a response, so there is no telling what the
+        // server will send back. Send the request and do not keep the
+        // connection.
+        try {
+          request.writeTo(pooled.connection.out());
+        } finally {
+          pooled.connection.close();
+        }
+        return;
+      }
+
+      // Anything left unread would be read as the response to the next
+      // request on this connection.
+      if (!broken && pooled.connection.in().available() == 0) {
+        release(pooled);
+      } else {
+        pooled.closeQuietly();
+      }
+    }
+
+    // Send the held request and wait for the start of the response. A kept
+    // connection that the server said it was closing is replaced by a new one
+    // and the request is sent again. So is a kept connection that fails before
+    // any of the response arrives, but only if the request is read only.
+    private void send() throws IOException {
+
+      try {
+
+        if (sendOn(pooled)) {
+          return;
+        }
+
+        LOG.info("Pooled connection was closing, sending the request again on a new connection.");
+
+      } catch (IOException ex) {
+
+        if (!reused || !isReadOnly()) {
+          broken = true;
+          throw ex;
+        }
+
+        LOG.info("Pooled connection was dead, sending the request again on a new connection.");
+      }
+
+      retried.incrementAndGet();
+
+      pooled.closeQuietly();
+      pooled = open();
+      reused = false;
+
+      try {
+        if (!sendOn(pooled)) {
+          throw new IOException("Server closed a new connection without reading the request");
+        }
+      } catch (IOException again) {
+        broken = true;
+        throw again;
+      }
+    }
+
+    private boolean isReadOnly() throws IOException {
+      return request.size() >= 4 && NetworkCode.isReadOnly(
+          Serializers.INTEGER.read(new ByteArrayInputStream(request.toByteArray(), 0, 4)));
+    }
+
+    // Returns false if the server closed the connection without reading the
+    // request.
+    private boolean sendOn(Pooled target) throws IOException {
+
+      request.writeTo(target.connection.out());
+
+      final InputStream response = target.connection.in();
+
+      if (!response.markSupported()) {
+        // Can not look ahead, so the first read will find out if it is dead.
+        return true;
+      }
+
+      // Every response starts with its code.
+      response.mark(4);
+
+      if (response.read() < 0) {
+        throw new IOException("Connection closed before the response");
+      }
+
+      response.reset();
+
+      if (Serializers.INTEGER.read(response) == NetworkCode.CONNECTION_CLOSING) {
+        return false;
+      }
+
+      response.reset();
+      return true;
+    }
+  }
+}
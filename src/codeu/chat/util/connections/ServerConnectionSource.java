@@ -15,8 +15,6 @@
 package codeu.chat.util.connections;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 
@@ -25,17 +23,25 @@ import java.net.Socket;
 // Implements the ConnectionSource interface for servers who need to host
 // one of their ports so that clients can connect to it. Calls to "connect"
 // will block until a connection is established.
+//
+// If an idle timeout is given, a read on an accepted connection that waits
+// longer than the timeout will throw a SocketTimeoutException. This is how a
+// server finds connections that clients have kept open but stopped using.
 public final class ServerConnectionSource implements ConnectionSource {
 
   private final ServerSocket serverSocket;
+  private final int idleTimeoutMs;
 
-  private ServerConnectionSource(ServerSocket serverSocket) {
+  private ServerConnectionSource(ServerSocket serverSocket, int idleTimeoutMs) {
     this.serverSocket = serverSocket;
+    this.idleTimeoutMs = idleTimeoutMs;
   }
 
   @Override
   public Connection connect() throws IOException {
-    return fromSocket(serverSocket.accept());
+    final Socket socket = serverSocket.accept();
+    socket.setSoTimeout(idleTimeoutMs);
+    return new SocketConnection(socket);
   }
 
   @Override
@@ -43,28 +49,12 @@ public final class ServerConnectionSource implements ConnectionSource {
     serverSocket.close();
   }
 
-  private static Connection fromSocket(final Socket socket) throws IOException {
-
-    return new Connection() {
-
-      @Override
-      public InputStream in() throws IOException {
-        return socket.getInputStream();
-      }
-
-      @Override
-      public OutputStream out() throws IOException {
-        return socket.getOutputStream();
-      }
-
-      @Override
-      public void close() throws IOException {
-        socket.close();
-      }
-    };
+  public static ConnectionSource forPort(int port) throws IOException {
+    return forPort(port, 0);
   }
 
-  public static ConnectionSource forPort(int port) throws IOException {
-    return new ServerConnectionSource(new ServerSocket(port));
+  // An idle timeout of zero means reads will wait forever.
+  public static ConnectionSource forPort(int port, int idleTimeoutMs) throws IOException {
+    return new ServerConnectionSource(new ServerSocket(port), idleTimeoutMs);
   }
 }
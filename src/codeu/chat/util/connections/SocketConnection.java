@@ -0,0 +1,67 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util.connections;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+// SOCKET CONNECTION
+//
+// A connection over a socket with buffered streams on both sides so that the
+// many small reads and writes made by the serializers do not each become a
+// system call.
+//
+// Anything written is held until the other side needs it: asking for the
+// input stream sends everything written so far (as the only reason to read is
+// to get the reply to what was written) and so does closing the connection.
+final class SocketConnection implements Connection {
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+
+  SocketConnection(Socket socket) throws IOException {
+    this.socket = socket;
+    this.in = new BufferedInputStream(socket.getInputStream());
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+  }
+
+  @Override
+  public InputStream in() throws IOException {
+    out.flush();
+    return in;
+  }
+
+  @Override
+  public OutputStream out() throws IOException {
+    return out;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!socket.isClosed()) {
+        out.flush();
+      }
+    } finally {
+      socket.close();
+    }
+  }
+}
@@ -30,6 +30,10 @@ public final class Store<KEY, VALUE> implements StoreAccessor<KEY, VALUE> {
 
   private final Comparator<KEY> comparator;
 
+  // The number of links in the chain (not counting the root link). This is
+  // not the same as the size of the index as equal keys share an index entry.
+  private int size = 0;
+
   public Store(Comparator<KEY> comparator) {
     this.index = new TreeMap<>(comparator);
     this.comparator = comparator;
@@ -51,6 +55,7 @@ public final class Store<KEY, VALUE> implements StoreAccessor<KEY, VALUE> {
     // should always be safe to call to current.
     final StoreLink<KEY, VALUE> newLink = new StoreLink<>(key, value, current.next);
     current.next = newLink;
+    size += 1;
 
     // Before adding the link to the index, first check if the hint has an
     // equal key. If it does - do not add the index.
@@ -90,6 +95,7 @@ public final class Store<KEY, VALUE> implements StoreAccessor<KEY, VALUE> {
       } else {
         previous.next = current.next;
       }
+      size -= 1;
     }
   }
 
@@ -140,6 +146,7 @@ public final class Store<KEY, VALUE> implements StoreAccessor<KEY, VALUE> {
       } else {
         previous.next = current.next;
       }
+      size -= 1;
     }
   }
 
@@ -148,6 +155,11 @@ public final class Store<KEY, VALUE> implements StoreAccessor<KEY, VALUE> {
     return index.containsKey(key);
   }
 
+  @Override
+  public int size() {
+    return size;
+  }
+
   private StoreLink<KEY, VALUE> first() {
     return extract(index.firstEntry());
   }
@@ -32,4 +32,6 @@ public interface StoreAccessor<KEY, VALUE> {
 
   boolean contains(KEY key);
 
+  int size();
+
 }
@@ -22,11 +22,25 @@ public final class TestRunner {
   public static void main(String[] args) {
      final Result result =
          JUnitCore.runClasses(
+             codeu.chat.client.AsyncRunnerTest.class,
+             codeu.chat.client.ClientMessageTest.class,
+             codeu.chat.client.simplegui.MessageListModelTest.class,
              codeu.chat.common.SecretTest.class,
              codeu.chat.relay.ServerTest.class,
+             codeu.chat.relay.TeamFileTest.class,
              codeu.chat.server.BasicControllerTest.class,
+             codeu.chat.server.ConversationPageTest.class,
+             codeu.chat.server.EventStreamTest.class,
              codeu.chat.server.RawControllerTest.class,
+             codeu.chat.server.RemoteRelayTest.class,
+             codeu.chat.server.RequestTraceTest.class,
+             codeu.chat.server.ServerStatsTest.class,
+             codeu.chat.util.LatencyRecorderTest.class,
+             codeu.chat.util.LoggerTest.class,
+             codeu.chat.util.SerializersTest.class,
+             codeu.chat.util.TimelineTest.class,
              codeu.chat.util.TimeTest.class,
+             codeu.chat.util.connections.PooledConnectionSourceTest.class,
              codeu.chat.util.UuidTest.class,
              codeu.chat.util.store.StoreTest.class
          );
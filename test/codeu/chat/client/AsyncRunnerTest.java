@@ -0,0 +1,176 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class AsyncRunnerTest {
+
+  private AsyncRunner runner;
+
+  // Holds the only worker thread until released so that calls can be queued
+  // behind it.
+  private CountDownLatch gate;
+
+  @Before
+  public void doBefore() throws Exception {
+
+    runner = new AsyncRunner(AsyncRunner.newExecutor("test-worker", 1), AsyncRunner.DIRECT);
+    gate = new CountDownLatch(1);
+
+    final CountDownLatch blocked = new CountDownLatch(1);
+
+    runner.run(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        blocked.countDown();
+        gate.await();
+        return null;
+      }
+    }, null);
+
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void doAfter() {
+    gate.countDown();
+    runner.shutdown();
+  }
+
+  @Test
+  public void testWaitingReadsAreShared() throws Exception {
+
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger results = new AtomicInteger();
+    final CountDownLatch told = new CountDownLatch(2);
+
+    final Callable<Integer> work = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+
+    final Callback<Integer> callback = new Callback<Integer>() {
+      @Override
+      public void onResult(Integer result) {
+        results.addAndGet(result);
+        told.countDown();
+      }
+    };
+
+    final Future<Integer> first = runner.read("key", work, callback);
+    final Future<Integer> second = runner.read("key", work, callback);
+
+    gate.countDown();
+
+    assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+    assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+    // Callbacks are run after the futures are done.
+    assertTrue(told.await(5, TimeUnit.SECONDS));
+
+    assertEquals(1, calls.get());
+    assertEquals(2, results.get());
+    assertEquals(1, runner.coalesced());
+  }
+
+  @Test
+  public void testDifferentKeysAreNotShared() throws Exception {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    final Callable<Integer> work = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+
+    final Future<Integer> first = runner.read("a", work, null);
+    final Future<Integer> second = runner.read("b", work, null);
+
+    gate.countDown();
+
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, calls.get());
+    assertEquals(0, runner.coalesced());
+  }
+
+  @Test
+  public void testStartedReadsAreNotShared() throws Exception {
+
+    gate.countDown();
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger calls = new AtomicInteger();
+
+    final Callable<Integer> work = new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        final int call = calls.incrementAndGet();
+        started.countDown();
+        release.await();
+        return call;
+      }
+    };
+
+    final Future<Integer> first = runner.read("key", work, null);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // The first read may have missed changes made from here on.
+    final Future<Integer> second = runner.read("key", work, null);
+
+    release.countDown();
+
+    assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+    assertEquals(2, (int) second.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testWritesAreNeverShared() throws Exception {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    final Callable<Integer> work = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+
+    final Future<Integer> first = runner.run(work, null);
+    final Future<Integer> second = runner.run(work, null);
+
+    gate.countDown();
+
+    assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+    assertEquals(2, (int) second.get(5, TimeUnit.SECONDS));
+  }
+}
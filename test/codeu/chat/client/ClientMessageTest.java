@@ -1,42 +1,201 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
 package codeu.chat.client;
 
-import codeu.chat.common.*;
-import codeu.chat.util.connections.ClientConnectionSource;
-import codeu.chat.util.connections.ConnectionSource;
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import codeu.chat.common.Conversation;
+import codeu.chat.common.Message;
+import codeu.chat.common.User;
+import codeu.chat.server.NoOpRelay;
+import codeu.chat.server.Server;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
 
-public final class ClientMessageTest { //TODO: Add Actual Test 
- /*
-  ConnectionSource source1 = new ClientConnectionSource("host", 1);
-  Controller controller1 = new Controller(source1);
+public final class ClientMessageTest {
 
-  User user1 = controller1.newUser("Alice");
-  User user2 = controller1.newUser("Bob");
-  User user3 = controller1.newUser("Carl");
+  private static final byte[] SECRET = { 0x00, 0x01, 0x02 };
 
-  Conversation convo1 = controller1.newConversation("Hello World", user1.id);
-  Conversation convo2 = controller1.newConversation("Goodbye Nothing", user3.id);
+  private Server server;
+  private PipedSource source;
+  private Controller controller;
+  private ClientContext context;
 
-  Message msg1 = controller1.newMessage(user1.id, convo1.id, "Hello");
-  Message msg2 = controller1.newMessage(user2.id, convo1.id, "World");
+  private User author;
+  private Conversation conversation;
 
-  Message msg3 = controller1.newMessage(user3.id, convo2.id, "Goodbye");
+  @Before
+  public void doBefore() {
+
+    server = new Server(new Uuid(1), SECRET, new NoOpRelay());
+    source = new PipedSource(server);
+    controller = new Controller(source);
+    context = new ClientContext(controller, new View(source));
+
+    author = controller.newUser("Alice");
+    conversation = controller.newConversation("Hello", author.id);
+  }
+
+  @After
+  public void doAfter() {
+    server.stop();
+  }
 
   @Test
-  public void testAddMessage() { //TODO: Add Mocks for the Connection Source using Mockito. http://site.mockito.org/
+  public void testOnlyNewMessagesAreRead() {
 
+    final List<Uuid> sent = send(10);
+    assertEquals(sent, idsOf(contents()));
+
+    sent.addAll(send(3));
+
+    final int before = source.requests;
+    assertEquals(sent, idsOf(contents()));
+
+    // One read after the tail, the cache is not read again.
+    assertEquals(1, source.requests - before);
   }
 
+  @Test
+  public void testDeletedTailFallsBackToNewest() {
+
+    final List<Uuid> sent = send(10);
+    assertEquals(sent, idsOf(contents()));
 
-/*
+    final Uuid tail = sent.remove(sent.size() - 1);
+    assertTrue(controller.deleteMessage(tail, conversation.id));
+
+    assertEquals(sent, idsOf(contents()));
+  }
 
   @Test
-  public void testDeleteMessage() {
+  public void testLoadOlderMessages() {
+
+    final List<Uuid> sent = send(120);
+
+    // Only the newest page is read at first.
+    final List<Uuid> newest = idsOf(contents());
+    assertTrue(newest.size() < sent.size());
+    assertEquals(sent.subList(sent.size() - newest.size(), sent.size()), newest);
+    assertTrue(context.message.hasOlderMessages(conversation.summary));
+
+    int pages = 0;
+    while (context.message.hasOlderMessages(conversation.summary)) {
+      assertTrue(context.message.loadOlderMessages(conversation.summary) > 0);
+      pages++;
+    }
+
+    assertEquals(2, pages);
+    assertEquals(sent, idsOf(contents()));
+    assertEquals(0, context.message.loadOlderMessages(conversation.summary));
+  }
+
+  private List<Message> contents() {
+    return context.message.getConversationContents(conversation.summary);
+  }
+
+  private List<Uuid> send(int count) {
+    final List<Uuid> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ids.add(controller.newMessage(author.id, conversation.id, "message " + i).id);
+    }
+    return ids;
+  }
+
+  private static List<Uuid> idsOf(List<Message> messages) {
+    final List<Uuid> ids = new ArrayList<>();
+    for (final Message message : messages) {
+      ids.add(message.id);
+    }
+    return ids;
+  }
+
+  // Connects straight to a server in the same process. Every connection is
+  // used for a single request, so "requests" counts the requests sent.
+  private static final class PipedSource implements ConnectionSource {
+
+    private final Server server;
+    int requests = 0;
+
+    PipedSource(Server server) {
+      this.server = server;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+
+      final PipedInputStream serverIn = new PipedInputStream(1 << 16);
+      final PipedInputStream clientIn = new PipedInputStream(1 << 16);
+
+      final PipedConnection client =
+          new PipedConnection(clientIn, new PipedOutputStream(serverIn));
+      final PipedConnection served =
+          new PipedConnection(new BufferedInputStream(serverIn), new PipedOutputStream(clientIn));
+
+      requests++;
+      server.handleConnection(served);
+
+      return client;
+    }
+
+    @Override
+    public void close() { }
+  }
+
+  private static final class PipedConnection implements Connection {
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    PipedConnection(InputStream in, OutputStream out) {
+      this.in = in;
+      this.out = out;
+    }
 
+    // Like a socket connection, anything written is sent before reading.
+    @Override
+    public InputStream in() throws IOException {
+      out.flush();
+      return in;
+    }
 
+    @Override
+    public OutputStream out() { return out; }
 
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        in.close();
+      }
+    }
   }
-*/
 }
@@ -0,0 +1,190 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.client.simplegui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.common.Message;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+
+public final class MessageListModelTest {
+
+  private static final Uuid CONVERSATION = new Uuid(1);
+  private static final Uuid AUTHOR = new Uuid(2);
+
+  private static final Map<Uuid, String> NO_NAMES = Collections.emptyMap();
+
+  private MessageListModel model;
+  private List<String> events;
+
+  @Before
+  public void doBefore() {
+
+    model = new MessageListModel();
+    events = new ArrayList<>();
+
+    model.addListDataListener(new ListDataListener() {
+      @Override
+      public void intervalAdded(ListDataEvent e) {
+        events.add(String.format("added %d-%d", e.getIndex0(), e.getIndex1()));
+      }
+
+      @Override
+      public void intervalRemoved(ListDataEvent e) {
+        events.add(String.format("removed %d-%d", e.getIndex0(), e.getIndex1()));
+      }
+
+      @Override
+      public void contentsChanged(ListDataEvent e) {
+        events.add(String.format("changed %d-%d", e.getIndex0(), e.getIndex1()));
+      }
+    });
+  }
+
+  @Test
+  public void testFirstShowReplaces() {
+
+    assertEquals(MessageListModel.REPLACED, model.show(CONVERSATION, messages(0, 3), NO_NAMES));
+
+    assertEquals(3, model.getSize());
+    assertEquals(Collections.singletonList("added 0-2"), events);
+  }
+
+  @Test
+  public void testNewerMessagesAreAppended() {
+
+    final List<Message> all = messages(0, 5);
+
+    model.show(CONVERSATION, all.subList(0, 3), NO_NAMES);
+    events.clear();
+
+    assertEquals(0, model.show(CONVERSATION, all, NO_NAMES));
+
+    assertEquals(5, model.getSize());
+    assertEquals(Collections.singletonList("added 3-4"), events);
+  }
+
+  @Test
+  public void testOlderMessagesArePrepended() {
+
+    final List<Message> all = messages(0, 5);
+
+    model.show(CONVERSATION, all.subList(2, 5), NO_NAMES);
+    events.clear();
+
+    assertEquals(2, model.show(CONVERSATION, all, NO_NAMES));
+
+    assertEquals(5, model.getSize());
+    assertEquals(Collections.singletonList("added 0-1"), events);
+    assertTrue(model.getElementAt(0).endsWith("message 0"));
+  }
+
+  @Test
+  public void testOtherConversationReplaces() {
+
+    final List<Message> all = messages(0, 3);
+
+    model.show(CONVERSATION, all, NO_NAMES);
+    events.clear();
+
+    assertEquals(MessageListModel.REPLACED, model.show(new Uuid(3), all, NO_NAMES));
+    assertEquals(2, events.size());
+  }
+
+  @Test
+  public void testMissingMessageReplaces() {
+
+    final List<Message> all = messages(0, 4);
+
+    model.show(CONVERSATION, all.subList(0, 3), NO_NAMES);
+
+    // Message 1 was deleted.
+    final List<Message> latest = new ArrayList<>(all);
+    latest.remove(1);
+
+    assertEquals(MessageListModel.REPLACED, model.show(CONVERSATION, latest, NO_NAMES));
+    assertEquals(3, model.getSize());
+  }
+
+  @Test
+  public void testAuthorNames() {
+
+    model.show(CONVERSATION, messages(0, 1), NO_NAMES);
+    assertTrue(model.getElementAt(0).startsWith(AUTHOR.toString()));
+
+    final Map<Uuid, String> names = new HashMap<>();
+    names.put(AUTHOR, "alice");
+
+    // Showing another conversation formats its rows again, now with the name.
+    model.show(new Uuid(3), messages(0, 1), names);
+    assertTrue(model.getElementAt(0).startsWith("alice: "));
+  }
+
+  @Test
+  public void testRowsAreFormattedAgainOnceNameIsKnown() {
+
+    final List<Message> all = messages(0, 3);
+
+    model.show(CONVERSATION, all.subList(0, 2), NO_NAMES);
+    assertTrue(model.getElementAt(1).startsWith(AUTHOR.toString()));
+    events.clear();
+
+    final Map<Uuid, String> names = new HashMap<>();
+    names.put(AUTHOR, "alice");
+
+    // Only message 1 was formatted, so only its row needs to be shown again.
+    assertEquals(0, model.show(CONVERSATION, all, names));
+    assertEquals(Arrays.asList("changed 1-1", "added 2-2"), events);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(model.getElementAt(i).startsWith("alice: "));
+    }
+
+    // The same name again does not change anything.
+    events.clear();
+    model.show(CONVERSATION, all, names);
+    assertTrue(events.isEmpty());
+  }
+
+  private static List<Message> messages(int first, int count) {
+
+    final List<Message> messages = new ArrayList<>();
+
+    for (int i = first; i < first + count; i++) {
+      messages.add(new Message(new Uuid(100 + i),
+                               Uuid.NULL,
+                               Uuid.NULL,
+                               Time.now(),
+                               AUTHOR,
+                               "message " + i));
+    }
+
+    return messages;
+  }
+}
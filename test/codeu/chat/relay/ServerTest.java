@@ -14,7 +14,10 @@
 
 package codeu.chat.relay;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -286,4 +289,268 @@ public final class ServerTest {
       assertTrue(Uuid.equals(bundle.id(), new Uuid(3)));
     }
   }
+
+  @Test
+  public void testFilteredReadSkipsOwnTeam() {
+
+    final Server relay = new Server(8, 8);
+
+    final Uuid teamA = new Uuid(3);
+    final Uuid teamB = new Uuid(13);
+    final byte[] secret = { 0x00, 0x01, 0x02 };
+
+    assertTrue(relay.addTeam(teamA, secret));
+    assertTrue(relay.addTeam(teamB, secret));
+
+    assertTrue(relay.write(teamA,
+                           secret,
+                           relay.pack(new Uuid(4), "User", Time.now()),
+                           relay.pack(new Uuid(5), "Conversation", Time.now()),
+                           relay.pack(new Uuid(6), "Hello World", Time.now())));
+
+    assertTrue(relay.write(teamB,
+                           secret,
+                           relay.pack(new Uuid(14), "User", Time.now()),
+                           relay.pack(new Uuid(15), "Conversation", Time.now()),
+                           relay.pack(new Uuid(16), "Hello World", Time.now())));
+
+    final Collection<Relay.Bundle> read = relay.read(teamA,
+                                                     secret,
+                                                     Uuid.NULL,
+                                                     8,
+                                                     Arrays.asList(new Uuid[0]));
+    assertTrue(read.size() == 1);
+
+    for (final Relay.Bundle bundle : read) {
+      assertTrue(Uuid.equals(bundle.team(), teamB));
+      assertTrue(Uuid.equals(bundle.message().id(), new Uuid(16)));
+    }
+  }
+
+  @Test
+  public void testFilteredReadByConversation() {
+
+    final Server relay = new Server(8, 8);
+
+    final Uuid teamA = new Uuid(3);
+    final Uuid teamB = new Uuid(13);
+    final byte[] secret = { 0x00, 0x01, 0x02 };
+
+    assertTrue(relay.addTeam(teamA, secret));
+    assertTrue(relay.addTeam(teamB, secret));
+
+    assertTrue(relay.write(teamB,
+                           secret,
+                           relay.pack(new Uuid(14), "User", Time.now()),
+                           relay.pack(new Uuid(15), "Conversation", Time.now()),
+                           relay.pack(new Uuid(16), "Hello World", Time.now())));
+
+    assertTrue(relay.write(teamB,
+                           secret,
+                           relay.pack(new Uuid(14), "User", Time.now()),
+                           relay.pack(new Uuid(17), "Other Conversation", Time.now()),
+                           relay.pack(new Uuid(18), "Hello World", Time.now())));
+
+    assertTrue(relay.write(teamB,
+                           secret,
+                           relay.pack(new Uuid(14), "User", Time.now()),
+                           relay.pack(new Uuid(15), "Conversation", Time.now()),
+                           relay.pack(new Uuid(19), "Hello World", Time.now())));
+
+    final Collection<Relay.Bundle> first = relay.read(teamA,
+                                                      secret,
+                                                      Uuid.NULL,
+                                                      1,
+                                                      Arrays.asList(new Uuid(15)));
+    assertTrue(first.size() == 1);
+
+    Uuid last = Uuid.NULL;
+
+    for (final Relay.Bundle bundle : first) {
+      assertTrue(Uuid.equals(bundle.message().id(), new Uuid(16)));
+      last = bundle.id();
+    }
+
+    // Reading from the last bundle should skip the bundle from the other
+    // conversation and only return the final bundle.
+    final Collection<Relay.Bundle> second = relay.read(teamA,
+                                                       secret,
+                                                       last,
+                                                       8,
+                                                       Arrays.asList(new Uuid(15)));
+    assertTrue(second.size() == 1);
+
+    for (final Relay.Bundle bundle : second) {
+      assertTrue(Uuid.equals(bundle.message().id(), new Uuid(19)));
+    }
+  }
+
+  @Test
+  public void testFilteredReadFailWrongSecret() {
+
+    final Server relay = new Server(8, 8);
+
+    final Uuid team = new Uuid(3);
+    final byte[] secret = { 0x00, 0x01, 0x02 };
+    final byte[] wrongSecret = { 0x00, 0x01, 0x00 };
+
+    assertTrue(relay.addTeam(team, secret));
+
+    assertTrue(relay.read(team,
+                          wrongSecret,
+                          Uuid.NULL,
+                          8,
+                          Arrays.asList(new Uuid[0])).isEmpty());
+  }
+
+  @Test
+  public void testFilteredReadDuringWritesMissesNothing() throws Exception {
+
+    final Server relay = new Server(100000, 16);
+
+    final Uuid reader = new Uuid(1);
+    final byte[] readerSecret = { 0x01 };
+    relay.addTeam(reader, readerSecret);
+
+    final int writers = 3;
+    final int writes = 2000;
+
+    // Each writer is its own team so that every write goes to a different team
+    // index than the one before it.
+    final Thread[] threads = new Thread[writers];
+    for (int i = 0; i < writers; i++) {
+      final Uuid team = new Uuid(10 + i);
+      final byte[] secret = { (byte) (10 + i) };
+      relay.addTeam(team, secret);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < writes; j++) {
+            relay.write(team,
+                        secret,
+                        relay.pack(new Uuid(4), "User", Time.now()),
+                        relay.pack(new Uuid(100 + j % 7), "Conversation", Time.now()),
+                        relay.pack(new Uuid(6), "Hello World", Time.now()));
+          }
+        }
+      };
+    }
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+
+    // Read the way a server does, always starting after the last bundle seen.
+    // If a read ever skips a bundle, the reader can never see all of them.
+    final Collection<Uuid> all = Arrays.asList(new Uuid[0]);
+    final long deadline = System.currentTimeMillis() + 10000;
+
+    Uuid lastSeen = Uuid.NULL;
+    int seen = 0;
+
+    while (seen < writers * writes && System.currentTimeMillis() < deadline) {
+      for (final Relay.Bundle bundle : relay.read(reader, readerSecret, lastSeen, 16, all)) {
+        if (seen > 0) {
+          assertEquals(lastSeen.id() + 1, bundle.id().id());
+        }
+        lastSeen = bundle.id();
+        seen++;
+      }
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(writers * writes, seen);
+  }
+
+  @Test
+  public void testStandbyReplicatesAndPromotes() {
+
+    final Server leader = new Server(8, 8);
+    final Server standby = new Server(8, 8);
+
+    final Uuid team = new Uuid(3);
+    final byte[] secret = { 0x00, 0x01, 0x02 };
+
+    assertTrue(leader.addTeam(team, secret));
+    assertTrue(standby.addTeam(team, secret));
+
+    standby.follow();
+
+    assertTrue(leader.write(team,
+                            secret,
+                            leader.pack(new Uuid(4), "User", Time.now()),
+                            leader.pack(new Uuid(5), "Conversation", Time.now()),
+                            leader.pack(new Uuid(6), "Hello World", Time.now())));
+
+    // A standby only takes bundles from its leader.
+    assertFalse(standby.write(team,
+                              secret,
+                              standby.pack(new Uuid(4), "User", Time.now()),
+                              standby.pack(new Uuid(5), "Conversation", Time.now()),
+                              standby.pack(new Uuid(7), "Hello World", Time.now())));
+
+    for (final Relay.Bundle bundle : leader.read(team, secret, Uuid.NULL, 8)) {
+      assertTrue(standby.replicate(bundle));
+      assertFalse(standby.replicate(bundle));
+    }
+
+    standby.promote();
+
+    assertTrue(standby.write(team,
+                             secret,
+                             standby.pack(new Uuid(4), "User", Time.now()),
+                             standby.pack(new Uuid(5), "Conversation", Time.now()),
+                             standby.pack(new Uuid(7), "Hello World", Time.now())));
+
+    // The bundle written after the promotion should come after the bundle that
+    // was copied from the leader.
+    final Collection<Relay.Bundle> read = standby.read(team, secret, new Uuid(2), 8);
+    assertTrue(read.size() == 1);
+
+    for (final Relay.Bundle bundle : read) {
+      assertTrue(Uuid.equals(bundle.id(), new Uuid(3)));
+      assertTrue(Uuid.equals(bundle.message().id(), new Uuid(7)));
+    }
+  }
+
+  @Test
+  public void testSetTeamsUpdatesAndRemoves() {
+
+    final Server relay = new Server(8, 8);
+
+    final Uuid teamA = new Uuid(3);
+    final Uuid teamB = new Uuid(13);
+    final byte[] secret = { 0x00, 0x01, 0x02 };
+    final byte[] newSecret = { 0x00, 0x01, 0x03 };
+
+    assertTrue(relay.addTeam(teamA, secret));
+    assertTrue(relay.addTeam(teamB, secret));
+
+    final Map<Uuid, byte[]> teams = new HashMap<>();
+    teams.put(teamA, newSecret);
+
+    relay.setTeams(teams);
+
+    // Team A should only work with its new secret and team B should be gone.
+    assertFalse(relay.write(teamA,
+                            secret,
+                            relay.pack(new Uuid(4), "User", Time.now()),
+                            relay.pack(new Uuid(5), "Conversation", Time.now()),
+                            relay.pack(new Uuid(6), "Hello World", Time.now())));
+
+    assertTrue(relay.write(teamA,
+                           newSecret,
+                           relay.pack(new Uuid(4), "User", Time.now()),
+                           relay.pack(new Uuid(5), "Conversation", Time.now()),
+                           relay.pack(new Uuid(6), "Hello World", Time.now())));
+
+    assertFalse(relay.write(teamB,
+                            secret,
+                            relay.pack(new Uuid(14), "User", Time.now()),
+                            relay.pack(new Uuid(15), "Conversation", Time.now()),
+                            relay.pack(new Uuid(16), "Hello World", Time.now())));
+  }
 }
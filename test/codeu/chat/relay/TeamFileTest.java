@@ -0,0 +1,94 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.relay;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.util.Uuid;
+
+public final class TeamFileTest {
+
+  private File file;
+  private TeamFile teams;
+
+  @Before
+  public void doBefore() throws IOException {
+    file = File.createTempFile("teams", ".txt");
+    teams = new TeamFile(file.getPath());
+  }
+
+  @After
+  public void doAfter() {
+    file.delete();
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+
+    write("# comment\n\n100.101:ABABAB\n102:0102\n");
+
+    final Map<Uuid, byte[]> loaded = teams.loadIfChanged();
+
+    assertEquals(2, loaded.size());
+    assertTrue(loaded.containsKey(Uuid.parse("100.101")));
+    assertTrue(loaded.containsKey(Uuid.parse("102")));
+
+    // Nothing changed, so there is nothing new to use.
+    assertNull(teams.loadIfChanged());
+  }
+
+  @Test
+  public void testEmptyFileIsRejected() throws IOException {
+
+    write("100.101:ABABAB\n");
+    assertNotNull(teams.loadIfChanged());
+
+    write("");
+    assertNull(teams.loadIfChanged());
+
+    // Once the file is whole again it is used.
+    write("100.101:ABABAB\n102:0102\n");
+    assertEquals(2, teams.loadIfChanged().size());
+  }
+
+  @Test
+  public void testBadLinesAreSkipped() throws IOException {
+
+    // The first line of the file can not be parsed, the rest is still used.
+    write("100.101\n102:0102\n10");
+
+    final Map<Uuid, byte[]> loaded = teams.loadIfChanged();
+
+    assertEquals(1, loaded.size());
+    assertTrue(loaded.containsKey(Uuid.parse("102")));
+  }
+
+  private void write(String contents) throws IOException {
+    try (final Writer writer = new FileWriter(file)) {
+      writer.write(contents);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationActivity;
+import codeu.chat.common.ConversationPage;
+import codeu.chat.common.ConversationSummary;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+
+public final class ConversationPageTest {
+
+  private Model model;
+  private Controller controller;
+  private View view;
+
+  private Uuid userId;
+
+  @Before
+  public void doBefore() {
+    model = new Model();
+    controller = new Controller(Uuid.NULL, model);
+    view = new View(model);
+
+    userId = new Uuid(1);
+    controller.newUser(userId, "user", Time.fromMs(0));
+
+    // Titles are out of order and two pairs only differ by case so that ties
+    // have to be broken by id.
+    addConversation(10, "b", 500);
+    addConversation(11, "A", 400);
+    addConversation(12, "c", 300);
+    addConversation(13, "a", 200);
+    addConversation(14, "B", 100);
+  }
+
+  @Test
+  public void testByTitle() {
+    assertEquals(
+        "Check that pages follow the title order",
+        ids(11, 13, 10, 14, 12),
+        readAll(ConversationPage.BY_TITLE, 2));
+  }
+
+  @Test
+  public void testByCreation() {
+    assertEquals(
+        "Check that pages follow the creation order",
+        ids(14, 13, 12, 11, 10),
+        readAll(ConversationPage.BY_CREATION, 2));
+  }
+
+  @Test
+  public void testByActivity() {
+
+    controller.newMessage(new Uuid(20), userId, new Uuid(12), "hello", Time.fromMs(1000));
+    controller.newMessage(new Uuid(21), userId, new Uuid(14), "hello", Time.fromMs(2000));
+
+    // A message older than the last activity must not move the conversation.
+    controller.newMessage(new Uuid(22), userId, new Uuid(12), "late", Time.fromMs(50));
+
+    assertEquals(
+        "Check that the most recently active conversations come first",
+        ids(14, 12, 10, 11, 13),
+        readAll(ConversationPage.BY_ACTIVITY, 2));
+  }
+
+  @Test
+  public void testShortLastPage() {
+
+    final ConversationPage page =
+        view.getConversationPage(ConversationPage.BY_TITLE, new Uuid(14), 10);
+
+    assertEquals(
+        "Check that only what is left is returned",
+        ids(12),
+        idsOf(page.summaries));
+  }
+
+  @Test
+  public void testUnknownCursorStartsOver() {
+
+    final ConversationPage page =
+        view.getConversationPage(ConversationPage.BY_TITLE, new Uuid(99), 2);
+
+    assertEquals(
+        "Check that an unknown cursor starts at the beginning",
+        ids(11, 13),
+        idsOf(page.summaries));
+  }
+
+  @Test
+  public void testDeletedConversationIsNotListed() {
+
+    controller.deleteConversation(new Uuid(13));
+
+    assertEquals(
+        "Check that the deleted conversation is gone from every order",
+        ids(11, 10, 14, 12),
+        readAll(ConversationPage.BY_TITLE, 10));
+    assertEquals(
+        "Check that the deleted conversation is gone from every order",
+        ids(10, 11, 12, 14),
+        readAll(ConversationPage.BY_ACTIVITY, 10));
+  }
+
+  @Test
+  public void testGeneration() {
+
+    final Uuid before =
+        view.getConversationPage(ConversationPage.BY_TITLE, Uuid.NULL, 1).generation;
+
+    addConversation(15, "d", 600);
+
+    assertEquals(
+        "Check that paging from an old generation still finds new conversations",
+        ids(15),
+        idsOf(view.getConversationsChangedSince(before).updated));
+  }
+
+  @Test
+  public void testRecentConversations() {
+
+    controller.newMessage(new Uuid(20), userId, new Uuid(12), "hello", Time.fromMs(1000));
+    controller.newMessage(new Uuid(21), userId, new Uuid(12), "again", Time.fromMs(3000));
+    controller.newMessage(new Uuid(22), userId, new Uuid(11), "hello", Time.fromMs(2000));
+
+    final Collection<ConversationActivity> recent = view.getRecentConversations(3);
+
+    assertEquals(
+        "Check that only the most recently active conversations are returned",
+        3,
+        recent.size());
+
+    final Iterator<ConversationActivity> iterator = recent.iterator();
+
+    ConversationActivity activity = iterator.next();
+    assertEquals(new Uuid(12), activity.summary.id);
+    assertEquals(3000, activity.lastActivity.inMs());
+    assertEquals(2, activity.messageCount);
+
+    activity = iterator.next();
+    assertEquals(new Uuid(11), activity.summary.id);
+    assertEquals(2000, activity.lastActivity.inMs());
+    assertEquals(1, activity.messageCount);
+
+    // Without messages a conversation is as active as when it was made.
+    activity = iterator.next();
+    assertEquals(new Uuid(10), activity.summary.id);
+    assertEquals(500, activity.lastActivity.inMs());
+    assertEquals(0, activity.messageCount);
+  }
+
+  @Test
+  public void testDeletedMessageIsNotCounted() {
+
+    controller.newMessage(new Uuid(20), userId, new Uuid(12), "hello", Time.fromMs(1000));
+    controller.newMessage(new Uuid(21), userId, new Uuid(12), "again", Time.fromMs(2000));
+    controller.deleteMessage(new Uuid(21), new Uuid(12));
+
+    final Conversation conversation = view.findConversation(new Uuid(12));
+
+    assertEquals(1, conversation.messageCount);
+    assertEquals(
+        "Check that deleting a message does not move the last activity back",
+        2000,
+        conversation.lastActivity.inMs());
+  }
+
+  @Test
+  public void testUnknownOrder() {
+    assertTrue(
+        "Check that an unknown order returns nothing",
+        view.getConversationPage(42, Uuid.NULL, 10).summaries.isEmpty());
+  }
+
+  private void addConversation(int id, String title, long creation) {
+    final Conversation conversation =
+        controller.newConversation(new Uuid(id), title, userId, Time.fromMs(creation));
+    assertNotNull(conversation);
+  }
+
+  private List<Uuid> readAll(int order, int pageSize) {
+
+    final List<Uuid> all = new ArrayList<>();
+
+    Uuid after = Uuid.NULL;
+    ConversationPage page;
+
+    do {
+      page = view.getConversationPage(order, after, pageSize);
+      for (final ConversationSummary summary : page.summaries) {
+        all.add(summary.id);
+        after = summary.id;
+      }
+    } while (page.summaries.size() >= pageSize);
+
+    return all;
+  }
+
+  private static List<Uuid> idsOf(Iterable<ConversationSummary> summaries) {
+    final List<Uuid> ids = new ArrayList<>();
+    for (final ConversationSummary summary : summaries) {
+      ids.add(summary.id);
+    }
+    return ids;
+  }
+
+  private static List<Uuid> ids(int... values) {
+    final List<Uuid> ids = new ArrayList<>();
+    for (final int value : values) {
+      ids.add(new Uuid(value));
+    }
+    return ids;
+  }
+}
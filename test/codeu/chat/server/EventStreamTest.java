@@ -0,0 +1,153 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.common.ServerEvent;
+import codeu.chat.util.Serializers;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.Connection;
+
+public final class EventStreamTest {
+
+  private static final int BACKLOG = 4;
+
+  private ServerStats stats;
+  private EventStream stream;
+
+  @Before
+  public void doBefore() {
+    stats = new ServerStats();
+    stream = new EventStream(stats, BACKLOG);
+  }
+
+  @Test
+  public void testStuckSubscriberDoesNotHoldUpOthers() throws Exception {
+
+    final StuckConnection stuck = new StuckConnection();
+    final PipedConnection reader = new PipedConnection();
+
+    stream.subscribe(stuck);
+    stream.subscribe(reader);
+
+    assertEquals(NetworkCode.SUBSCRIBE_RESPONSE, (int) Serializers.INTEGER.read(reader.in));
+
+    // Wait for each event so that only the stuck subscriber can fall behind.
+    for (int i = 1; i <= 3 * BACKLOG; i++) {
+      stream.onEvent(event(i));
+      assertEquals(new Uuid(i), ServerEvent.SERIALIZER.read(reader.in).id);
+    }
+
+    stuck.closed.await();
+
+    final Map<String, Long> snapshot = snapshot();
+    assertEquals(1, (long) snapshot.get("events.subscribers"));
+    assertEquals(1, (long) snapshot.get("events.dropped_subscribers"));
+    assertEquals(1, (long) snapshot.get("events.fell_behind"));
+  }
+
+  @Test
+  public void testFailedWriteDropsSubscriber() throws Exception {
+
+    final PipedConnection reader = new PipedConnection();
+
+    stream.subscribe(reader);
+    assertEquals(NetworkCode.SUBSCRIBE_RESPONSE, (int) Serializers.INTEGER.read(reader.in));
+
+    reader.in.close();
+    stream.onEvent(event(1));
+
+    reader.closed.await();
+
+    final Map<String, Long> snapshot = snapshot();
+    assertEquals(0, (long) snapshot.get("events.subscribers"));
+    assertEquals(1, (long) snapshot.get("events.dropped_subscribers"));
+    assertEquals(0, (long) snapshot.get("events.fell_behind"));
+  }
+
+  private Map<String, Long> snapshot() {
+    final Map<String, Long> snapshot = new LinkedHashMap<>();
+    stream.writeTo(snapshot);
+    return snapshot;
+  }
+
+  private static ServerEvent event(int id) {
+    return new ServerEvent(ServerEvent.USER_CHANGED, new Uuid(id), Uuid.NULL);
+  }
+
+  // A connection to a client that never reads. Every write waits until the
+  // connection is closed and then fails.
+  private static final class StuckConnection implements Connection {
+
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    private final OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          closed.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IOException("closed");
+      }
+    };
+
+    @Override
+    public InputStream in() { throw new UnsupportedOperationException(); }
+
+    @Override
+    public OutputStream out() { return out; }
+
+    @Override
+    public void close() { closed.countDown(); }
+  }
+
+  // A connection whose output the test can read.
+  private static final class PipedConnection implements Connection {
+
+    final CountDownLatch closed = new CountDownLatch(1);
+    final PipedInputStream in = new PipedInputStream(1 << 16);
+    private final PipedOutputStream out;
+
+    PipedConnection() throws IOException {
+      out = new PipedOutputStream(in);
+    }
+
+    @Override
+    public InputStream in() { throw new UnsupportedOperationException(); }
+
+    @Override
+    public OutputStream out() { return out; }
+
+    @Override
+    public void close() { closed.countDown(); }
+  }
+}
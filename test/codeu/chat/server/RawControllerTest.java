@@ -19,9 +19,11 @@ import org.junit.Test;
 import org.junit.Before;
 
 import codeu.chat.common.Conversation;
+import codeu.chat.common.ConversationDelta;
 import codeu.chat.common.Message;
 import codeu.chat.common.RawController;
 import codeu.chat.common.User;
+import codeu.chat.common.UserDelta;
 import codeu.chat.util.Time;
 import codeu.chat.util.Uuid;
 
@@ -184,4 +186,84 @@ public final class RawControllerTest {
         "Check that the message has the correct id",
         Uuid.equals(message.id, messageId));
   }
+
+  @Test
+  public void testUserDeltaFromUnknownGeneration() {
+
+    controller.newUser(userId, "user", Time.now());
+
+    final UserDelta delta = model.userChangesSince(Uuid.NULL);
+
+    assertTrue(
+        "Check that an unknown generation gets every user",
+        delta.full);
+    assertEquals(1, delta.updated.size());
+    assertTrue(
+        "Check that the delta has the current generation",
+        Uuid.equals(delta.generation, model.userGeneration()));
+  }
+
+  @Test
+  public void testUserDeltaOnlyHasChanges() {
+
+    controller.newUser(userId, "user", Time.now());
+    final Uuid generation = model.userGeneration();
+
+    final UserDelta unchanged = model.userChangesSince(generation);
+
+    assertFalse(unchanged.full);
+    assertTrue(unchanged.updated.isEmpty());
+    assertTrue(unchanged.removed.isEmpty());
+
+    final Uuid otherId = new Uuid(4);
+    controller.newUser(otherId, "other", Time.now());
+    ((Controller) controller).setAlias(userId, "nickName");
+
+    final UserDelta changed = model.userChangesSince(generation);
+
+    assertFalse(changed.full);
+    assertEquals(2, changed.updated.size());
+    assertTrue(changed.removed.isEmpty());
+  }
+
+  @Test
+  public void testUserDeltaHasRemovals() {
+
+    controller.newUser(userId, "user", Time.now());
+    final Uuid generation = model.userGeneration();
+
+    controller.deleteUser("user", Time.now());
+
+    final UserDelta delta = model.userChangesSince(generation);
+
+    assertFalse(delta.full);
+    assertTrue(delta.updated.isEmpty());
+    assertEquals(1, delta.removed.size());
+    assertTrue(
+        "Check that the removed id is the deleted user",
+        Uuid.equals(delta.removed.iterator().next(), userId));
+  }
+
+  @Test
+  public void testConversationDelta() {
+
+    final User user = controller.newUser(userId, "user", Time.now());
+    final Uuid generation = model.conversationChangesSince(Uuid.NULL).generation;
+
+    controller.newConversation(conversationId, "conversation", user.id, Time.now());
+
+    final ConversationDelta added = model.conversationChangesSince(generation);
+
+    assertFalse(added.full);
+    assertEquals(1, added.updated.size());
+    assertTrue(added.removed.isEmpty());
+
+    controller.deleteConversation(conversationId);
+
+    final ConversationDelta removed = model.conversationChangesSince(added.generation);
+
+    assertFalse(removed.full);
+    assertTrue(removed.updated.isEmpty());
+    assertEquals(1, removed.removed.size());
+  }
 }
@@ -0,0 +1,231 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.common.Relay;
+import codeu.chat.relay.Server;
+import codeu.chat.relay.ServerFrontEnd;
+import codeu.chat.util.Time;
+import codeu.chat.util.Uuid;
+import codeu.chat.util.connections.Connection;
+import codeu.chat.util.connections.ConnectionSource;
+
+public final class RemoteRelayTest {
+
+  private static final Uuid TEAM = new Uuid(3);
+  private static final byte[] SECRET = { 0x00, 0x01, 0x02 };
+
+  private Server leader;
+  private Server standby;
+
+  private FakeSource leaderSource;
+  private FakeSource standbySource;
+
+  private RemoteRelay remote;
+
+  @Before
+  public void doBefore() {
+
+    leader = new Server(64, 64);
+    standby = new Server(64, 64);
+    leader.addTeam(TEAM, SECRET);
+    standby.addTeam(TEAM, SECRET);
+    standby.follow();
+
+    leaderSource = new FakeSource(leader);
+    standbySource = new FakeSource(standby);
+
+    remote = new RemoteRelay(Arrays.<ConnectionSource>asList(leaderSource, standbySource));
+  }
+
+  @Test
+  public void testWriteGoesToLeader() {
+
+    assertTrue(write());
+
+    assertEquals(1, read(leader));
+    assertEquals(0, standbySource.connects);
+  }
+
+  @Test
+  public void testOneFailureDoesNotFailOver() {
+
+    leaderSource.down = true;
+
+    // The standby is tried but refuses the write as it is still following.
+    assertFalse(write());
+    assertEquals(1, standbySource.connects);
+
+    leaderSource.down = false;
+
+    assertTrue(write());
+    assertEquals(1, read(leader));
+    assertEquals(1, standbySource.connects);
+  }
+
+  @Test
+  public void testFailsOverAfterRepeatedFailures() {
+
+    leaderSource.down = true;
+    standby.promote();
+
+    assertTrue(write());
+    assertTrue(write());
+    assertTrue(write());
+    assertEquals(3, leaderSource.connects);
+
+    // Calls now go to the standby first.
+    assertTrue(write());
+    assertEquals(3, leaderSource.connects);
+    assertEquals(4, read(standby));
+  }
+
+  @Test
+  public void testDoesNotMoveBackToLeader() {
+
+    leaderSource.down = true;
+    standby.promote();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(write());
+    }
+
+    // The old leader comes back, e.g. restarted with an empty history. Calls
+    // stay with the standby and the old leader is not even tried.
+    leaderSource.down = false;
+
+    assertTrue(write());
+    assertTrue(write());
+
+    assertEquals(0, read(leader));
+    assertEquals(5, read(standby));
+    assertEquals(3, leaderSource.connects);
+  }
+
+  @Test
+  public void testLastRelayIsNeverGivenUp() {
+
+    leaderSource.down = true;
+    standby.promote();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(write());
+    }
+
+    // Failures on the last relay do not send calls anywhere else.
+    standbySource.down = true;
+
+    for (int i = 0; i < 5; i++) {
+      assertFalse(write());
+    }
+
+    standbySource.down = false;
+
+    assertTrue(write());
+    assertEquals(3, leaderSource.connects);
+    assertEquals(4, read(standby));
+  }
+
+  private boolean write() {
+    return remote.write(TEAM,
+                        SECRET,
+                        remote.pack(new Uuid(4), "User", Time.now()),
+                        remote.pack(new Uuid(5), "Conversation", Time.now()),
+                        remote.pack(new Uuid(6), "Hello World", Time.now()));
+  }
+
+  private static int read(Server relay) {
+    return relay.read(TEAM, SECRET, Uuid.NULL, 64).size();
+  }
+
+  // A source that hands requests straight to a relay's front end. When "down"
+  // is set it acts as if the relay could not be reached.
+  private static final class FakeSource implements ConnectionSource {
+
+    private final ServerFrontEnd frontEnd;
+
+    boolean down = false;
+    int connects = 0;
+
+    FakeSource(Relay relay) {
+      this.frontEnd = new ServerFrontEnd(relay);
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+
+      connects += 1;
+
+      if (down) {
+        throw new IOException("Relay is down");
+      }
+
+      return new Connection() {
+
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        private InputStream response = null;
+
+        @Override
+        public OutputStream out() { return request; }
+
+        @Override
+        public InputStream in() throws IOException {
+
+          // The request is only handled once the caller starts reading the
+          // response, the same way a remote relay would answer.
+          if (response == null) {
+
+            final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            final InputStream in = new ByteArrayInputStream(request.toByteArray());
+
+            frontEnd.handleRequest(new Connection() {
+              @Override
+              public InputStream in() { return in; }
+
+              @Override
+              public OutputStream out() { return reply; }
+
+              @Override
+              public void close() { }
+            });
+
+            response = new ByteArrayInputStream(reply.toByteArray());
+          }
+
+          return response;
+        }
+
+        @Override
+        public void close() { }
+      };
+    }
+
+    @Override
+    public void close() { }
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import codeu.chat.util.Serializers;
+
+public final class RequestTraceTest {
+
+  @Test
+  public void testBytesCounted() throws Exception {
+
+    final RequestTrace trace = new RequestTrace(
+        System.nanoTime(),
+        new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 }),
+        new ByteArrayOutputStream());
+
+    assertEquals(1, trace.in().read());
+    assertEquals(4, trace.in().read(new byte[4], 0, 4));
+
+    Serializers.INTEGER.write(trace.out(), 7);
+    trace.out().write(new byte[3]);
+
+    assertEquals(5, trace.bytesIn());
+    assertEquals(7, trace.bytesOut());
+  }
+
+  @Test
+  public void testPhasesAddUp() throws Exception {
+
+    final RequestTrace trace = new RequestTrace(
+        System.nanoTime(),
+        new ByteArrayInputStream(new byte[0]),
+        new ByteArrayOutputStream());
+
+    trace.decoded();
+    Thread.sleep(2);
+    trace.executed();
+    trace.finished();
+
+    assertTrue(trace.executeNanos() >= 2000000);
+    assertEquals(trace.handleNanos(),
+                 trace.decodeNanos() + trace.executeNanos() + trace.encodeNanos());
+    assertEquals(trace.totalNanos(), trace.waitNanos() + trace.handleNanos());
+  }
+
+  @Test
+  public void testMissingMarks() throws Exception {
+
+    // A request that never marks its phases spends all its time encoding.
+    final RequestTrace trace = new RequestTrace(
+        System.nanoTime(),
+        new ByteArrayInputStream(new byte[0]),
+        new ByteArrayOutputStream());
+
+    trace.finished();
+
+    assertEquals(0, trace.decodeNanos());
+    assertEquals(0, trace.executeNanos());
+    assertEquals(trace.handleNanos(), trace.encodeNanos());
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.common.NetworkCode;
+
+public final class ServerStatsTest {
+
+  private ServerStats stats;
+
+  @Before
+  public void doBefore() {
+    stats = new ServerStats();
+  }
+
+  @Test
+  public void testRequestCounts() {
+
+    stats.request(NetworkCode.NEW_USER_REQUEST, 1000, false);
+    stats.request(NetworkCode.NEW_USER_REQUEST, 2000, true);
+    stats.request(NetworkCode.NEW_MESSAGE_REQUEST, 3000, false);
+
+    assertEquals(2, stats.requests(NetworkCode.NEW_USER_REQUEST));
+    assertEquals(1, stats.errors(NetworkCode.NEW_USER_REQUEST));
+    assertEquals(1, stats.requests(NetworkCode.NEW_MESSAGE_REQUEST));
+    assertEquals(0, stats.errors(NetworkCode.NEW_MESSAGE_REQUEST));
+  }
+
+  @Test
+  public void testUnknownTypesAreCounted() {
+
+    stats.request(-1, 1000, true);
+    stats.request(100000, 1000, true);
+
+    final Map<String, Long> snapshot = new LinkedHashMap<>();
+    stats.writeTo(snapshot);
+
+    assertEquals(Long.valueOf(2), snapshot.get("requests.OTHER"));
+    assertEquals(Long.valueOf(2), snapshot.get("errors.total"));
+  }
+
+  @Test
+  public void testSnapshotOnlyHasSeenTypes() {
+
+    stats.request(NetworkCode.NEW_USER_REQUEST, 5000, false);
+
+    final Map<String, Long> snapshot = new LinkedHashMap<>();
+    stats.writeTo(snapshot);
+
+    assertEquals(Long.valueOf(1), snapshot.get("requests.NEW_USER_REQUEST"));
+    assertTrue(snapshot.containsKey("latency.NEW_USER_REQUEST.p99_us"));
+    assertFalse(snapshot.containsKey("requests.NEW_MESSAGE_REQUEST"));
+  }
+
+  @Test
+  public void testConnections() {
+
+    stats.connectionOpened();
+    stats.connectionOpened();
+    stats.connectionClosed();
+
+    assertEquals(1, stats.activeConnections());
+  }
+
+  @Test
+  public void testBytesCounted() {
+
+    stats.bytes(5, 7);
+    stats.bytes(1, 2);
+
+    assertEquals(6, stats.bytesIn());
+    assertEquals(9, stats.bytesOut());
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public final class LatencyRecorderTest {
+
+  @Test
+  public void testEmpty() {
+
+    final LatencyRecorder recorder = new LatencyRecorder();
+
+    assertEquals(0, recorder.count());
+    assertEquals(0, recorder.percentile(50));
+    assertEquals(0, recorder.max());
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+
+    final LatencyRecorder recorder = new LatencyRecorder();
+
+    for (int i = 1; i <= 10; i++) {
+      recorder.record(i);
+    }
+
+    assertEquals(10, recorder.count());
+    assertEquals(5, recorder.percentile(50));
+    assertEquals(10, recorder.percentile(100));
+    assertEquals(10, recorder.max());
+  }
+
+  @Test
+  public void testLargeValuesAreClose() {
+
+    final LatencyRecorder recorder = new LatencyRecorder();
+
+    for (int i = 1; i <= 1000; i++) {
+      recorder.record(i * 1000L);
+    }
+
+    final long p50 = recorder.percentile(50);
+    final long p99 = recorder.percentile(99);
+
+    // Buckets are at most 1/16 of their value wide.
+    assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+    assertTrue(p99 >= 990000 && p99 <= 990000 * 17 / 16);
+    assertEquals(1000000, recorder.max());
+  }
+
+  @Test
+  public void testReset() {
+
+    final LatencyRecorder recorder = new LatencyRecorder();
+
+    recorder.record(100);
+    recorder.reset();
+
+    assertEquals(0, recorder.count());
+    assertEquals(0, recorder.percentile(99));
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public final class LoggerTest {
+
+  @Test
+  public void testRingKeepsOrder() {
+
+    final Logger.Ring<Integer> ring = new Logger.Ring<>(4);
+
+    assertTrue(ring.offer(1));
+    assertTrue(ring.offer(2));
+    assertTrue(ring.offer(3));
+
+    assertEquals(Integer.valueOf(1), ring.poll());
+    assertEquals(Integer.valueOf(2), ring.poll());
+    assertEquals(Integer.valueOf(3), ring.poll());
+    assertNull(ring.poll());
+  }
+
+  @Test
+  public void testRingRejectsWhenFull() {
+
+    // A capacity that is not a power of two should still only hold that many.
+    final Logger.Ring<Integer> ring = new Logger.Ring<>(3);
+
+    assertTrue(ring.offer(1));
+    assertTrue(ring.offer(2));
+    assertTrue(ring.offer(3));
+    assertFalse(ring.offer(4));
+
+    assertEquals(Integer.valueOf(1), ring.poll());
+
+    assertTrue(ring.offer(5));
+    assertFalse(ring.offer(6));
+  }
+
+  @Test
+  public void testRingWrapsAround() {
+
+    final Logger.Ring<Integer> ring = new Logger.Ring<>(2);
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(ring.offer(i));
+      assertEquals(Integer.valueOf(i), ring.poll());
+    }
+
+    assertNull(ring.poll());
+  }
+
+  @Test
+  public void testRingManyProducers() throws Exception {
+
+    final int producers = 4;
+    final int perProducer = 10000;
+
+    final Logger.Ring<Integer> ring = new Logger.Ring<>(64);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    final Thread[] threads = new Thread[producers];
+
+    for (int p = 0; p < producers; p++) {
+      final int base = p * perProducer;
+      threads[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {
+            return;
+          }
+          for (int i = 0; i < perProducer; i++) {
+            while (!ring.offer(base + i)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      threads[p].start();
+    }
+
+    start.countDown();
+
+    // Each producer's values must come out in the order that producer added them.
+    final int[] next = new int[producers];
+    int taken = 0;
+
+    while (taken < producers * perProducer) {
+      final Integer value = ring.poll();
+      if (value == null) {
+        Thread.yield();
+        continue;
+      }
+      final int producer = value / perProducer;
+      assertEquals(producer * perProducer + next[producer], value.intValue());
+      next[producer] += 1;
+      taken += 1;
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertNull(ring.poll());
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public final class SerializersTest {
+
+  @Test
+  public void testInteger() throws IOException {
+    for (final int value : new int[] { 0, 1, -1, 255, 256, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+      assertEquals(Integer.valueOf(value), roundTrip(Serializers.INTEGER, value));
+    }
+  }
+
+  @Test
+  public void testLong() throws IOException {
+    for (final long value : new long[] { 0, 1, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE }) {
+      assertEquals(Long.valueOf(value), roundTrip(Serializers.LONG, value));
+    }
+  }
+
+  @Test
+  public void testIntegerIsBigEndian() throws IOException {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Serializers.INTEGER.write(out, 0x01020304);
+
+    assertArrayEquals(new byte[] { 1, 2, 3, 4 }, out.toByteArray());
+  }
+
+  @Test
+  public void testString() throws IOException {
+    assertEquals("", roundTrip(Serializers.STRING, ""));
+    assertEquals("Hello World", roundTrip(Serializers.STRING, "Hello World"));
+  }
+
+  @Test
+  public void testLargeString() throws IOException {
+
+    // Larger than any buffer that the serializers keep around.
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      builder.append((char) ('a' + i % 26));
+    }
+
+    final String value = builder.toString();
+
+    assertEquals(value, roundTrip(Serializers.STRING, value));
+
+    // A short string after a large one should not see any of the large one.
+    assertEquals("short", roundTrip(Serializers.STRING, "short"));
+  }
+
+  @Test
+  public void testBytes() throws IOException {
+    final byte[] value = { 0, 1, 2, (byte) 0xFF, 127, -128 };
+    assertArrayEquals(value, roundTrip(Serializers.BYTES, value));
+  }
+
+  @Test
+  public void testMapKeepsOrder() throws IOException {
+
+    final Map<String, Long> value = new LinkedHashMap<>();
+    value.put("b", 2L);
+    value.put("a", 1L);
+    value.put("c", 3L);
+
+    final Map<String, Long> read =
+        roundTrip(Serializers.map(Serializers.STRING, Serializers.LONG), value);
+
+    assertEquals(value, read);
+    assertArrayEquals(value.keySet().toArray(), read.keySet().toArray());
+  }
+
+  @Test(expected = EOFException.class)
+  public void testShortInteger() throws IOException {
+    Serializers.INTEGER.read(new ByteArrayInputStream(new byte[] { 1, 2 }));
+  }
+
+  @Test(expected = EOFException.class)
+  public void testShortString() throws IOException {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Serializers.STRING.write(out, "Hello World");
+
+    final byte[] bytes = out.toByteArray();
+    Serializers.STRING.read(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+  }
+
+  private static <T> T roundTrip(Serializer<T> serializer, T value) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.write(out, value);
+    return serializer.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+}
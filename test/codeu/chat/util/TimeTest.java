@@ -25,4 +25,58 @@ public final class TimeTest {
     assertEquals(0, Time.fromMs(0).inMs());
     assertEquals(10, Time.fromMs(10).inMs());
   }
+
+  @Test
+  public void testCompare() {
+    assertTrue(Time.fromMs(1).compareTo(Time.fromMs(2)) < 0);
+    assertTrue(Time.fromMs(2).compareTo(Time.fromMs(1)) > 0);
+    assertEquals(0, Time.fromMs(5).compareTo(Time.fromMs(5)));
+
+    // Times far enough apart to overflow an int if they were subtracted.
+    assertTrue(Time.fromMs(Long.MIN_VALUE).compareTo(Time.fromMs(Long.MAX_VALUE)) < 0);
+  }
+
+  @Test
+  public void testEquals() {
+    assertEquals(Time.fromMs(42), Time.fromMs(42));
+    assertEquals(Time.fromMs(42).hashCode(), Time.fromMs(42).hashCode());
+    assertFalse(Time.fromMs(42).equals(Time.fromMs(43)));
+  }
+
+  @Test
+  public void testInRange() {
+    assertTrue(Time.fromMs(5).inRange(Time.fromMs(5), Time.fromMs(10)));
+    assertTrue(Time.fromMs(10).inRange(Time.fromMs(5), Time.fromMs(10)));
+    assertFalse(Time.fromMs(11).inRange(Time.fromMs(5), Time.fromMs(10)));
+  }
+
+  @Test
+  public void testToStringFromManyThreads() throws Exception {
+
+    final Time time = Time.fromMs(1000000000000L);
+    final String expected = time.toString();
+    final boolean[] failed = { false };
+
+    final Thread[] threads = new Thread[4];
+
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            if (!expected.equals(time.toString())) {
+              failed[0] = true;
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertFalse(failed[0]);
+  }
 }
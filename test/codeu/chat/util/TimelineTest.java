@@ -0,0 +1,332 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.chat.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class TimelineTest {
+
+  private Timeline timeline;
+
+  @Before
+  public void doBefore() {
+    timeline = new Timeline();
+  }
+
+  @After
+  public void doAfter() {
+    timeline.stop();
+    timeline.join();
+  }
+
+  @Test
+  public void testScheduleNow() throws Exception {
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    timeline.scheduleNow(new Runnable() {
+      @Override
+      public void run() { done.countDown(); }
+    });
+
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testScheduleInWaits() throws Exception {
+
+    final CountDownLatch done = new CountDownLatch(1);
+    final long start = System.currentTimeMillis();
+    final long[] ran = new long[1];
+
+    timeline.scheduleIn(100, new Runnable() {
+      @Override
+      public void run() {
+        ran[0] = System.currentTimeMillis();
+        done.countDown();
+      }
+    });
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertTrue(ran[0] - start >= 100);
+  }
+
+  @Test
+  public void testScheduleInOrder() throws Exception {
+
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+    // Schedule out of order and with delays that land in different levels of
+    // the wheel.
+    final int[] delays = { 400, 20, 150 };
+
+    for (final int delay : delays) {
+      timeline.scheduleIn(delay, new Runnable() {
+        @Override
+        public void run() {
+          order.add(delay);
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(20, (int) order.get(0));
+    assertEquals(150, (int) order.get(1));
+    assertEquals(400, (int) order.get(2));
+  }
+
+  @Test
+  public void testSameTickRunsInOrder() throws Exception {
+
+    final int count = 8;
+    final CountDownLatch done = new CountDownLatch(count);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+    // All the events fall in the same 5ms tick. The first half share a time,
+    // the second half are a millisecond apart.
+    final long base = (System.currentTimeMillis() / 5 + 20) * 5;
+
+    for (int i = 0; i < count; i++) {
+      final int value = i;
+      final long time = base + 1 + Math.max(0, i - count / 2);
+      timeline.scheduleAt(time, new Runnable() {
+        @Override
+        public void run() {
+          order.add(value);
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) order.get(i));
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+
+    final Timeline.Handle handle = timeline.scheduleIn(50, new Runnable() {
+      @Override
+      public void run() { cancelled.countDown(); }
+    });
+
+    timeline.scheduleIn(100, new Runnable() {
+      @Override
+      public void run() { done.countDown(); }
+    });
+
+    assertTrue(handle.cancel());
+    assertTrue(handle.isCancelled());
+    assertFalse(handle.cancel());
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(1, cancelled.getCount());
+  }
+
+  @Test
+  public void testSameKeyRunsInOrder() throws Exception {
+
+    final Timeline parallel = new Timeline(4);
+
+    final int count = 100;
+    final CountDownLatch done = new CountDownLatch(count);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger overlaps = new AtomicInteger();
+
+    for (int i = 0; i < count; i++) {
+      final int value = i;
+      parallel.scheduleNow("key", new Runnable() {
+        @Override
+        public void run() {
+          if (running.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+          }
+          order.add(value);
+          running.decrementAndGet();
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(0, overlaps.get());
+
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) order.get(i));
+    }
+
+    parallel.stop();
+    parallel.join();
+  }
+
+  @Test
+  public void testSameKeySameTickRunsInOrder() throws Exception {
+
+    final Timeline parallel = new Timeline(4);
+
+    final int count = 40;
+    final CountDownLatch done = new CountDownLatch(count * 2);
+    final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+
+    // Every event lands in the same 5ms tick. The two keys are given events
+    // in turn so that each key's events are mixed with the other's.
+    final long base = (System.currentTimeMillis() / 5 + 20) * 5;
+
+    for (int i = 0; i < count; i++) {
+      final int value = i;
+      final long time = base + 1 + (i * 4) / count;
+      parallel.scheduleAt("first", time, new Runnable() {
+        @Override
+        public void run() {
+          first.add(value);
+          done.countDown();
+        }
+      });
+      parallel.scheduleAt("second", time, new Runnable() {
+        @Override
+        public void run() {
+          second.add(value);
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) first.get(i));
+      assertEquals(i, (int) second.get(i));
+    }
+
+    parallel.stop();
+    parallel.join();
+  }
+
+  @Test
+  public void testNegativeKeyHash() throws Exception {
+
+    final Timeline parallel = new Timeline(3);
+    final CountDownLatch done = new CountDownLatch(2);
+
+    final Runnable count = new Runnable() {
+      @Override
+      public void run() { done.countDown(); }
+    };
+
+    // Keys with negative hashes must still map to an executor.
+    parallel.scheduleNow(Integer.MIN_VALUE, count);
+    parallel.scheduleIn(-7, 20, count);
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+
+    parallel.stop();
+    parallel.join();
+  }
+
+  @Test
+  public void testDifferentKeysRunInParallel() throws Exception {
+
+    final Timeline parallel = new Timeline(2);
+
+    // Each event waits for the other one to start. This can only finish if the
+    // two events run at the same time.
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch done = new CountDownLatch(2);
+
+    final Runnable meet = new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          if (started.await(2, TimeUnit.SECONDS)) {
+            done.countDown();
+          }
+        } catch (InterruptedException ex) {
+          // Leave "done" as is so the test fails.
+        }
+      }
+    };
+
+    // Keys 0 and 1 map to different executors when there are two of them.
+    parallel.scheduleNow(0, meet);
+    parallel.scheduleNow(1, meet);
+
+    assertTrue(done.await(4, TimeUnit.SECONDS));
+
+    parallel.stop();
+    parallel.join();
+  }
+
+  @Test
+  public void testStats() throws Exception {
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    timeline.scheduleNow(new Runnable() {
+      @Override
+      public void run() { throw new RuntimeException("expected"); }
+    });
+
+    timeline.scheduleIn(10000, new Runnable() {
+      @Override
+      public void run() { }
+    });
+
+    timeline.scheduleIn(20, new Runnable() {
+      @Override
+      public void run() { }
+    }).cancel();
+
+    timeline.scheduleIn(50, new Runnable() {
+      @Override
+      public void run() { done.countDown(); }
+    });
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+
+    // Give the executor a moment to finish counting the last event.
+    Thread.sleep(50);
+
+    final Timeline.Stats stats = timeline.stats();
+
+    assertEquals(4, stats.scheduled);
+    assertEquals(1, stats.completed);
+    assertEquals(1, stats.failed);
+    assertEquals(1, stats.cancelled);
+    assertEquals(1, stats.waiting);
+    assertEquals(0, stats.due);
+    assertEquals(2, stats.runTime.count());
+  }
+}
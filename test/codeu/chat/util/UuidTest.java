@@ -14,6 +14,8 @@
 
 package codeu.chat.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -139,4 +141,21 @@ public final class UuidTest {
     assertNotNull(id);
     assertEquals(id.id(), 0xFFFFFFFF);
   }
+
+  @Test
+  public void testSerializerRoundTrip() throws IOException {
+
+    final Uuid id = new Uuid(new Uuid(new Uuid(1), 2), 0xFFFFFFFF);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Uuid.SERIALIZER.write(out, id);
+
+    final Uuid read = Uuid.SERIALIZER.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(id, read);
+    assertEquals(read.id(), 0xFFFFFFFF);
+    assertEquals(read.root().id(), 2);
+    assertEquals(read.root().root().id(), 1);
+    assertNull(read.root().root().root());
+  }
 }
@@ -0,0 +1,247 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.chat.util.connections;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import codeu.chat.common.NetworkCode;
+import codeu.chat.util.Serializers;
+
+public final class PooledConnectionSourceTest {
+
+  // How a fake server says that it is closing a connection.
+  private static final int
+      CLOSE_SILENTLY = 0,       // just close it
+      CLOSE_WITH_RESPONSE = 1,  // send CONNECTION_CLOSING with the last response
+      CLOSE_LATE = 2;           // CONNECTION_CLOSING only arrives after the next request
+
+  // Each connection the fake source opens will answer this many requests
+  // before acting as if the server closed it.
+  private int responsesPerConnection;
+  private int closing = CLOSE_SILENTLY;
+  private final List<FakeConnection> opened = new ArrayList<>();
+
+  private PooledConnectionSource pool;
+
+  @Before
+  public void doBefore() {
+
+    opened.clear();
+
+    pool = new PooledConnectionSource(new ConnectionSource() {
+      @Override
+      public Connection connect() throws IOException {
+        final FakeConnection connection = new FakeConnection(responsesPerConnection, closing);
+        opened.add(connection);
+        return connection;
+      }
+
+      @Override
+      public void close() { }
+    });
+  }
+
+  @Test
+  public void testConnectionIsReused() throws Exception {
+
+    responsesPerConnection = 2;
+
+    assertEquals(7, exchange(NetworkCode.GET_USERS_BY_ID_REQUEST));
+    assertEquals(7, exchange(NetworkCode.GET_MESSAGES_BY_ID_REQUEST));
+
+    assertEquals(1, pool.opened());
+    assertEquals(1, pool.reused());
+    assertEquals(0, pool.retried());
+  }
+
+  @Test
+  public void testDeadConnectionIsRetried() throws Exception {
+
+    responsesPerConnection = 1;
+
+    assertEquals(7, exchange(NetworkCode.GET_USERS_BY_ID_REQUEST));
+    assertEquals(7, exchange(NetworkCode.GET_MESSAGES_BY_ID_REQUEST));
+
+    assertEquals(2, pool.opened());
+    assertEquals(1, pool.retried());
+
+    // The request was sent again in full on the new connection.
+    assertEquals(NetworkCode.GET_MESSAGES_BY_ID_REQUEST, opened.get(1).requestValue());
+  }
+
+  @Test
+  public void testDeadConnectionDoesNotRetryWrites() throws Exception {
+
+    responsesPerConnection = 1;
+
+    assertEquals(7, exchange(NetworkCode.GET_USERS_BY_ID_REQUEST));
+
+    // The server may have added the message before the connection died, so
+    // sending it again could add it twice.
+    try {
+      exchange(NetworkCode.NEW_MESSAGE_REQUEST);
+      fail("Expected the dead connection to fail the request");
+    } catch (IOException ex) {
+      // Expected.
+    }
+
+    assertEquals(1, pool.opened());
+    assertEquals(0, pool.retried());
+    assertTrue(opened.get(0).closed);
+  }
+
+  @Test
+  public void testClosingConnectionIsNotReused() throws Exception {
+
+    responsesPerConnection = 1;
+    closing = CLOSE_WITH_RESPONSE;
+
+    assertEquals(7, exchange(NetworkCode.GET_USERS_BY_ID_REQUEST));
+    assertEquals(7, exchange(NetworkCode.NEW_MESSAGE_REQUEST));
+
+    assertEquals(2, pool.opened());
+    assertEquals(0, pool.reused());
+    assertEquals(0, pool.retried());
+    assertTrue(opened.get(0).closed);
+  }
+
+  @Test
+  public void testWriteAfterServerCloseIsSentAgain() throws Exception {
+
+    responsesPerConnection = 1;
+    closing = CLOSE_LATE;
+
+    assertEquals(7, exchange(NetworkCode.GET_USERS_BY_ID_REQUEST));
+
+    // The server said it never read the message, so it is safe to send again.
+    assertEquals(7, exchange(NetworkCode.NEW_MESSAGE_REQUEST));
+
+    assertEquals(2, pool.opened());
+    assertEquals(1, pool.reused());
+    assertEquals(1, pool.retried());
+    assertTrue(opened.get(0).closed);
+    assertEquals(NetworkCode.NEW_MESSAGE_REQUEST, opened.get(1).requestValue());
+  }
+
+  @Test
+  public void testUnreadResponseIsNotReused() throws Exception {
+
+    responsesPerConnection = 2;
+
+    // Only read part of what the server sent back.
+    try (final Connection connection = pool.connect()) {
+      Serializers.INTEGER.write(connection.out(), NetworkCode.GET_USERS_BY_ID_REQUEST);
+      connection.in().read();
+    }
+
+    assertEquals(7, exchange(NetworkCode.GET_MESSAGES_BY_ID_REQUEST));
+
+    assertEquals(2, pool.opened());
+    assertEquals(0, pool.reused());
+    assertTrue(opened.get(0).closed);
+  }
+
+  private int exchange(int request) throws IOException {
+    try (final Connection connection = pool.connect()) {
+      Serializers.INTEGER.write(connection.out(), request);
+      return Serializers.INTEGER.read(connection.in());
+    }
+  }
+
+  // A connection whose server answers every request with 7 and then closes
+  // after a fixed number of requests. Like a socket, nothing can be read until
+  // a request has been written.
+  private static final class FakeConnection implements Connection {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final InputStream in;
+
+    boolean closed = false;
+
+    FakeConnection(final int responses, final int closing) {
+
+      in = new BufferedInputStream(new InputStream() {
+
+        private byte[] reply = new byte[0];
+        private int position = 0;
+        private int answered = 0;
+
+        @Override
+        public int read() throws IOException {
+          return fill() ? reply[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int available() throws IOException {
+          return fill() ? reply.length - position : 0;
+        }
+
+        private boolean fill() throws IOException {
+          if (position < reply.length) {
+            return true;
+          }
+          if (answered >= out.size() / 4) {
+            return false;
+          }
+          // One reply for each request written so far, up to the limit.
+          final ByteArrayOutputStream next = new ByteArrayOutputStream();
+          if (answered < responses) {
+            Serializers.INTEGER.write(next, 7);
+            if (answered + 1 == responses && closing == CLOSE_WITH_RESPONSE) {
+              Serializers.INTEGER.write(next, NetworkCode.CONNECTION_CLOSING);
+            }
+          } else if (answered == responses && closing == CLOSE_LATE) {
+            Serializers.INTEGER.write(next, NetworkCode.CONNECTION_CLOSING);
+          } else {
+            return false;
+          }
+          reply = next.toByteArray();
+          position = 0;
+          answered += 1;
+          return true;
+        }
+      });
+    }
+
+    @Override
+    public InputStream in() { return in; }
+
+    @Override
+    public OutputStream out() { return out; }
+
+    @Override
+    public void close() { closed = true; }
+
+    // The last request written to this connection.
+    int requestValue() throws IOException {
+      final byte[] written = out.toByteArray();
+      return Serializers.INTEGER.read(
+          new ByteArrayInputStream(written, written.length - 4, 4));
+    }
+  }
+}
@@ -147,6 +147,27 @@ public final class StoreTest {
     assertTrue(store.first(4) == 40);
   }
 
+  @Test
+  public void testSize() {
+
+    assertTrue(store.size() == 0);
+
+    store.insert(0, 0);
+    store.insert(1, 10);
+    store.insert(1, 11);
+
+    assertTrue(store.size() == 3);
+
+    store.delete(0);
+
+    assertTrue(store.size() == 2);
+
+    // Deleting a key that is not in the store should not change the size.
+    store.delete(5);
+
+    assertTrue(store.size() == 2);
+  }
+
   private static void assertOrder(Iterable<Integer> actual, int[] expected) {
 
     int at = 0;